@@ -0,0 +1,122 @@
+package nz.govt.msd.driver.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * A connection whose response is held in memory, used to hand a response that did not come from the network (eg from the
+ * {@link HttpCache}) to {@link HttpEasyReader}.
+ *
+ * <p>
+ * Header names are case insensitive, and as for a network connection {@link #getHeaderField(String)} returns the last value
+ * of a header that appears more than once.
+ * </p>
+ */
+class BufferedHttpURLConnection extends HttpURLConnection {
+	private final int status;
+	private final String message;
+	private final Map<String, List<String>> headers;
+	private final List<String[]> headerLines = new ArrayList<String[]>();
+	private final byte[] body;
+
+	/**
+	 * @param url Url the response is for
+	 * @param requestMethod The request method
+	 * @param status Response code
+	 * @param message Response message
+	 * @param headers Response headers, excluding the status line
+	 * @param body Response body, must not be modified
+	 */
+	BufferedHttpURLConnection(URL url, String requestMethod, int status, String message, Map<String, List<String>> headers, byte[] body) {
+		super(url);
+
+		try {
+			setRequestMethod(requestMethod);
+		} catch (ProtocolException e) {
+			throw new IllegalArgumentException(e);
+		}
+
+		this.status = status;
+		this.message = message;
+		this.body = body;
+		this.headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+		headerLines.add(new String[] { null, "HTTP/1.1 " + status + " " + message });
+
+		for (Entry<String, List<String>> header : headers.entrySet()) {
+			this.headers.put(header.getKey(), Collections.unmodifiableList(new ArrayList<String>(header.getValue())));
+
+			for (String value : header.getValue()) {
+				headerLines.add(new String[] { header.getKey(), value });
+			}
+		}
+
+		this.connected = true;
+	}
+
+	@Override
+	public void connect() {
+		// Nothing to connect to
+	}
+
+	@Override
+	public void disconnect() {
+		// Nothing to release
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+
+	@Override
+	public int getResponseCode() {
+		return status;
+	}
+
+	@Override
+	public String getResponseMessage() {
+		return message;
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		return Collections.unmodifiableMap(headers);
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		List<String> values = name == null ? null : headers.get(name);
+
+		return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return n < headerLines.size() ? headerLines.get(n)[0] : null;
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return n < headerLines.size() ? headerLines.get(n)[1] : null;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(body);
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return status < HTTP_BAD_REQUEST ? null : new ByteArrayInputStream(body);
+	}
+}
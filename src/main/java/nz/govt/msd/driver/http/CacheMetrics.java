@@ -0,0 +1,92 @@
+package nz.govt.msd.driver.http;
+
+/**
+ * Snapshot of the requests answered by {@link HttpCache}.
+ */
+public class CacheMetrics {
+	private final long hits;
+	private final long diskHits;
+	private final long revalidations;
+	private final long misses;
+	private final long stores;
+	private final long entries;
+	private final long size;
+
+	CacheMetrics(long hits, long diskHits, long revalidations, long misses, long stores, long entries, long size) {
+		this.hits = hits;
+		this.diskHits = diskHits;
+		this.revalidations = revalidations;
+		this.misses = misses;
+		this.stores = stores;
+		this.entries = entries;
+		this.size = size;
+	}
+
+	/**
+	 * @return Number of requests answered from the cache without contacting the server
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return Number of responses loaded into memory from the disk directory
+	 */
+	public long getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * @return Number of requests answered from the cache after the server responded 304 Not Modified
+	 */
+	public long getRevalidations() {
+		return revalidations;
+	}
+
+	/**
+	 * @return Number of requests the server sent a full response for
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return Number of responses added to the cache
+	 */
+	public long getStores() {
+		return stores;
+	}
+
+	/**
+	 * @return Number of responses held in memory
+	 */
+	public long getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return Approximate memory used by the responses in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return Fraction of requests answered from the cache, whether or not they were revalidated
+	 */
+	public double getHitRatio() {
+		long requests = hits + revalidations + misses;
+
+		if (requests == 0) {
+			return 0;
+		}
+
+		return (double) (hits + revalidations) / requests;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s cache hits, %s revalidated, %s misses (%.0f%% hit ratio), %s responses using %sKB",
+				hits, revalidations, misses, getHitRatio() * 100, entries, size / 1024);
+	}
+}
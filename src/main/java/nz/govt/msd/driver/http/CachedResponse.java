@@ -0,0 +1,358 @@
+package nz.govt.msd.driver.http;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A response stored by {@link HttpCache}.
+ *
+ * <p>
+ * The body is stored decoded, so the Content-Encoding header is dropped and Content-Length set to the length of the stored
+ * body.  Hop-by-hop headers are not stored.
+ * </p>
+ */
+class CachedResponse {
+	private static final int FORMAT_VERSION = 1;
+	private static final Set<String> UNSTORED_HEADERS = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-authenticate", "proxy-connection", "te", "trailer", "transfer-encoding", "upgrade",
+			"content-encoding", "content-length"));
+	// The body is always stored decoded, so the encoding the request accepts does not matter
+	private static final String ACCEPT_ENCODING = "accept-encoding";
+
+	private final String key;
+	private final int status;
+	private final String message;
+	private final Map<String, List<String>> headers;
+	private final Map<String, String> varyValues;
+	private final long storedAt;
+	private final long freshUntil;
+	private final byte[] body;
+
+	private CachedResponse(String key, int status, String message, Map<String, List<String>> headers, Map<String, String> varyValues,
+			long storedAt, long freshUntil, byte[] body) {
+		this.key = key;
+		this.status = status;
+		this.message = message;
+		this.headers = headers;
+		this.varyValues = varyValues;
+		this.storedAt = storedAt;
+		this.freshUntil = freshUntil;
+		this.body = body;
+	}
+
+	/**
+	 * Take the status and headers of a response, the body is added once it has been read.
+	 *
+	 * @param key Cache key
+	 * @param connection The response
+	 * @param requestHeaders Looks up the value of a request header by name
+	 * @param timeToLiveMillis Maximum time the response is fresh for
+	 * @return A cached response with an empty body
+	 * @throws IOException If unable to get the response code
+	 */
+	static CachedResponse from(String key, HttpURLConnection connection, Function<String, String> requestHeaders, long timeToLiveMillis) throws IOException {
+		Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+		mergeHeaders(headers, connection.getHeaderFields());
+
+		Map<String, String> varyValues = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+		for (String name : getVaryNames(connection.getHeaderField("Vary"))) {
+			varyValues.put(name, requestHeaders.apply(name));
+		}
+
+		long now = System.currentTimeMillis();
+
+		return new CachedResponse(key, connection.getResponseCode(), connection.getResponseMessage(), headers, varyValues, now,
+				now + getFreshnessMillis(headers, timeToLiveMillis), new byte[0]);
+	}
+
+	/**
+	 * @param responseBody The decoded response body
+	 * @return A copy of this response with the body
+	 */
+	CachedResponse withBody(byte[] responseBody) {
+		Map<String, List<String>> copy = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+		copy.putAll(headers);
+		copy.put("Content-Length", Collections.singletonList(String.valueOf(responseBody.length)));
+
+		return new CachedResponse(key, status, message, copy, varyValues, storedAt, freshUntil, responseBody);
+	}
+
+	/**
+	 * Update the stored headers with those from a 304 Not Modified response and restart the freshness lifetime.
+	 *
+	 * @param notModified The 304 response
+	 * @param timeToLiveMillis Maximum time the response is fresh for
+	 * @return The updated response
+	 */
+	CachedResponse revalidated(HttpURLConnection notModified, long timeToLiveMillis) {
+		Map<String, List<String>> merged = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+		merged.putAll(headers);
+		mergeHeaders(merged, notModified.getHeaderFields());
+
+		long now = System.currentTimeMillis();
+
+		return new CachedResponse(key, status, message, merged, varyValues, now, now + getFreshnessMillis(merged, timeToLiveMillis), body);
+	}
+
+	/**
+	 * Whether a response can be stored, a Vary of * or Cache-Control no-store prevents it.
+	 *
+	 * @param connection The response
+	 * @return true if the response can be stored
+	 * @throws IOException If unable to get the response code
+	 */
+	static boolean isStorable(HttpURLConnection connection) throws IOException {
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			return false;
+		}
+
+		if (getVaryNames(connection.getHeaderField("Vary")).contains("*")) {
+			return false;
+		}
+
+		for (Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+			if ("Cache-Control".equalsIgnoreCase(header.getKey()) && getCacheControl(header.getValue()).containsKey("no-store")) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	boolean isFresh() {
+		return System.currentTimeMillis() < freshUntil;
+	}
+
+	/**
+	 * @param requestHeaders Looks up the value of a request header by name
+	 * @return true if the request sends the same values for the headers the response varies on
+	 */
+	boolean matches(Function<String, String> requestHeaders) {
+		for (Entry<String, String> vary : varyValues.entrySet()) {
+			String value = requestHeaders.apply(vary.getKey());
+
+			if (value == null ? vary.getValue() != null : !value.equals(vary.getValue())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	String getETag() {
+		return getHeader("ETag");
+	}
+
+	String getLastModified() {
+		return getHeader("Last-Modified");
+	}
+
+	/**
+	 * @return Approximate memory used by the response
+	 */
+	int getSize() {
+		final int overhead = 64;
+		int size = overhead + key.length() * 2 + body.length;
+
+		for (Entry<String, List<String>> header : headers.entrySet()) {
+			for (String value : header.getValue()) {
+				size += (header.getKey().length() + value.length()) * 2;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * @param url Url of the request
+	 * @param requestMethod The request method
+	 * @return A connection that replays the response
+	 */
+	HttpURLConnection toConnection(URL url, String requestMethod) {
+		return new BufferedHttpURLConnection(url, requestMethod, status, message, headers, body);
+	}
+
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(key);
+		out.writeInt(status);
+		out.writeUTF(message == null ? "" : message);
+		out.writeLong(storedAt);
+		out.writeLong(freshUntil);
+
+		out.writeInt(headers.size());
+
+		for (Entry<String, List<String>> header : headers.entrySet()) {
+			out.writeUTF(header.getKey());
+			out.writeInt(header.getValue().size());
+
+			for (String value : header.getValue()) {
+				out.writeUTF(value);
+			}
+		}
+
+		out.writeInt(varyValues.size());
+
+		for (Entry<String, String> vary : varyValues.entrySet()) {
+			out.writeUTF(vary.getKey());
+			out.writeBoolean(vary.getValue() != null);
+
+			if (vary.getValue() != null) {
+				out.writeUTF(vary.getValue());
+			}
+		}
+
+		out.writeInt(body.length);
+		out.write(body);
+	}
+
+	/**
+	 * @param in Stream written by {@link #writeTo(DataOutputStream)}
+	 * @return The response, or null if it was written by an incompatible version
+	 * @throws IOException If unable to read the response
+	 */
+	static CachedResponse readFrom(DataInputStream in) throws IOException {
+		if (in.readInt() != FORMAT_VERSION) {
+			return null;
+		}
+
+		String key = in.readUTF();
+		int status = in.readInt();
+		String message = in.readUTF();
+		long storedAt = in.readLong();
+		long freshUntil = in.readLong();
+
+		Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		int headerCount = in.readInt();
+
+		for (int i = 0; i < headerCount; i++) {
+			String name = in.readUTF();
+			int valueCount = in.readInt();
+			List<String> values = new ArrayList<String>(valueCount);
+
+			for (int v = 0; v < valueCount; v++) {
+				values.add(in.readUTF());
+			}
+
+			headers.put(name, values);
+		}
+
+		Map<String, String> varyValues = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		int varyCount = in.readInt();
+
+		for (int i = 0; i < varyCount; i++) {
+			String name = in.readUTF();
+
+			varyValues.put(name, in.readBoolean() ? in.readUTF() : null);
+		}
+
+		byte[] body = new byte[in.readInt()];
+
+		in.readFully(body);
+
+		return new CachedResponse(key, status, message, headers, varyValues, storedAt, freshUntil, body);
+	}
+
+	private String getHeader(String name) {
+		List<String> values = headers.get(name);
+
+		return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+	}
+
+	private static void mergeHeaders(Map<String, List<String>> target, Map<String, List<String>> source) {
+		for (Entry<String, List<String>> header : source.entrySet()) {
+			// The status line has a null key
+			if (header.getKey() == null || UNSTORED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+				continue;
+			}
+
+			target.put(header.getKey(), new ArrayList<String>(header.getValue()));
+		}
+	}
+
+	/**
+	 * The response is fresh for the time to live, or the Cache-Control max-age if shorter, no-cache means it must always be
+	 * revalidated.
+	 */
+	private static long getFreshnessMillis(Map<String, List<String>> headers, long timeToLiveMillis) {
+		Map<String, String> cacheControl = getCacheControl(headers.get("Cache-Control"));
+
+		if (cacheControl.containsKey("no-cache")) {
+			return 0;
+		}
+
+		String maxAge = cacheControl.get("max-age");
+
+		if (maxAge != null) {
+			try {
+				return Math.min(timeToLiveMillis, TimeUnit.SECONDS.toMillis(Long.parseLong(maxAge)));
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+
+		return timeToLiveMillis;
+	}
+
+	private static Map<String, String> getCacheControl(List<String> values) {
+		Map<String, String> directives = new LinkedHashMap<String, String>();
+
+		if (values == null) {
+			return directives;
+		}
+
+		for (String value : values) {
+			for (String directive : value.split(",")) {
+				String[] parts = directive.trim().split("=", 2);
+
+				if (!parts[0].isEmpty()) {
+					directives.put(parts[0].toLowerCase(Locale.ENGLISH), parts.length > 1 ? parts[1].trim().replace("\"", "") : "");
+				}
+			}
+		}
+
+		return directives;
+	}
+
+	private static Set<String> getVaryNames(String vary) {
+		Set<String> names = new HashSet<String>();
+
+		if (vary == null) {
+			return names;
+		}
+
+		for (String name : vary.split(",")) {
+			String trimmed = name.trim().toLowerCase(Locale.ENGLISH);
+
+			if (!trimmed.isEmpty() && !ACCEPT_ENCODING.equals(trimmed)) {
+				names.add(trimmed);
+			}
+		}
+
+		return names;
+	}
+}
@@ -0,0 +1,103 @@
+package nz.govt.msd.driver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a copy of the bytes read from a stream and hands them to a listener once the whole stream has been read.
+ *
+ * <p>
+ * The stream has been read when it reaches end of stream or, if the expected length is known, that many bytes have been read.
+ * Capture is abandoned if the stream is longer than the limit or bytes are skipped, so a partially read or oversized stream is
+ * never reported.
+ * </p>
+ */
+class CapturingInputStream extends FilterInputStream {
+	private final int limit;
+	private final long expectedLength;
+	private final Consumer<byte[]> listener;
+	private ByteArrayOutputStream capture;
+
+	/**
+	 * @param in Stream to read
+	 * @param limit Maximum number of bytes to capture
+	 * @param expectedLength Length of the stream if known, otherwise -1
+	 * @param listener Receives the bytes once the stream has been read
+	 */
+	CapturingInputStream(InputStream in, int limit, long expectedLength, Consumer<byte[]> listener) {
+		super(in);
+
+		this.limit = limit;
+		this.expectedLength = expectedLength;
+		this.listener = listener;
+
+		if (expectedLength > limit) {
+			this.capture = null;
+		} else {
+			this.capture = new ByteArrayOutputStream(expectedLength > 0 ? (int) expectedLength : 8192);
+		}
+
+		if (expectedLength == 0) {
+			complete();
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = super.read();
+
+		if (read == -1) {
+			complete();
+		} else if (capture != null) {
+			capture.write(read);
+			checkCapture();
+		}
+
+		return read;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+
+		if (read == -1) {
+			complete();
+		} else if (capture != null) {
+			capture.write(b, off, read);
+			checkCapture();
+		}
+
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		capture = null;
+		return super.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void checkCapture() {
+		if (capture.size() > limit) {
+			capture = null;
+		} else if (capture.size() == expectedLength) {
+			complete();
+		}
+	}
+
+	private void complete() {
+		if (capture != null) {
+			byte[] bytes = capture.toByteArray();
+
+			capture = null;
+			listener.accept(bytes);
+		}
+	}
+}
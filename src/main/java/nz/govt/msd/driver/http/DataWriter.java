@@ -1,6 +1,12 @@
 package nz.govt.msd.driver.http;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.slf4j.Logger;
 
@@ -11,13 +17,41 @@ import org.slf4j.Logger;
  */
 interface DataWriter {
 
+	/**
+	 * @return Length of the content in bytes, or -1 if it is not known before the content is written.  When known the request is 
+	 * streamed with a fixed length, otherwise it is sent chunked, so the length must exactly match the bytes written.
+	 */
+	public long getContentLength();
+
 	/**
 	 * Add data to Http request.
 	 * 
+	 * @param outputStream Stream to write the content to
 	 * @param logger Logger to write details to
 	 * 
 	 * @throws IOException
 	 */
-	public void write(Logger logger) throws IOException;
+	public void write(OutputStream outputStream, Logger logger) throws IOException;
+
+	/**
+	 * Copy a file to the request through its FileChannel so that the file is never held in memory.
+	 * 
+	 * @param file File to copy
+	 * @param outputStream Stream to write the file to, is not closed
+	 * @throws IOException
+	 */
+	public static void copyFile(File file, OutputStream outputStream) throws IOException {
+		try (FileInputStream inputStream = new FileInputStream(file); FileChannel channel = inputStream.getChannel()) {
+			WritableByteChannel target = Channels.newChannel(outputStream);
+			long size = channel.size();
+			long position = 0;
+
+			while (position < size) {
+				position += channel.transferTo(position, size - position, target);
+			}
+		}
+
+		outputStream.flush();
+	}
 
 }
@@ -0,0 +1,22 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * Opens a new connection for each request and closes the underlying socket once the response has been read.
+ */
+public class DefaultHttpTransport implements HttpTransport {
+
+	@Override
+	public HttpURLConnection open(URL url, Proxy proxy) throws IOException {
+		return (HttpURLConnection) url.openConnection(proxy);
+	}
+
+	@Override
+	public void release(HttpURLConnection connection) {
+		connection.disconnect();
+	}
+}
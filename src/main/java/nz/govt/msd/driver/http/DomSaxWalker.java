@@ -0,0 +1,189 @@
+package nz.govt.msd.driver.http;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * Replays a DOM element as SAX events so that it can be handed to a namespace aware consumer such as a JAXB unmarshaller without
+ * first being written out to a string and parsed again.
+ *
+ * <p>
+ * {@link XmlReader} parses documents without namespace awareness so that XPath selectors match prefixed names as written, which
+ * leaves the DOM without namespace URIs.  The namespace of each element and attribute is worked out here from the xmlns
+ * attributes in scope, including those declared on the element's ancestors, eg on a SOAP envelope.
+ * </p>
+ */
+class DomSaxWalker {
+	private static final String XMLNS = "xmlns";
+
+	private final ContentHandler handler;
+	private final NamespaceSupport namespaces = new NamespaceSupport();
+	private final String[] parts = new String[3];
+
+	private DomSaxWalker(ContentHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Send a node to a content handler as a complete document.
+	 *
+	 * @param node Document or element to send
+	 * @param handler Handler to receive the events
+	 * @throws SAXException If the handler rejects an event
+	 */
+	static void walk(Node node, ContentHandler handler) throws SAXException {
+		Element element = node instanceof Document ? ((Document) node).getDocumentElement() : (Element) node;
+
+		new DomSaxWalker(handler).walk(element);
+	}
+
+	private void walk(Element element) throws SAXException {
+		Deque<Element> ancestors = new ArrayDeque<Element>();
+
+		for (Node parent = element.getParentNode(); parent instanceof Element; parent = parent.getParentNode()) {
+			ancestors.push((Element) parent);
+		}
+
+		handler.startDocument();
+
+		// Declarations on the ancestors are in scope for the element, declare them outermost first so inner ones take precedence
+		List<String> inherited = new ArrayList<String>();
+
+		namespaces.pushContext();
+
+		for (Element ancestor : ancestors) {
+			declarePrefixes(ancestor, inherited, false);
+		}
+
+		for (String prefix : inherited) {
+			handler.startPrefixMapping(prefix, namespaces.getURI(prefix));
+		}
+
+		visit(element);
+
+		for (int i = inherited.size() - 1; i >= 0; i--) {
+			handler.endPrefixMapping(inherited.get(i));
+		}
+
+		namespaces.popContext();
+		handler.endDocument();
+	}
+
+	private void visit(Element element) throws SAXException {
+		List<String> declared = new ArrayList<String>();
+
+		namespaces.pushContext();
+		declarePrefixes(element, declared, true);
+
+		AttributesImpl attributes = new AttributesImpl();
+		NamedNodeMap map = element.getAttributes();
+
+		for (int i = 0; i < map.getLength(); i++) {
+			Attr attribute = (Attr) map.item(i);
+			String name = attribute.getName();
+
+			if (!isNamespaceDeclaration(name)) {
+				String[] resolved = resolve(name, true);
+
+				attributes.addAttribute(resolved[0], resolved[1], name, "CDATA", attribute.getValue());
+			}
+		}
+
+		String[] resolved = resolve(element.getTagName(), false);
+		String uri = resolved[0];
+		String localName = resolved[1];
+
+		handler.startElement(uri, localName, element.getTagName(), attributes);
+
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			visitChild(child);
+		}
+
+		handler.endElement(uri, localName, element.getTagName());
+
+		for (int i = declared.size() - 1; i >= 0; i--) {
+			handler.endPrefixMapping(declared.get(i));
+		}
+
+		namespaces.popContext();
+	}
+
+	private void visitChild(Node child) throws SAXException {
+		switch (child.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			visit((Element) child);
+			break;
+
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			char[] text = child.getNodeValue().toCharArray();
+
+			handler.characters(text, 0, text.length);
+			break;
+
+		case Node.ENTITY_REFERENCE_NODE:
+			for (Node node = child.getFirstChild(); node != null; node = node.getNextSibling()) {
+				visitChild(node);
+			}
+
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	private void declarePrefixes(Element element, List<String> declared, boolean notify) throws SAXException {
+		NamedNodeMap map = element.getAttributes();
+
+		for (int i = 0; i < map.getLength(); i++) {
+			String name = map.item(i).getNodeName();
+
+			if (!isNamespaceDeclaration(name)) {
+				continue;
+			}
+
+			String prefix = name.length() == XMLNS.length() ? "" : name.substring(XMLNS.length() + 1);
+			String uri = map.item(i).getNodeValue();
+
+			namespaces.declarePrefix(prefix, uri);
+
+			if (!declared.contains(prefix)) {
+				declared.add(prefix);
+			}
+
+			if (notify) {
+				handler.startPrefixMapping(prefix, uri);
+			}
+		}
+	}
+
+	/**
+	 * @return The namespace uri and local name, a name with an undeclared prefix is given no namespace
+	 */
+	private String[] resolve(String name, boolean isAttribute) {
+		if (namespaces.processName(name, parts, isAttribute) != null) {
+			return new String[] {parts[0], parts[1]};
+		}
+
+		int colon = name.indexOf(':');
+
+		return new String[] {"", colon < 0 ? name : name.substring(colon + 1)};
+	}
+
+	private static boolean isNamespaceDeclaration(String name) {
+		return name.equals(XMLNS) || name.startsWith(XMLNS + ":");
+	}
+}
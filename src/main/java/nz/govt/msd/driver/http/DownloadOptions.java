@@ -0,0 +1,168 @@
+package nz.govt.msd.driver.http;
+
+/**
+ * Options for {@link HttpEasy#downloadFile(String, DownloadOptions)} and {@link HttpEasyReader#downloadFile(String, DownloadOptions)}.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.request()
+ *     .path(url)
+ *     .downloadFile(saveDir, new DownloadOptions()
+ *         .withBufferSize(1024 * 1024)
+ *         .withResume(true)
+ *         .withProgressListener(progress -&gt; LOGGER.info("{}", progress)));
+ * </pre>
+ * </p>
+ */
+public class DownloadOptions {
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private boolean resume = false;
+	private ProgressListener progressListener = null;
+
+	/**
+	 * Sets the maximum number of bytes transferred to the file in a single operation, defaults to 64KB.  Progress is reported
+	 * after each transfer.
+	 *
+	 * @param bytes Buffer size in bytes
+	 * @return A self reference
+	 */
+	public DownloadOptions withBufferSize(int bytes) {
+		if (bytes < 1) {
+			throw new IllegalArgumentException("Buffer size must be at least 1 byte");
+		}
+
+		this.bufferSize = bytes;
+		return this;
+	}
+
+	/**
+	 * If an earlier download of the same url to the save folder was interrupted and the server supports byte ranges, request only 
+	 * the remainder of the file and append it rather than downloading the whole file again.  Defaults to false, an existing file 
+	 * is overwritten.
+	 *
+	 * <p>
+	 * Only applies to {@link HttpEasy#downloadFile(String, DownloadOptions)}, which decides whether to resume before sending the
+	 * request.  The version of the file being downloaded is recorded in a ".partial" file next to it until the download is 
+	 * complete.  If the server ignores the range, or the file has changed on the server since the partial copy was downloaded, the 
+	 * whole file is downloaded.
+	 * </p>
+	 *
+	 * @param resume Whether to resume partial downloads
+	 * @return A self reference
+	 */
+	public DownloadOptions withResume(boolean resume) {
+		this.resume = resume;
+		return this;
+	}
+
+	/**
+	 * Sets a listener to be notified of the progress of the download.
+	 *
+	 * @param listener Listener
+	 * @return A self reference
+	 */
+	public DownloadOptions withProgressListener(ProgressListener listener) {
+		this.progressListener = listener;
+		return this;
+	}
+
+	int getBufferSize() {
+		return bufferSize;
+	}
+
+	boolean isResume() {
+		return resume;
+	}
+
+	ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * Notified each time a block of the file has been written.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		/**
+		 * @param progress The progress of the download so far
+		 */
+		void progress(Progress progress);
+	}
+
+	/**
+	 * Snapshot of the progress of a download.
+	 */
+	public static class Progress {
+		private final long resumedFrom;
+		private final long bytesWritten;
+		private final long totalBytes;
+		private final long elapsedNanos;
+
+		Progress(long resumedFrom, long bytesWritten, long totalBytes, long elapsedNanos) {
+			this.resumedFrom = resumedFrom;
+			this.bytesWritten = bytesWritten;
+			this.totalBytes = totalBytes;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return Size of the partial file the download was resumed from, 0 if not resumed
+		 */
+		public long getResumedFrom() {
+			return resumedFrom;
+		}
+
+		/**
+		 * @return Size of the file so far, including any resumed portion
+		 */
+		public long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		/**
+		 * @return Expected size of the file, -1 if the server did not send the length
+		 */
+		public long getTotalBytes() {
+			return totalBytes;
+		}
+
+		/**
+		 * @return Percentage of the file downloaded, -1 if the size of the file is not known
+		 */
+		public int getPercentComplete() {
+			if (totalBytes <= 0) {
+				return -1;
+			}
+
+			return (int) (bytesWritten * 100 / totalBytes);
+		}
+
+		/**
+		 * @return Time spent on this download in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return elapsedNanos / 1_000_000;
+		}
+
+		/**
+		 * @return Average download rate of this download in bytes per second, excluding any resumed portion
+		 */
+		public long getBytesPerSecond() {
+			if (elapsedNanos <= 0) {
+				return 0;
+			}
+
+			return (long) ((bytesWritten - resumedFrom) * 1_000_000_000d / elapsedNanos);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Downloaded %s of %s bytes in %sms (%s KB/s)", bytesWritten, totalBytes < 0 ? "unknown" : totalBytes,
+					getElapsedMillis(), getBytesPerSecond() / 1024);
+		}
+	}
+}
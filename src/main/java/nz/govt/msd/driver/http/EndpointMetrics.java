@@ -0,0 +1,122 @@
+package nz.govt.msd.driver.http;
+
+import java.util.Map;
+
+import nz.govt.msd.driver.http.RequestMetrics.Phase;
+
+/**
+ * Snapshot of the timings of the requests to one endpoint recorded by {@link HttpMetrics}.
+ */
+public class EndpointMetrics {
+	private static final double MEDIAN = 50;
+	private static final double P95 = 95;
+	private static final double P99 = 99;
+
+	private final String host;
+	private final String pathTemplate;
+	private final Map<Phase, LatencyHistogram> phases;
+	private final long failures;
+	private final long requestBytes;
+	private final long responseBytes;
+
+	EndpointMetrics(String host, String pathTemplate, Map<Phase, LatencyHistogram> phases, long failures, long requestBytes, long responseBytes) {
+		this.host = host;
+		this.pathTemplate = pathTemplate;
+		this.phases = phases;
+		this.failures = failures;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+	}
+
+	/**
+	 * @return Host name
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return Path template, see {@link RequestMetrics#getPathTemplate()}
+	 */
+	public String getPathTemplate() {
+		return pathTemplate;
+	}
+
+	/**
+	 * @return Number of requests
+	 */
+	public long getRequests() {
+		return phases.get(Phase.TOTAL).getCount();
+	}
+
+	/**
+	 * @return Number of requests that received no response or a status code of 400 or more
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return Bytes of request bodies sent over the network
+	 */
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * @return Bytes of response bodies received over the network
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * @param phase Part of the request
+	 * @return Number of requests the phase was measured for, eg requests that needed a TLS handshake
+	 */
+	public long getCount(Phase phase) {
+		return phases.get(phase).getCount();
+	}
+
+	/**
+	 * @param phase Part of the request
+	 * @param percentile Percentile, eg 95 for the 95th percentile
+	 * @return Duration in milliseconds that the percentile of the measured requests took no longer than, accurate to about 3%
+	 */
+	public double getPercentileMillis(Phase phase, double percentile) {
+		return phases.get(phase).getPercentileMillis(percentile);
+	}
+
+	/**
+	 * @param phase Part of the request
+	 * @return Average duration in milliseconds
+	 */
+	public double getMeanMillis(Phase phase) {
+		return phases.get(phase).getMeanMillis();
+	}
+
+	/**
+	 * @param phase Part of the request
+	 * @return Longest duration in milliseconds
+	 */
+	public double getMaxMillis(Phase phase) {
+		return phases.get(phase).getMaxMillis();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(String.format("%s %s: %s requests (%s failed), sent %s bytes, received %s bytes",
+				host, pathTemplate, getRequests(), failures, requestBytes, responseBytes));
+
+		for (Phase phase : Phase.values()) {
+			if (getCount(phase) > 0) {
+				sb.append(String.format(", %s p50 %.1fms p95 %.1fms p99 %.1fms max %.1fms", phase.name().toLowerCase().replace('_', ' '),
+						getPercentileMillis(phase, MEDIAN), getPercentileMillis(phase, P95), getPercentileMillis(phase, P99), getMaxMillis(phase)));
+			}
+		}
+
+		return sb.toString();
+	}
+}
@@ -1,11 +1,8 @@
 package nz.govt.msd.driver.http;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
@@ -22,11 +19,9 @@ import com.google.common.net.MediaType;
  * @author Andrew Sumner
  */
 class FormDataWriter implements DataWriter {
-	private final HttpURLConnection connection;
 	private final List<Field> fields;
 	private final String boundary = "FormBoundary" + System.currentTimeMillis();
 	private OutputStream outputStream;
-	private PrintWriter writer = null;
 	private static final String LINE_FEED = "\r\n";
 	private StringBuilder logBuffer = null;
 
@@ -40,23 +35,45 @@ class FormDataWriter implements DataWriter {
 	 * @throws UnsupportedEncodingException
 	 */
 	public FormDataWriter(HttpURLConnection connection, String query, List<Field> fields) throws UnsupportedEncodingException {
-		this.connection = connection;
 		this.fields = fields;
 		
 		connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
 	}
 
+	/**
+	 * The length is the form fields and boundaries plus the size of each file, if a file cannot be read the length is unknown
+	 * so that the error is reported when the file is opened rather than as a mismatch in the length of the request.
+	 */
 	@Override
-	public void write(Logger logger) throws IOException {
-		outputStream = connection.getOutputStream();
+	public long getContentLength() {
+		long length = 0;
+
+		for (Field field : fields) {
+			if (field.value instanceof File) {
+				File uploadFile = (File)field.value;
+
+				if (!uploadFile.isFile() || !uploadFile.canRead()) {
+					return -1;
+				}
+
+				length += byteLength(getFilePartHeader(field.name, uploadFile, field.type)) + uploadFile.length() + LINE_FEED.length();
+			} else {
+				length += byteLength(getFormFieldPart(field.name, field.value));
+			}
+		}
+
+		return length + byteLength(getFinalBoundary());
+	}
+
+	@Override
+	public void write(OutputStream outputStream, Logger logger) throws IOException {
+		this.outputStream = outputStream;
 		
 		if (logger != null) {
 			logBuffer = new StringBuilder();
 		}
 
 		try {
-			writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), true);
-
 			for (Field field : fields) {
 				if (field.value instanceof File) {
 					addFilePart(field.name, (File)field.value, field.type);
@@ -71,71 +88,40 @@ class FormDataWriter implements DataWriter {
 				logger.trace("With Content:{}\t{}", LINE_FEED, logBuffer.toString().replace(LINE_FEED, LINE_FEED + "\t"));
 			}
 
-			if (writer != null) {
-				writer.close();
-			}
+			outputStream.close();
 		}
 	}
 	
-	private void writeFieldBoundary() {
-		StringBuilder buf = new StringBuilder();
-		buf.append("--").append(boundary).append(LINE_FEED);
-
-		if (logBuffer != null) {
-			logBuffer.append(buf);
-		}
-
-		writer.append(buf);
+	private String getFieldBoundary() {
+		return "--" + boundary + LINE_FEED;
 	}
 
-	private void writeFinalBoundary() {
-		StringBuilder buf = new StringBuilder();
-		buf.append("--").append(boundary).append("--").append(LINE_FEED);
-
-		if (logBuffer != null) {
-			logBuffer.append(buf);
-		}
+	private String getFinalBoundary() {
+		return "--" + boundary + "--" + LINE_FEED;
+	}
 
-		writer.append(buf);
+	private void writeFinalBoundary() throws IOException {
+		write(getFinalBoundary());
 	}
 
-	/**
-	 * Adds a form field to the request.
-	 * 
-	 * @param name field name
-	 * @param value field value
-	 */
-	private void addFormField(String name, Object value) {
+	private String getFormFieldPart(String name, Object value) {
 		StringBuilder buf = new StringBuilder();
 
-		writeFieldBoundary();
+		buf.append(getFieldBoundary());
 		buf.append("Content-Disposition: form-data; name=\"" + name + "\"").append(LINE_FEED);
 		// buf.append("Content-Type: text/plain; charset=utf-8").append(LINE_FEED);
 		buf.append(LINE_FEED);
 		buf.append(String.valueOf(value)).append(LINE_FEED);
 
-		if (logBuffer != null) {
-			logBuffer.append(buf);
-		}
-
-		writer.append(buf);
-		writer.flush();
+		return buf.toString();
 	}
 
-	/**
-	 * Adds a upload file section to the request.
-	 * 
-	 * @param fieldName name attribute in <input type="file" name="..." />
-	 * @param uploadFile a File to be uploaded
-	 * @param type MediaType of the file
-	 * @throws IOException
-	 */
-	private void addFilePart(String fieldName, File uploadFile, MediaType type) throws IOException {
+	private String getFilePartHeader(String fieldName, File uploadFile, MediaType type) {
 		String fileName = uploadFile.getName();
 
 		StringBuilder buf = new StringBuilder();
 
-		writeFieldBoundary();
+		buf.append(getFieldBoundary());
 		buf.append("Content-Disposition: form-data; name=\"" + fieldName + "\"; filename=\"" + fileName + "\"").append(LINE_FEED);
 		if (type == null) {
 			buf.append("Content-Type: " + URLConnection.guessContentTypeFromName(fileName)).append(LINE_FEED);
@@ -146,24 +132,49 @@ class FormDataWriter implements DataWriter {
 		// buf.append("Content-Transfer-Encoding: binary").append(LINE_FEED);
 		buf.append(LINE_FEED);
 
+		return buf.toString();
+	}
+
+	/**
+	 * Adds a form field to the request.
+	 * 
+	 * @param name field name
+	 * @param value field value
+	 * @throws IOException
+	 */
+	private void addFormField(String name, Object value) throws IOException {
+		write(getFormFieldPart(name, value));
+	}
+
+	/**
+	 * Adds a upload file section to the request, the file is streamed from disk rather than read into memory.
+	 * 
+	 * @param fieldName name attribute in <input type="file" name="..." />
+	 * @param uploadFile a File to be uploaded
+	 * @param type MediaType of the file
+	 * @throws IOException
+	 */
+	private void addFilePart(String fieldName, File uploadFile, MediaType type) throws IOException {
+		write(getFilePartHeader(fieldName, uploadFile, type));
+
 		if (logBuffer != null) {
-			logBuffer.append(buf);
 			logBuffer.append("... Content of file ").append(uploadFile.getAbsolutePath()).append(" ...").append(LINE_FEED);
 		}
 
-		writer.append(buf);
-		writer.flush();
+		DataWriter.copyFile(uploadFile, outputStream);
 
-		try (FileInputStream inputStream = new FileInputStream(uploadFile)) {
-			byte[] buffer = new byte[4096];
-			int bytesRead = -1;
-			while ((bytesRead = inputStream.read(buffer)) != -1) {
-				outputStream.write(buffer, 0, bytesRead);
-			}
-			outputStream.flush();
+		outputStream.write(LINE_FEED.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void write(String content) throws IOException {
+		if (logBuffer != null) {
+			logBuffer.append(content);
 		}
 
-		writer.append(LINE_FEED);
-		writer.flush();
+		outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static long byteLength(String content) {
+		return content.getBytes(StandardCharsets.UTF_8).length;
 	}
 }
@@ -2,6 +2,7 @@ package nz.govt.msd.driver.http;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
@@ -16,7 +17,6 @@ import org.slf4j.Logger;
  * @author Andrew Sumner
  */
 class FormUrlEncodedDataWriter implements DataWriter {
-	private final HttpURLConnection connection;
 	private final byte[] postEndcoded;
 	
 	/**
@@ -29,8 +29,6 @@ class FormUrlEncodedDataWriter implements DataWriter {
 	 * @throws UnsupportedEncodingException
 	 */
 	public FormUrlEncodedDataWriter(HttpURLConnection connection, String query, List<Field> fields) throws UnsupportedEncodingException {
-		this.connection = connection;
-		
 		StringBuilder postData = new StringBuilder();
 		
 		if (query != null && !query.isEmpty()) {
@@ -50,16 +48,20 @@ class FormUrlEncodedDataWriter implements DataWriter {
 		
 		connection.setRequestProperty("charset", "utf-8");
 		connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-		connection.setRequestProperty("Content-Length", Integer.toString(postEndcoded.length));
 	}
 
 	@Override
-	public void write(Logger logger) throws IOException {
+	public long getContentLength() {
+		return postEndcoded.length;
+	}
+
+	@Override
+	public void write(OutputStream outputStream, Logger logger) throws IOException {
 		if (logger != null) {
 			logger.trace("With Content:{}\t{}", System.lineSeparator(), new String(postEndcoded, "UTF-8"));
 		}
 
-		try (DataOutputStream wr = new DataOutputStream(connection.getOutputStream())) {
+		try (DataOutputStream wr = new DataOutputStream(outputStream)) {
 			wr.write(postEndcoded);
 		}
 	}
@@ -0,0 +1,97 @@
+package nz.govt.msd.driver.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Shared, named Gson instances.
+ *
+ * <p>
+ * A Gson instance is thread safe and caches the type adapters it builds for each class it serialises, creating a new instance
+ * for each call throws that work away and pays for the reflection again.  Code that needs a Gson should get it from here
+ * rather than creating its own.
+ * </p>
+ *
+ * <p>
+ * Profiles:
+ *
+ * * {@link #DEFAULT} - a plain Gson
+ * * {@link #PRETTY} - a Gson that pretty prints
+ * * {@link #TEST_DATA} - the Gson used to load test data files, registered by the test data loader as it adds type adapters
+ *   for classes only it knows about
+ * </p>
+ *
+ * <p>
+ * Further profiles can be registered, eg:
+ *
+ * <pre>
+ * Gson gson = GsonRegistry.register("dates", new GsonBuilder().setDateFormat("yyyy-MM-dd"));
+ * </pre>
+ * </p>
+ */
+public final class GsonRegistry {
+	public static final String DEFAULT = "default";
+	public static final String PRETTY = "pretty";
+	public static final String TEST_DATA = "test-data";
+
+	private static final ConcurrentMap<String, Gson> PROFILES = new ConcurrentHashMap<String, Gson>();
+
+	static {
+		PROFILES.put(DEFAULT, new Gson());
+		PROFILES.put(PRETTY, new GsonBuilder().setPrettyPrinting().create());
+	}
+
+	private GsonRegistry() {
+	}
+
+	/**
+	 * @return The default Gson
+	 */
+	public static Gson getDefault() {
+		return PROFILES.get(DEFAULT);
+	}
+
+	/**
+	 * @return The pretty printing Gson
+	 */
+	public static Gson getPretty() {
+		return PROFILES.get(PRETTY);
+	}
+
+	/**
+	 * @param profile Profile name
+	 * @return The Gson registered for the profile
+	 * @throws IllegalArgumentException If no Gson has been registered for the profile
+	 */
+	public static Gson get(String profile) {
+		Gson gson = profile == null ? null : PROFILES.get(profile);
+
+		if (gson == null) {
+			throw new IllegalArgumentException("No Gson has been registered for profile " + profile);
+		}
+
+		return gson;
+	}
+
+	/**
+	 * Register a Gson for a profile, replacing any Gson already registered for it.
+	 *
+	 * @param profile Profile name
+	 * @param builder Configured builder to create the Gson from
+	 * @return The registered Gson
+	 */
+	public static Gson register(String profile, GsonBuilder builder) {
+		if (profile == null || profile.isEmpty()) {
+			throw new IllegalArgumentException("Profile name must be specified");
+		}
+
+		Gson gson = builder.create();
+
+		PROFILES.put(profile, gson);
+
+		return gson;
+	}
+}
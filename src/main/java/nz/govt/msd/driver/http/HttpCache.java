@@ -0,0 +1,377 @@
+package nz.govt.msd.driver.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+/**
+ * A cache of GET responses so that reference data fetched by many tests is only downloaded once.
+ *
+ * <p>
+ * Responses are held in memory up to a total size, least recently used responses are evicted first, and optionally written
+ * to a directory so that they are also available to other JVMs, such as the forks of a build, that use the same directory.
+ * </p>
+ *
+ * <p>
+ * A cached response is served without contacting the server for the time to live, or for the Cache-Control max-age if that is
+ * shorter.  After that, if the response had an ETag or Last-Modified header, the request is sent with If-None-Match or
+ * If-Modified-Since and a 304 Not Modified response is answered from the cache, otherwise the response is fetched again.
+ * </p>
+ *
+ * <p>
+ * Only 200 responses to GET requests are cached, and not if the response has Cache-Control no-store or Vary *.  Responses
+ * are cached per url, method, credentials and cookies, including those added from a cookie jar, a response is only used if the
+ * request sends the same values for the headers listed in the Vary response header.  Requests that set their own Range, If-None-Match or If-Modified-Since headers bypass
+ * the cache.  A response is stored once it has been completely read, so a response that is not read, is only partly read, or
+ * is larger than the maximum entry size is not cached.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.withDefaults()
+ *     .cache(new HttpCache()
+ *         .withTimeToLive(TimeUnit.MINUTES, 10)
+ *         .withDiskDirectory(new File("build/http-cache")));
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A cache should be fully configured before it is used, it can then be shared between clients and threads.
+ * </p>
+ */
+public class HttpCache {
+	private static final String FILE_EXTENSION = ".cache";
+	private static final double DISK_PRUNE_TARGET = 0.9;
+
+	private long maxSize = 50L * 1024 * 1024;
+	private int maxEntrySize = 1024 * 1024;
+	private long timeToLiveMillis = TimeUnit.MINUTES.toMillis(5);
+	private File diskDirectory = null;
+	private long maxDiskSize = 500L * 1024 * 1024;
+	private Cache<String, CachedResponse> memory = createMemoryCache(maxSize);
+	private final AtomicLong diskSize = new AtomicLong(-1);
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+
+	/**
+	 * Sets the maximum memory used by cached responses, defaults to 50MB.
+	 *
+	 * @param bytes Maximum size in bytes
+	 * @return A self reference
+	 */
+	public HttpCache withMaxSize(long bytes) {
+		this.maxSize = bytes;
+		this.memory = createMemoryCache(bytes);
+		return this;
+	}
+
+	/**
+	 * Sets the size of the largest response that will be cached, defaults to 1MB.
+	 *
+	 * @param bytes Maximum size of a response body in bytes
+	 * @return A self reference
+	 */
+	public HttpCache withMaxEntrySize(int bytes) {
+		this.maxEntrySize = bytes;
+		return this;
+	}
+
+	/**
+	 * Sets how long a response is served from the cache before it is revalidated with the server, defaults to 5 minutes.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The time to live
+	 * @return A self reference
+	 */
+	public HttpCache withTimeToLive(TimeUnit unit, long duration) {
+		this.timeToLiveMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Also store responses in a directory so that they survive the JVM and can be shared by JVMs using the same directory,
+	 * defaults to memory only.
+	 *
+	 * @param directory Directory to store responses in, created if it does not exist
+	 * @return A self reference
+	 */
+	public HttpCache withDiskDirectory(File directory) {
+		this.diskDirectory = directory;
+		this.diskSize.set(-1);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum size of the disk directory, least recently used responses are deleted once it is exceeded, defaults
+	 * to 500MB.
+	 *
+	 * @param bytes Maximum size in bytes
+	 * @return A self reference
+	 */
+	public HttpCache withMaxDiskSize(long bytes) {
+		this.maxDiskSize = bytes;
+		return this;
+	}
+
+	/**
+	 * Remove all responses from memory and disk.
+	 */
+	public void clear() {
+		memory.invalidateAll();
+
+		File[] files = listDiskFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+
+		diskSize.set(-1);
+	}
+
+	/**
+	 * @return Counts of cache hits and misses and the memory used
+	 */
+	public CacheMetrics getMetrics() {
+		long size = 0;
+
+		for (CachedResponse response : memory.asMap().values()) {
+			size += response.getSize();
+		}
+
+		return new CacheMetrics(hits.sum(), diskHits.sum(), revalidations.sum(), misses.sum(), stores.sum(), memory.size(), size);
+	}
+
+	int getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+
+	/**
+	 * @param requestMethod The request method
+	 * @param url Url of the request
+	 * @param credentials Authorization sent with the request, null if none
+	 * @param cookies Cookie header sent with the request, null if none
+	 * @return Key that identifies the response
+	 */
+	static String getKey(String requestMethod, URL url, String credentials, String cookies) {
+		String key = requestMethod + " " + url.toExternalForm();
+
+		if (credentials != null && !credentials.isEmpty()) {
+			key += " " + Hashing.sha256().hashString(credentials, StandardCharsets.UTF_8);
+		}
+
+		// A response to one session must not be served to another
+		if (cookies != null && !cookies.isEmpty()) {
+			key += " cookies:" + Hashing.sha256().hashString(cookies, StandardCharsets.UTF_8);
+		}
+
+		return key;
+	}
+
+	/**
+	 * Find a response, looking on disk if it is not in memory.
+	 *
+	 * @param key Key from {@link #getKey(String, URL, String, String)}
+	 * @param requestHeaders Looks up the value of a request header by name
+	 * @return The cached response, or null if there isn't one for the request
+	 */
+	CachedResponse get(String key, Function<String, String> requestHeaders) {
+		CachedResponse response = memory.getIfPresent(key);
+
+		if (response == null && diskDirectory != null) {
+			response = readFromDisk(key);
+
+			if (response != null) {
+				diskHits.increment();
+				memory.put(key, response);
+			}
+		}
+
+		if (response == null || !response.matches(requestHeaders)) {
+			return null;
+		}
+
+		return response;
+	}
+
+	void put(CachedResponse response) {
+		if (response.getSize() > maxSize) {
+			return;
+		}
+
+		stores.increment();
+		memory.put(response.getKey(), response);
+
+		if (diskDirectory != null) {
+			writeToDisk(response);
+		}
+	}
+
+	void recordHit() {
+		hits.increment();
+	}
+
+	void recordRevalidation() {
+		revalidations.increment();
+	}
+
+	void recordMiss() {
+		misses.increment();
+	}
+
+	private static Cache<String, CachedResponse> createMemoryCache(long maxSize) {
+		return CacheBuilder.newBuilder()
+				.maximumWeight(maxSize)
+				.weigher((String key, CachedResponse response) -> response.getSize())
+				.build();
+	}
+
+	private File getDiskFile(String key) {
+		return new File(diskDirectory, Hashing.sha256().hashString(key, StandardCharsets.UTF_8) + FILE_EXTENSION);
+	}
+
+	private File[] listDiskFiles() {
+		if (diskDirectory == null) {
+			return null;
+		}
+
+		return diskDirectory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+	}
+
+	private CachedResponse readFromDisk(String key) {
+		File file = getDiskFile(key);
+
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+			CachedResponse response = CachedResponse.readFrom(in);
+
+			// Guard against a hash collision or a file from an older version
+			if (response == null || !key.equals(response.getKey())) {
+				return null;
+			}
+
+			// Marks the file as recently used for pruning
+			file.setLastModified(System.currentTimeMillis());
+
+			return response;
+		} catch (IOException e) {
+			HttpEasy.LOGGER.debug("Unable to read cached response {}: {}", file, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Write to a temporary file and then move it into place so that other JVMs never see a partly written response.
+	 */
+	private void writeToDisk(CachedResponse response) {
+		File file = getDiskFile(response.getKey());
+		File temp = null;
+
+		try {
+			Files.createDirectories(diskDirectory.toPath());
+
+			temp = File.createTempFile("response", ".tmp", diskDirectory);
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+				response.writeTo(out);
+			}
+
+			long length = temp.length();
+			long previous = file.isFile() ? file.length() : 0;
+
+			// Size the directory before the move, otherwise the new file would be counted when sizing it and again when added
+			getDiskSize();
+
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			if (diskSize.get() >= 0 && diskSize.addAndGet(length - previous) > maxDiskSize) {
+				pruneDisk();
+			}
+		} catch (IOException e) {
+			HttpEasy.LOGGER.debug("Unable to write cached response {}: {}", file, e.getMessage());
+
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	private long getDiskSize() {
+		if (diskSize.get() < 0) {
+			File[] files = listDiskFiles();
+			long size = 0;
+
+			if (files != null) {
+				for (File file : files) {
+					size += file.length();
+				}
+			}
+
+			diskSize.compareAndSet(-1, size);
+		}
+
+		return diskSize.get();
+	}
+
+	/**
+	 * Delete the least recently used responses until the directory is comfortably under its maximum size.
+	 */
+	private synchronized void pruneDisk() {
+		File[] files = listDiskFiles();
+
+		if (files == null) {
+			return;
+		}
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+		long size = 0;
+
+		for (File file : files) {
+			size += file.length();
+		}
+
+		long target = (long) (maxDiskSize * DISK_PRUNE_TARGET);
+
+		for (int i = 0; i < files.length && size > target; i++) {
+			long length = files[i].length();
+
+			if (files[i].delete()) {
+				size -= length;
+			}
+		}
+
+		diskSize.set(size);
+	}
+}
@@ -0,0 +1,304 @@
+package nz.govt.msd.driver.http;
+
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the cookies of a session so that they are sent with each request, and updated from each response, without copying them
+ * onto every request by hand.
+ *
+ * <p>
+ * The jar is safe to share between threads.  Cookies follow the usual browser rules: a cookie is sent to the host that set it,
+ * or to the domain and its sub domains if it has a Domain attribute, for paths under its Path, only over HTTPS if it is Secure,
+ * and until it expires.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpCookieJar jar = new HttpCookieJar();
+ *
+ * HttpEasy.request().cookies(jar).path(loginUrl).field("user", user).post();
+ * HttpEasy.request().cookies(jar).path(accountUrl).get();	// Sent with the session cookie set by the login
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * {@link nz.govt.msd.driver.web.Browser#getCookieJar()} provides a jar holding the cookies of the browser, so that API calls
+ * made alongside UI steps use the browser's authenticated session.
+ * </p>
+ */
+public class HttpCookieJar {
+	private final ConcurrentMap<String, ConcurrentMap<String, StoredCookie>> domains = new ConcurrentHashMap<String, ConcurrentMap<String, StoredCookie>>();
+
+	/**
+	 * Add a cookie, or replace a cookie with the same domain, path and name.
+	 *
+	 * @param domain Domain of the cookie, with a leading "." if it is sent to sub domains as well as the domain
+	 * @param path Path of the cookie, null for "/"
+	 * @param name Cookie name
+	 * @param value Cookie value
+	 * @param expiry When the cookie expires, null for a cookie that lasts for the session
+	 * @param secure Only send the cookie over HTTPS
+	 * @return A self reference
+	 */
+	public HttpCookieJar add(String domain, String path, String name, String value, Date expiry, boolean secure) {
+		boolean hostOnly = !domain.startsWith(".");
+
+		put(new StoredCookie(name, value, normaliseDomain(domain), hostOnly, path == null || path.isEmpty() ? "/" : path, secure,
+				expiry == null ? -1 : expiry.getTime()));
+
+		return this;
+	}
+
+	/**
+	 * Remove a cookie.
+	 *
+	 * @param domain Domain of the cookie, as passed to {@link #add(String, String, String, String, Date, boolean)}
+	 * @param path Path of the cookie, null for "/"
+	 * @param name Cookie name
+	 * @return A self reference
+	 */
+	public HttpCookieJar remove(String domain, String path, String name) {
+		ConcurrentMap<String, StoredCookie> cookies = domains.get(normaliseDomain(domain));
+
+		if (cookies != null) {
+			cookies.remove(getKey(path == null || path.isEmpty() ? "/" : path, name));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Remove every cookie.
+	 */
+	public void clear() {
+		domains.clear();
+	}
+
+	/**
+	 * @return Number of cookies in the jar, including any that have expired but not yet been removed
+	 */
+	public int size() {
+		int size = 0;
+
+		for (Map<String, StoredCookie> cookies : domains.values()) {
+			size += cookies.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * @param url Url a request is about to be sent to
+	 * @return Value for the Cookie header of the request, null if no cookies apply
+	 */
+	public String getCookieHeader(URL url) {
+		String host = url.getHost().toLowerCase(Locale.ROOT);
+		String path = url.getPath().isEmpty() ? "/" : url.getPath();
+		boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+		long now = System.currentTimeMillis();
+		StringBuilder sb = null;
+
+		// Look up the host and each domain it belongs to rather than checking every cookie in the jar
+		for (String domain = host; domain != null; domain = getParentDomain(domain)) {
+			ConcurrentMap<String, StoredCookie> cookies = domains.get(domain);
+
+			if (cookies == null) {
+				continue;
+			}
+
+			for (Iterator<StoredCookie> it = cookies.values().iterator(); it.hasNext();) {
+				StoredCookie cookie = it.next();
+
+				if (cookie.isExpired(now)) {
+					it.remove();
+					continue;
+				}
+
+				if (!cookie.matches(host, path, secure)) {
+					continue;
+				}
+
+				if (sb == null) {
+					sb = new StringBuilder();
+				} else {
+					sb.append("; ");
+				}
+
+				sb.append(cookie.name).append("=").append(cookie.value);
+			}
+		}
+
+		return sb == null ? null : sb.toString();
+	}
+
+	/**
+	 * Store the cookies set by a response.
+	 *
+	 * @param url Url the response is for
+	 * @param responseHeaders Response headers, Set-Cookie headers are found whatever the case of their name
+	 */
+	public void store(URL url, Map<String, List<String>> responseHeaders) {
+		for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+			if ("Set-Cookie".equalsIgnoreCase(header.getKey())) {
+				for (String setCookie : header.getValue()) {
+					store(url, setCookie);
+				}
+			}
+		}
+	}
+
+	private void store(URL url, String setCookie) {
+		String[] parts = setCookie.split(";");
+		int equals = parts[0].indexOf('=');
+
+		if (equals <= 0) {
+			return;
+		}
+
+		String host = url.getHost().toLowerCase(Locale.ROOT);
+		String name = parts[0].substring(0, equals).trim();
+		String value = parts[0].substring(equals + 1).trim();
+		String domain = host;
+		boolean hostOnly = true;
+		String path = getDefaultPath(url);
+		boolean secure = false;
+		long expiresAt = -1;
+		Long maxAge = null;
+
+		for (int i = 1; i < parts.length; i++) {
+			String attribute = parts[i].trim();
+			int split = attribute.indexOf('=');
+			String key = (split < 0 ? attribute : attribute.substring(0, split)).trim();
+			String attributeValue = split < 0 ? "" : attribute.substring(split + 1).trim();
+
+			if ("Domain".equalsIgnoreCase(key) && !attributeValue.isEmpty()) {
+				domain = normaliseDomain(attributeValue);
+				hostOnly = false;
+			} else if ("Path".equalsIgnoreCase(key) && attributeValue.startsWith("/")) {
+				path = attributeValue;
+			} else if ("Secure".equalsIgnoreCase(key)) {
+				secure = true;
+			} else if ("Max-Age".equalsIgnoreCase(key)) {
+				try {
+					maxAge = Long.parseLong(attributeValue);
+				} catch (NumberFormatException e) {
+					// Ignored as a browser would
+				}
+			} else if ("Expires".equalsIgnoreCase(key)) {
+				expiresAt = parseExpires(attributeValue, expiresAt);
+			}
+		}
+
+		// A server can't set cookies for a domain it doesn't belong to
+		if (!hostOnly && !(host.equals(domain) || host.endsWith("." + domain))) {
+			HttpEasy.LOGGER.trace("Ignoring cookie {} for domain {} set by {}", name, domain, host);
+			return;
+		}
+
+		if (maxAge != null) {
+			expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(0, maxAge));
+		}
+
+		StoredCookie cookie = new StoredCookie(name, value, domain, hostOnly, path, secure, expiresAt);
+
+		if (cookie.isExpired(System.currentTimeMillis())) {
+			remove(domain, path, name);
+		} else {
+			put(cookie);
+		}
+	}
+
+	private void put(StoredCookie cookie) {
+		domains.computeIfAbsent(cookie.domain, key -> new ConcurrentHashMap<String, StoredCookie>()).put(getKey(cookie.path, cookie.name), cookie);
+	}
+
+	private static long parseExpires(String value, long defaultValue) {
+		try {
+			return ZonedDateTime.parse(value.replace('-', ' '), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * The default path is the directory of the request path.
+	 */
+	private static String getDefaultPath(URL url) {
+		String path = url.getPath();
+		int slash = path.lastIndexOf('/');
+
+		return slash <= 0 ? "/" : path.substring(0, slash);
+	}
+
+	private static String normaliseDomain(String domain) {
+		String normalised = domain.trim().toLowerCase(Locale.ROOT);
+
+		return normalised.startsWith(".") ? normalised.substring(1) : normalised;
+	}
+
+	private static String getParentDomain(String domain) {
+		int dot = domain.indexOf('.');
+
+		return dot < 0 ? null : domain.substring(dot + 1);
+	}
+
+	private static String getKey(String path, String name) {
+		return path + ";" + name;
+	}
+
+	/**
+	 * A cookie held by the jar.
+	 */
+	private static class StoredCookie {
+		private final String name;
+		private final String value;
+		private final String domain;
+		private final boolean hostOnly;
+		private final String path;
+		private final boolean secure;
+		private final long expiresAt;
+
+		StoredCookie(String name, String value, String domain, boolean hostOnly, String path, boolean secure, long expiresAt) {
+			this.name = name;
+			this.value = value;
+			this.domain = domain;
+			this.hostOnly = hostOnly;
+			this.path = path;
+			this.secure = secure;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return expiresAt >= 0 && expiresAt <= now;
+		}
+
+		boolean matches(String host, String requestPath, boolean https) {
+			if (secure && !https) {
+				return false;
+			}
+
+			if (hostOnly && !host.equals(domain)) {
+				return false;
+			}
+
+			if (requestPath.equals(path)) {
+				return true;
+			}
+
+			return requestPath.startsWith(path) && (path.endsWith("/") || requestPath.charAt(path.length()) == '/');
+		}
+	}
+}
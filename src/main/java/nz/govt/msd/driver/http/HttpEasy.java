@@ -2,29 +2,47 @@ package nz.govt.msd.driver.http;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.net.ProtocolException;
 import java.net.Proxy;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.CountingOutputStream;
 import com.google.common.net.MediaType;
 
 import nz.govt.msd.driver.http.HttpEasyReader.Family;
+import nz.govt.msd.utils.Deadline;
 
 /**
  * Fluent wrapper around {@link HttpURLConnection} with full support for HTTP messages such as GET, POST, HEAD, etc
@@ -45,8 +63,13 @@ import nz.govt.msd.driver.http.HttpEasyReader.Family;
  * </p>
  * 
  * <p>
+ * The defaults are held by a shared {@link HttpEasyClient}, if different tests need different settings at the same time,
+ * eg a different proxy or environment, build a client for each and start requests with {@code client.request()}.
+ * </p>
+ * 
+ * <p>
  * Note: if your url can contain weird characters you will want to encode it,
- * something like this: myUrl = URLEncoder.encode(myUrl, "UTF-8");
+ * something like this: myUrl = URLEncoder.encode(myUrl, "UTF-8");  Values passed to urlParameters() are encoded for you.
  * </p>
  *
  * <p>
@@ -61,8 +84,9 @@ import nz.govt.msd.driver.http.HttpEasyReader.Family;
  *                          .urlParameters(startKey[0], endKey[0])
  *                          .get();
  * 
- * String id = r.jsonPath("rows[0].doc._id").getAsString(); 
- * String rev = r.jsonPath("rows[0].doc._rev").getAsString();
+ * Map{@literal <String, JsonElement>} doc = r.jsonPaths("rows[0].doc._id", "rows[0].doc._rev");
+ * String id = doc.get("rows[0].doc._id").getAsString(); 
+ * String rev = doc.get("rows[0].doc._rev").getAsString();
  * </pre>
  * </p>
  * 
@@ -84,6 +108,11 @@ import nz.govt.msd.driver.http.HttpEasyReader.Family;
  * </p>
  * 
  * <p>
+ * Transient failures, such as a 503 response or a connection reset, can be retried with a {@link RetryPolicy} set via 
+ * HttpEasy.withDefaults().retryPolicy(...) or request().retry(...).  Each retry is logged as a warning.
+ * </p>
+ * 
+ * <p>
  * <b>Authentication</b>
  * </p>
  * 
@@ -99,7 +128,8 @@ import nz.govt.msd.driver.http.HttpEasyReader.Family;
  * </p>
  *
  * <p>
- * There is no fine grained control, its more of an all or nothing approach:
+ * There is no fine grained control, its more of an all or nothing approach.  The settings apply to the connections made by 
+ * the client, not to the whole JVM:
  * </p>
  * <p>
  * 
@@ -134,40 +164,165 @@ import nz.govt.msd.driver.http.HttpEasyReader.Family;
  * </p>
  * 
  * <p>
- * Redirects are NOT automatically followed - at least for REST base calls - even though the documentation
- * for HttpURLConnection says that it should...
+ * Redirects are not followed unless a {@link RedirectPolicy} is set, either for all requests or for a single request:
  * </p>
  * <p>
  * 
  * <pre>
+ * HttpEasy.withDefaults().redirectPolicy(new RedirectPolicy());
+ * 
  * HttpEasyReader response = HttpEasy.request()
- *     .doNotFailOn(Family.REDIRECTION) 
+ *     .followRedirects(new RedirectPolicy().withMaxRedirects(2)) 
  *     .path(url) 
- *     .head();
+ *     .get();
+ * </pre>
+ * </p>
+ * 
+ * <p>
+ * The policy rewrites the method where a browser would, keeps credentials to the original site and remembers permanent 
+ * redirects so later requests skip the redirect.  Without a policy a redirect response is treated as a failure unless it 
+ * is excluded with doNotFailOn(Family.REDIRECTION), the Location header can then be read from the response.
+ * </p>
+ * 
+ * <p>
+ * <b>Compression</b>
+ * </p>
+ * 
+ * <p>
+ * Compressed responses can be requested with {@link #acceptCompressedResponse()}, or for all requests with 
+ * HttpEasy.withDefaults().acceptCompressedResponses(true), gzip and deflate encoded responses are decoded transparently.  
+ * Request bodies can be gzipped with {@link #compressRequest()}.  The number of bytes sent and received, both on the wire 
+ * and before compression, are available from {@link HttpEasyReader}.
+ * </p>
+ * 
+ * <p>
+ * <b>Uploads</b>
+ * </p>
+ * 
+ * <p>
+ * Request bodies are streamed to the server rather than buffered in memory, with a Content-Length when the size of the body 
+ * (including any files) can be calculated up front and chunked otherwise, or when the request is compressed.  Files are
+ * copied directly from disk so large files can be uploaded without a matching increase in heap usage.
+ * </p>
+ * 
+ * <p>
+ * <b>Asynchronous Requests</b>
+ * </p>
+ * 
+ * <p>
+ * Each HTTP method has an async version, eg getAsync(), that sends the request on a bounded thread pool and returns a
+ * {@link CompletableFuture}.  Response codes are checked in the same way as the blocking methods, a failing response
+ * completes the future exceptionally unless it has been excluded with doNotFailOn().  Use {@link #allOf(List)} to wait
+ * for a batch of requests to complete.  The response is read into memory before the future completes so that the connection
+ * is released as soon as possible.  The size of the thread pool is set via HttpEasy.withDefaults().asyncThreadCount(...).
+ * </p>
+ * 
+ * <p>
+ * A request object must not be modified or reused once an async method has been called on it.
+ * </p>
+ * 
+ * <p>
+ * To send many similar requests, eg to seed test data, with a bounded number in parallel use {@link HttpEasyBatch}.
+ * </p>
+ * 
+ * <p>
+ * <b>Connection Reuse</b>
+ * </p>
+ * 
+ * <p>
+ * By default a new connection is opened for every request and closed once the response has been read.  To reuse keep-alive 
+ * connections, and avoid a new TCP and TLS handshake for each request, change the transport:
+ * </p>
+ * <p>
  * 
- * if (response.getResponseCodeFamily() == Family.REDIRECTION) {
- *     url = response.getHeaderField("Location");
- *     ... 
- * }
+ * <pre>
+ * HttpEasy.withDefaults()
+ *     .transport(new PooledHttpTransport().withMaxConnectionsPerHost(10));
  * </pre>
  * </p>
  * 
  * <p>
+ * A pooled connection is returned to the pool once the response has been read, if you don't read the response (eg only check
+ * the response code) call {@link HttpEasyReader#close()} to release it.
+ * </p>
+ *
+ * <p>
+ * <b>Throttling</b>
+ * </p>
+ *
+ * <p>
+ * To avoid overloading a shared test environment when tests run in parallel, limit the requests sent to each host:
+ * </p>
+ * <p>
+ *
+ * <pre>
+ * HttpEasy.withDefaults().throttleHost("uat.example.com", 20, 5);	// 20 requests per second, 5 in flight
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A request waits until it is within the limits, see {@link RequestThrottle}, and stays in flight until its response head 
+ * has been received.
+ * </p>
+ *
+ * <p>
+ * <b>Caching</b>
+ * </p>
+ *
+ * <p>
+ * GET responses that many tests fetch, such as code tables, can be cached so that they are downloaded once and revalidated with 
+ * the server using their ETag or Last-Modified header once they are stale:
+ * </p>
+ * <p>
+ *
+ * <pre>
+ * HttpEasy.withDefaults().cache(new HttpCache().withDiskDirectory(new File("build/http-cache")));
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A cached response is read from {@link HttpEasyReader} in the same way as one from the server, a 304 Not Modified response 
+ * to a revalidation is seen as the cached 200 response.  See {@link HttpCache} for what is cached and for how long.
+ * </p>
+ *
+ * <p>
+ * <b>Timings</b>
+ * </p>
+ *
+ * <p>
+ * The DNS lookup, connect, TLS handshake, time to first byte and body read of each request, along with its status and size,
+ * can be reported to a {@link HttpMetricsListener}.  {@link HttpMetrics} keeps a histogram per host and path template:
+ * </p>
+ * <p>
+ *
+ * <pre>
+ * HttpEasy.withDefaults().metrics(metrics);
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * Each attempt at a request is timed separately, a response answered from the cache is not timed.
+ * </p>
+ *
+ * <p>
  * <b>Logging</b>
  * </p>
  * 
  * <p>
  * Logging of requests and responses can be enabled by {@link #logRequestDetails} or, if using Eclipse, the TCP/IP Monitor utility.
+ * The timings of each request are logged at trace level.
  * </p>
  */
 public class HttpEasy {
 	static final Logger LOGGER = LoggerFactory.getLogger(HttpEasy.class);
+	private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+	private static final ScheduledThreadPoolExecutor DEADLINES = createDeadlineExecutor();
 
-	// These only apply per request - but are visible to package
-	List<Integer> ignoreResponseCodes = new ArrayList<Integer>();
-	List<Family> ignoreResponseFamily = new ArrayList<Family>();
+	private final HttpEasyClient client;
 
 	// These only apply per request
+	private final BitSet ignoreResponseCodes = new BitSet();
+	private final EnumSet<Family> ignoreResponseFamily = EnumSet.noneOf(Family.class);
 	private String authString = null;
 	private String baseURI = "";
 	private String path = "";
@@ -182,11 +337,132 @@ public class HttpEasy {
 	private List<Field> fields = new ArrayList<Field>();
 	private boolean logRequestDetails;
 	private Integer timeout = null;
+	private HttpTransport transport = null;
+	private Boolean acceptCompressedResponse = null;
+	private Boolean compressRequest = null;
+	private RetryPolicy retryPolicy = null;
+	private RedirectPolicy redirectPolicy = null;
+	private Map<HttpURLConnection, RequestTimer> timers = new ConcurrentHashMap<HttpURLConnection, RequestTimer>();
+	private Map<HttpURLConnection, ScheduledFuture<?>> expiries = new ConcurrentHashMap<HttpURLConnection, ScheduledFuture<?>>();
+	private Long deadlineMillis = null;
+	private Deadline deadline = null;
+	private URL redirectLocation = null;
+	private boolean redirectDroppedBody = false;
+	private boolean sendCredentials = true;
+	private HttpCookieJar cookieJar = null;
+	private HttpCookieJar redirectCookies = null;
+	private long requestBytes = 0;
+	private long requestBytesOnWire = 0;
+
+	/**
+	 * Use {@link #request()} or {@link HttpEasyClient#request()} to create a request.
+	 * 
+	 * @param client Client whose settings the request is made with
+	 */
+	HttpEasy(HttpEasyClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * @return A new request with the same settings as this one, so that it can be changed for a single send without changing this
+	 * request
+	 */
+	private HttpEasy copy() {
+		HttpEasy copy = new HttpEasy(client);
+
+		copy.ignoreResponseCodes.or(ignoreResponseCodes);
+		copy.ignoreResponseFamily.addAll(ignoreResponseFamily);
+		copy.authString = authString;
+		copy.baseURI = baseURI;
+		copy.path = path;
+		copy.query = query;
+		copy.startToken = startToken;
+		copy.endToken = endToken;
+		copy.urlParams = urlParams;
+		copy.dataContentType = dataContentType;
+		copy.rawData = rawData;
+		copy.rawDataMediaType = rawDataMediaType;
+		copy.headers.putAll(headers);
+		copy.fields.addAll(fields);
+		copy.logRequestDetails = logRequestDetails;
+		copy.timeout = timeout;
+		copy.transport = transport;
+		copy.acceptCompressedResponse = acceptCompressedResponse;
+		copy.compressRequest = compressRequest;
+		copy.retryPolicy = retryPolicy;
+		copy.redirectPolicy = redirectPolicy;
+		copy.deadlineMillis = deadlineMillis;
+		copy.cookieJar = cookieJar;
+
+		return copy;
+	}
 
 	boolean isLogRequestDetails() {
 		return logRequestDetails;
 	}
 
+	/**
+	 * Return the connection to the transport.
+	 * 
+	 * @param connection Connection opened by this request
+	 */
+	void releaseConnection(HttpURLConnection connection) {
+		releaseConnection(connection, 0);
+	}
+
+	/**
+	 * Return the connection to the transport and report the timings of the request.
+	 * 
+	 * @param connection Connection opened by this request
+	 * @param responseBytes Bytes of the response body read from the connection
+	 */
+	void releaseConnection(HttpURLConnection connection, long responseBytes) {
+		// A response from the cache never came from the transport
+		if (!(connection instanceof BufferedHttpURLConnection)) {
+			transport.release(connection);
+		}
+
+		ScheduledFuture<?> expiry = expiries.remove(connection);
+
+		if (expiry != null) {
+			expiry.cancel(false);
+		}
+
+		RequestTimer timer = timers.remove(connection);
+
+		if (timer != null) {
+			publish(timer, responseBytes);
+		}
+	}
+
+	private void publish(RequestTimer timer, long responseBytes) {
+		HttpMetricsListener listener = client.getMetrics();
+
+		if (listener == null && !LOGGER.isTraceEnabled()) {
+			return;
+		}
+
+		RequestMetrics metrics = timer.finish(requestBytesOnWire, responseBytes);
+
+		LOGGER.trace("Timings {}", metrics);
+
+		if (listener != null) {
+			try {
+				listener.requestCompleted(metrics);
+			} catch (RuntimeException e) {
+				LOGGER.warn("Metrics listener failed for {} {}: {}", metrics.getMethod(), metrics.getUrl(), e.toString());
+			}
+		}
+	}
+
+	long getRequestBytes() {
+		return requestBytes;
+	}
+
+	long getRequestBytesOnWire() {
+		return requestBytesOnWire;
+	}
+
 	/**
 	 * @return Default settings object
 	 */
@@ -195,10 +471,10 @@ public class HttpEasy {
 	}
 
 	/**
-	 * @return Request object
+	 * @return Request object using the default client's settings
 	 */
 	public static HttpEasy request() {
-		return new HttpEasy();
+		return HttpEasyDefaults.getClient().request();
 	}
 
 	/**
@@ -225,7 +501,8 @@ public class HttpEasy {
 
 	/**
 	 * Sets a specified timeout value, in milliseconds, to be used when opening a communications link to the resource referenced by this URLConnection,
-	 * and when reading from Input stream when a connection is established .
+	 * and when reading from Input stream when a connection is established .  Overrides the client's connect and read timeouts, 
+	 * see {@link HttpEasyDefaults#connectTimeout(TimeUnit, long)} and {@link HttpEasyDefaults#readTimeout(TimeUnit, long)}.
 	 * 
 	 * If the timeout expires a java.net.SocketTimeoutException is raised.
 	 * 
@@ -239,6 +516,24 @@ public class HttpEasy {
 		return this;
 	}
 
+	/**
+	 * Limit the time taken by the whole request: connecting, sending the request, any retries and reading the response.
+	 * 
+	 * <p>
+	 * The connect and read timeouts are reduced to the time remaining, and if the deadline passes while the response is being
+	 * read the connection is closed so that the read fails rather than waiting on a server that has stopped responding.  A
+	 * {@link Deadline} on the calling thread also applies, whichever is earlier.
+	 * </p>
+	 * 
+	 * @param unit The unit of time
+	 * @param duration Time allowed from when the request is sent until the response has been read
+	 * @return A self reference
+	 */
+	public HttpEasy deadline(TimeUnit unit, long duration) {
+		this.deadlineMillis = unit.toMillis(duration);
+		return this;
+	}
+
 	/**
 	 * Set the host and port of the URL for the end-point.  baseURI, path and query are helpers only and any of these can take full URL.
 	 * @param uri The host and port of the URL
@@ -269,6 +564,67 @@ public class HttpEasy {
 		return this;
 	}
 
+	/**
+	 * Ask the server to compress the response by sending an "Accept-Encoding: gzip, deflate" header, see 
+	 * {@link HttpEasyDefaults#acceptCompressedResponses(boolean)} to do this for all requests.
+	 * 
+	 * <p>
+	 * A compressed response is decoded transparently before it is read by {@link HttpEasyReader}.
+	 * </p>
+	 * 
+	 * @return A self reference
+	 */
+	public HttpEasy acceptCompressedResponse() {
+		this.acceptCompressedResponse = true;
+		return this;
+	}
+
+	/**
+	 * Gzip the request body of a {@link #data(Object, MediaType) raw data} or {@link #urlEncodedForm() url encoded form} 
+	 * request and send a "Content-Encoding: gzip" header, see {@link HttpEasyDefaults#compressRequests(boolean)} to do this 
+	 * for all requests.  Only use this if the server is known to support compressed requests.
+	 * 
+	 * @return A self reference
+	 */
+	public HttpEasy compressRequest() {
+		this.compressRequest = true;
+		return this;
+	}
+
+	/**
+	 * Retry the request if it fails with a transient error, overriding {@link HttpEasyDefaults#retryPolicy(RetryPolicy)}.
+	 * 
+	 * @param policy Retry policy, {@link RetryPolicy#none()} to not retry this request
+	 * @return A self reference
+	 */
+	public HttpEasy retry(RetryPolicy policy) {
+		this.retryPolicy = policy;
+		return this;
+	}
+
+	/**
+	 * Send the cookies in the jar that apply to the url, and store the cookies set by the response, overriding 
+	 * {@link HttpEasyDefaults#cookieJar(HttpCookieJar)}.  Any Cookie header set on the request is sent as well.
+	 * 
+	 * @param jar Cookie jar
+	 * @return A self reference
+	 */
+	public HttpEasy cookies(HttpCookieJar jar) {
+		this.cookieJar = jar;
+		return this;
+	}
+
+	/**
+	 * Follow redirect responses, overriding {@link HttpEasyDefaults#redirectPolicy(RedirectPolicy)}.
+	 * 
+	 * @param policy Redirect policy, {@link RedirectPolicy#none()} to not follow redirects for this request
+	 * @return A self reference
+	 */
+	public HttpEasy followRedirects(RedirectPolicy policy) {
+		this.redirectPolicy = policy;
+		return this;
+	}
+
 	/**
 	 * If called will cause the request and response details to be logged.
 	 * 
@@ -285,7 +641,7 @@ public class HttpEasy {
 
 	/**
 	 * Override the default parameter start and end tokens.  By default any part of the url containing {...} is treated as a parameter and 
-	 * replaced by the values passed in by {@link #urlParameters(Object...)}.
+	 * replaced by the values passed in by {@link #urlParameters(Object...)}, see {@link UrlTemplate}.
 	 * 
 	 * @param startToken Start token
 	 * @param endToken End Token
@@ -301,7 +657,8 @@ public class HttpEasy {
 	
 	/**
 	 * Set the parameter values for the parameters in the URL. 
-	 * @param pathParams A list of parameters to fill in any parameters required by the URL.  These are replaced in the order they are found in the URL.  
+	 * @param pathParams A list of parameters to fill in any parameters required by the URL.  These are replaced in the order they are found in the URL
+	 * and are percent-encoded, there must be exactly one value per parameter.  If no values are set the URL is used as is.
 	 * @return A self reference
 	 */
 	public HttpEasy urlParameters(Object... pathParams) {
@@ -417,7 +774,14 @@ public class HttpEasy {
 	 * @return A self reference
 	 */
 	public HttpEasy doNotFailOn(Integer... reponseCodes) {
-		this.ignoreResponseCodes.addAll(Arrays.asList(reponseCodes));
+		for (Integer code : reponseCodes) {
+			if (code == null || code < 0) {
+				throw new IllegalArgumentException("Invalid response code: " + code);
+			}
+
+			this.ignoreResponseCodes.set(code);
+		}
+
 		return this;
 	}
 	
@@ -429,7 +793,7 @@ public class HttpEasy {
 	 * @return A self reference
 	 */
 	public HttpEasy doNotFailOn(Family... responseFamily) {
-		this.ignoreResponseFamily.addAll(Arrays.asList(responseFamily));
+		Collections.addAll(this.ignoreResponseFamily, responseFamily);
 		return this;
 	}
 
@@ -439,7 +803,7 @@ public class HttpEasy {
 	 * @throws IOException If any connection or request errors
 	 */
 	public HttpEasyReader get() throws IOException {
-		return new HttpEasyReader(getConnectionMethod("GET"), this);
+		return execute("GET");
 	}
 
 	/**
@@ -448,7 +812,7 @@ public class HttpEasy {
 	 * @throws IOException If any connection or request errors
 	 */
 	public HttpEasyReader head() throws IOException {
-		return new HttpEasyReader(getConnectionMethod("HEAD"), this);
+		return execute("HEAD");
 	}
 
 	/**
@@ -457,7 +821,7 @@ public class HttpEasy {
 	 * @throws IOException If any connection or request errors
 	 */
 	public HttpEasyReader post() throws IOException {
-		return new HttpEasyReader(getConnectionMethod("POST"), this);
+		return execute("POST");
 	}
 
 	/**
@@ -467,7 +831,7 @@ public class HttpEasy {
 	 */
 	
 	public HttpEasyReader put() throws IOException {
-		return new HttpEasyReader(getConnectionMethod("PUT"), this);
+		return execute("PUT");
 	}
 
 	/**
@@ -476,74 +840,704 @@ public class HttpEasy {
 	 * @throws IOException If any connection or request errors
 	 */
 	public HttpEasyReader delete() throws IOException {
-		return new HttpEasyReader(getConnectionMethod("DELETE"), this);
+		return execute("DELETE");
 	}
 
-	private HttpURLConnection getConnectionMethod(String requestMethod) throws IOException {
-		int fifteenSeconds = 15 * 1000;
-		DataWriter dataWriter = null;
-		URL url = getURL();
-		HttpURLConnection connection = getConnection(url);
-        
-		setHeaders(connection);
+	/**
+	 * Performs an HTTP GET and downloads the response to a file.
+	 * 
+	 * <p>
+	 * If {@link DownloadOptions#withResume(boolean)} is set the ETag or Last-Modified of the response is recorded next to the file 
+	 * while it is downloaded.  If the download is interrupted, downloading the same url to the same folder again requests only 
+	 * the remainder of the file, sending the recorded value as If-Range so that the server sends the whole of the file instead 
+	 * if it has changed since.  A download can only be resumed if the server advertises "Accept-Ranges: bytes" and identifies 
+	 * the file with a strong ETag or Last-Modified header.
+	 * </p>
+	 * 
+	 * <p>
+	 * The Range headers are sent from a copy of this request, this request is left unchanged.
+	 * </p>
+	 * 
+	 * @param saveDir Location to place the file, the file name is gotten from the response headers
+	 * @param options Download options
+	 * @return File object
+	 * @throws IOException If any connection or request errors, or unable to write the file
+	 * @see HttpEasyReader#downloadFile(String, DownloadOptions)
+	 */
+	public File downloadFile(String saveDir, DownloadOptions options) throws IOException {
+		if (!options.isResume()) {
+			return get().downloadFile(saveDir, options);
+		}
 
-		connection.setRequestMethod(requestMethod);
+		// Start from the requested url if this request has been sent before
+		redirectLocation = null;
 
-		if (timeout != null) {
-			connection.setConnectTimeout(timeout);
-			connection.setReadTimeout(timeout);
-		} else {
-			connection.setConnectTimeout(fifteenSeconds);
-		}
+		URL url = getURL();
+		PartialDownload partial = PartialDownload.find(new File(saveDir), url);
 
-		connection.setInstanceFollowRedirects(false);
-		
-		if (requestMethod.equals("POST") || requestMethod.equals("PUT")) {
-			dataWriter = getDataWriter(dataWriter, url, connection);
-			
-			connection.setDoOutput(true);
-		} else {
-			if (fields.size() > 0) {
-				throw new IllegalStateException("Fields have been specified but the method " + requestMethod + " will not use them, try POST or PUT instead.");
-			}
+		if (partial == null) {
+			return get().downloadResumableFile(saveDir, url, options);
 		}
 
-		String authUser = "";
+		LOGGER.trace("Resuming download of {} from byte {}", partial.getFile().getName(), partial.getLength());
 
-		if (authString != null && !authString.isEmpty()) {
-			authUser = authString.substring(0, authString.indexOf(":"));
-			authUser = " as user '" + authUser + "'";
-		}
+		return copy()
+				.header("Range", "bytes=" + partial.getLength() + "-")
+				.header("If-Range", partial.getValidator())
+				// Ranges apply to the encoded response so ask for the file as is
+				.header("Accept-Encoding", "identity")
+				.doNotFailOn(HttpEasyReader.HTTP_RANGE_NOT_SATISFIABLE)
+				.get()
+				.resumeFile(partial, url, options);
+	}
 
-		LOGGER.trace("Sending {}{} to {}", requestMethod, authUser, url.toString());
-		
-		if (logRequestDetails) {
-			StringBuilder sb = new StringBuilder();
+	/**
+	 * Performs an HTTP GET on the {@link HttpEasyClient#getAsyncExecutor() async executor}.
+	 * @return A future that completes with the request response wrapped by {@link HttpEasyReader}, or completes exceptionally
+	 * if the request fails
+	 */
+	public CompletableFuture<HttpEasyReader> getAsync() {
+		return executeAsync("GET");
+	}
 
-			for (Entry<String, List<String>> header : connection.getRequestProperties().entrySet()) {
-				for (String value : header.getValue()) {
-					sb.append("\t").append(header.getKey()).append(": ").append(value).append(System.lineSeparator());
-				}
-			}
+	/**
+	 * Performs an HTTP HEAD on the {@link HttpEasyClient#getAsyncExecutor() async executor}.
+	 * @return A future that completes with the request response wrapped by {@link HttpEasyReader}, or completes exceptionally
+	 * if the request fails
+	 */
+	public CompletableFuture<HttpEasyReader> headAsync() {
+		return executeAsync("HEAD");
+	}
 
-			LOGGER.trace("With Request Headers:{}{}", System.lineSeparator(), sb);
-		}
+	/**
+	 * Performs an HTTP POST on the {@link HttpEasyClient#getAsyncExecutor() async executor}.
+	 * @return A future that completes with the request response wrapped by {@link HttpEasyReader}, or completes exceptionally
+	 * if the request fails
+	 */
+	public CompletableFuture<HttpEasyReader> postAsync() {
+		return executeAsync("POST");
+	}
 
-		connection.connect();
+	/**
+	 * Performs an HTTP PUT on the {@link HttpEasyClient#getAsyncExecutor() async executor}.
+	 * @return A future that completes with the request response wrapped by {@link HttpEasyReader}, or completes exceptionally
+	 * if the request fails
+	 */
+	public CompletableFuture<HttpEasyReader> putAsync() {
+		return executeAsync("PUT");
+	}
 
-		if (dataWriter != null) {
-			dataWriter.write(logRequestDetails ? LOGGER : null);
-		}
+	/**
+	 * Performs an HTTP DELETE on the {@link HttpEasyClient#getAsyncExecutor() async executor}.
+	 * @return A future that completes with the request response wrapped by {@link HttpEasyReader}, or completes exceptionally
+	 * if the request fails
+	 */
+	public CompletableFuture<HttpEasyReader> deleteAsync() {
+		return executeAsync("DELETE");
+	}
 
-		return connection;
+	/**
+	 * Combine a batch of asynchronous requests into a single future so they can be waited on together.
+	 * 
+	 * <pre>
+	 * List{@literal <CompletableFuture<HttpEasyReader>>} requests = new ArrayList{@literal <>}();
+	 * 
+	 * for (String id : ids) {
+	 *     requests.add(HttpEasy.request().path("/item/{id}").urlParameters(id).getAsync());
+	 * }
+	 * 
+	 * List{@literal <HttpEasyReader>} responses = HttpEasy.allOf(requests).join();
+	 * </pre>
+	 * 
+	 * @param requests Futures returned by the async request methods
+	 * @return A future that completes with the responses, in the same order as the requests, once they have all completed or 
+	 * completes exceptionally if any of the requests failed
+	 */
+	public static CompletableFuture<List<HttpEasyReader>> allOf(List<CompletableFuture<HttpEasyReader>> requests) {
+		return CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[requests.size()]))
+				.thenApply(done -> requests.stream().map(CompletableFuture::join).collect(Collectors.toList()));
 	}
 
-	private DataWriter getDataWriter(DataWriter dataWriter, URL url, HttpURLConnection connection) throws UnsupportedEncodingException {
-		if (dataContentType == DataContentType.AUTO_SELECT) {
-			if (!fields.isEmpty()) {
-				if (fieldsHasFile()) {
-					dataContentType = DataContentType.FORM_DATA;
-				} else {
+	private HttpEasyReader execute(String requestMethod) throws IOException {
+		Deadline requestDeadline = deadlineMillis == null ? null : Deadline.start(TimeUnit.MILLISECONDS, deadlineMillis);
+
+		try {
+			// Held for the life of the connection, the response is read after this method returns
+			deadline = Deadline.current();
+
+			// Start from the requested url if this request has been sent before
+			redirectLocation = null;
+			redirectDroppedBody = false;
+			sendCredentials = true;
+			redirectCookies = null;
+
+			HttpCache cache = client.getCache();
+
+			if (cache != null && isCacheable(requestMethod)) {
+				return executeWithCache(requestMethod, cache);
+			}
+
+			return new HttpEasyReader(connectFollowingRedirects(requestMethod), this);
+		} finally {
+			if (requestDeadline != null) {
+				requestDeadline.close();
+			}
+		}
+	}
+
+	/**
+	 * Send the request and, if there is a redirect policy, follow redirect responses to the final location.
+	 */
+	private HttpURLConnection connectFollowingRedirects(String requestMethod) throws IOException {
+		RedirectPolicy policy = redirectPolicy == null ? client.getRedirectPolicy() : redirectPolicy;
+
+		if (policy == null || policy.getMaxRedirects() == 0) {
+			return connect(requestMethod);
+		}
+
+		URL original = getURL();
+		String method = requestMethod;
+		int redirects = 0;
+		RedirectPolicy.Redirect remembered;
+
+		// Skip the round trip to permanent redirects that have already been seen
+		while (redirects < policy.getMaxRedirects() && (remembered = policy.getPermanentRedirect(getURL())) != null) {
+			method = redirectTo(original, getURL(), remembered.getLocation(), remembered.getStatus(), method);
+			redirects++;
+		}
+
+		while (true) {
+			HttpURLConnection connection = connect(method);
+
+			if (!RedirectPolicy.isRedirect(connection.getResponseCode())) {
+				return connection;
+			}
+
+			URL url = getURL();
+			ResponseHead head = ResponseHead.from(connection);
+			URL location = getLocation(url, head.getHeader("Location"));
+
+			if (location == null) {
+				// Nothing to follow, handled as any other response
+				return connection;
+			}
+
+			releaseConnection(connection);
+
+			if (redirects >= policy.getMaxRedirects()) {
+				throw new ProtocolException(String.format("%s %s was redirected more than %s times", requestMethod, original, policy.getMaxRedirects()));
+			}
+
+			keepRedirectCookies(url, head);
+			policy.redirected(url, head.getStatus(), location);
+			method = redirectTo(original, url, location, head.getStatus(), method);
+			redirects++;
+		}
+	}
+
+	/**
+	 * Point the request at the new location, dropping the body if the method changes and the credentials if it is on 
+	 * another site.
+	 * 
+	 * @return The method to send to the new location with
+	 */
+	private String redirectTo(URL original, URL from, URL location, int status, String method) {
+		String redirectMethod = RedirectPolicy.getRedirectMethod(status, method);
+
+		LOGGER.trace("{} {} redirected with {} to {} {}", method, from, status, redirectMethod, location);
+
+		if (!redirectMethod.equals(method)) {
+			redirectDroppedBody = true;
+		}
+
+		redirectLocation = location;
+		sendCredentials = isSameOrigin(original, location);
+
+		return redirectMethod;
+	}
+
+	/**
+	 * @return The url of a Location header, which may be relative to the url that was redirected, null if there isn't an http 
+	 * or https url to follow
+	 */
+	private URL getLocation(URL url, String location) {
+		if (location == null || location.trim().isEmpty()) {
+			return null;
+		}
+
+		try {
+			URL target = new URL(url, location.trim());
+
+			if ("http".equalsIgnoreCase(target.getProtocol()) || "https".equalsIgnoreCase(target.getProtocol())) {
+				return target;
+			}
+		} catch (MalformedURLException e) {
+			LOGGER.warn("Unable to follow redirect from {} to '{}': {}", url, location, e.getMessage());
+		}
+
+		return null;
+	}
+
+	private boolean isSameOrigin(URL a, URL b) {
+		int portA = a.getPort() == -1 ? a.getDefaultPort() : a.getPort();
+		int portB = b.getPort() == -1 ? b.getDefaultPort() : b.getPort();
+
+		return a.getProtocol().equalsIgnoreCase(b.getProtocol()) && a.getHost().equalsIgnoreCase(b.getHost()) && portA == portB;
+	}
+
+	/**
+	 * Keep the cookies set by a redirect response, eg a login session, to send on to later hops.  A request with a cookie jar
+	 * has already stored them in the jar.
+	 */
+	private void keepRedirectCookies(URL url, ResponseHead head) {
+		if (getCookieJar() != null || head.getHeaders("Set-Cookie").isEmpty()) {
+			return;
+		}
+
+		if (redirectCookies == null) {
+			redirectCookies = new HttpCookieJar();
+		}
+
+		redirectCookies.store(url, head.getHeaders());
+	}
+
+	private HttpCookieJar getCookieJar() {
+		return cookieJar == null ? client.getCookieJar() : cookieJar;
+	}
+
+	private HttpURLConnection connect(String requestMethod) throws IOException {
+		RetryPolicy policy = retryPolicy == null ? client.getRetryPolicy() : retryPolicy;
+
+		if (policy == null || !policy.isRetryableMethod(requestMethod)) {
+			return getConnectionMethod(requestMethod);
+		}
+
+		return connectWithRetry(requestMethod, policy);
+	}
+
+	/**
+	 * Requests that ask for part of a response, or manage their own validators, bypass the cache.
+	 */
+	private boolean isCacheable(String requestMethod) {
+		return "GET".equals(requestMethod) 
+				&& getRequestHeader("Range") == null 
+				&& getRequestHeader("If-None-Match") == null 
+				&& getRequestHeader("If-Modified-Since") == null;
+	}
+
+	/**
+	 * Answer from the cache while the cached response is fresh, once stale ask the server whether it has changed and answer
+	 * from the cache if the server responds 304 Not Modified.  A full response is added to the cache once it has been read.
+	 */
+	private HttpEasyReader executeWithCache(String requestMethod, HttpCache cache) throws IOException {
+		URL url = getURL();
+		String credentials = authString != null ? authString : getRequestHeader("Authorization");
+		String cookies = getCookies(url);
+		String key = HttpCache.getKey(requestMethod, url, credentials, cookies);
+		// Vary is matched against the headers as sent, which includes the cookies from the cookie jar
+		Function<String, String> requestHeaders = name -> "Cookie".equalsIgnoreCase(name) ? cookies : getRequestHeader(name);
+		CachedResponse cached = cache.get(key, requestHeaders);
+
+		if (cached != null && cached.isFresh()) {
+			cache.recordHit();
+			return new HttpEasyReader(cached.toConnection(url, requestMethod), this);
+		}
+
+		HttpURLConnection connection;
+
+		try {
+			if (cached != null && cached.getETag() != null) {
+				headers.put("If-None-Match", cached.getETag());
+			}
+
+			if (cached != null && cached.getLastModified() != null) {
+				headers.put("If-Modified-Since", cached.getLastModified());
+			}
+
+			connection = connectFollowingRedirects(requestMethod);
+		} finally {
+			headers.remove("If-None-Match");
+			headers.remove("If-Modified-Since");
+		}
+
+		if (cached != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			CachedResponse revalidated = cached.revalidated(connection, cache.getTimeToLiveMillis());
+
+			releaseConnection(connection);
+			cache.put(revalidated);
+			cache.recordRevalidation();
+
+			return new HttpEasyReader(revalidated.toConnection(url, requestMethod), this);
+		}
+
+		cache.recordMiss();
+
+		HttpEasyReader reader = new HttpEasyReader(connection, this);
+
+		if (CachedResponse.isStorable(connection)) {
+			CachedResponse response = CachedResponse.from(key, connection, requestHeaders, cache.getTimeToLiveMillis());
+
+			reader.onBodyRead(cache.getMaxEntrySize(), body -> cache.put(response.withBody(body)));
+		}
+
+		return reader;
+	}
+
+	/**
+	 * @return The Cookie header the request will be sent with, including the cookies from the cookie jar, null if there are none
+	 */
+	private String getCookies(URL url) {
+		HttpCookieJar jar = getCookieJar();
+		String cookies = jar == null ? null : jar.getCookieHeader(url);
+		String existing = getRequestHeader("Cookie");
+
+		if (cookies == null) {
+			return existing;
+		}
+
+		return existing == null || existing.isEmpty() ? cookies : existing + "; " + cookies;
+	}
+
+	private String getRequestHeader(String name) {
+		for (Map.Entry<String, Object> header : headers.entrySet()) {
+			if (header.getKey().equalsIgnoreCase(name)) {
+				return String.valueOf(header.getValue());
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Check the response code before handing the connection to HttpEasyReader, which would throw an exception for a failed 
+	 * request, so that the response can be discarded and the request retried.
+	 */
+	private HttpURLConnection connectWithRetry(String requestMethod, RetryPolicy policy) throws IOException {
+		long started = System.nanoTime();
+		int attempt = 1;
+		HttpURLConnection connection;
+
+		while (true) {
+			long delay;
+			String reason;
+
+			connection = null;
+
+			try {
+				connection = getConnectionMethod(requestMethod);
+
+				int status = connection.getResponseCode();
+
+				delay = policy.getDelayMillis(attempt, connection);
+				reason = "HTTP " + status;
+
+				boolean retry = attempt < policy.getMaxAttempts() && !isExpectedResponse(status) && policy.isRetryableStatus(status) 
+						&& policy.hasTimeFor(started, delay) && hasTimeBeforeDeadline(delay);
+
+				if (!retry) {
+					break;
+				}
+
+				releaseConnection(connection);
+			} catch (IOException e) {
+				if (connection != null) {
+					releaseConnection(connection);
+				}
+
+				if (attempt >= policy.getMaxAttempts() || !policy.isRetryableException(e)) {
+					throw e;
+				}
+
+				delay = policy.getDelayMillis(attempt, null);
+
+				if (!policy.hasTimeFor(started, delay) || !hasTimeBeforeDeadline(delay)) {
+					throw e;
+				}
+
+				reason = e.toString();
+			}
+
+			LOGGER.warn("{} {} failed with {}, retrying in {}ms (attempt {} of {})", requestMethod, getURL(), reason, delay, attempt + 1, policy.getMaxAttempts());
+
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to retry " + requestMethod + " " + getURL());
+			}
+
+			attempt++;
+		}
+
+		return connection;
+	}
+
+	private boolean hasTimeBeforeDeadline(long delayMillis) {
+		return deadline == null || deadline.getRemaining(TimeUnit.MILLISECONDS) > delayMillis;
+	}
+
+	/**
+	 * @param status Response code
+	 * @return Whether the response code is successful or one the request was told not to fail on
+	 */
+	boolean isExpectedResponse(int status) {
+		Family family = Family.familyOf(status);
+
+		return family == Family.SUCCESSFUL || (status >= 0 && ignoreResponseCodes.get(status)) || ignoreResponseFamily.contains(family);
+	}
+
+	private CompletableFuture<HttpEasyReader> executeAsync(String requestMethod) {
+		CompletableFuture<HttpEasyReader> future = new CompletableFuture<HttpEasyReader>();
+		Deadline callerDeadline = Deadline.current();
+
+		client.getAsyncExecutor().execute(() -> {
+			Deadline resumed = Deadline.resume(callerDeadline);
+
+			try {
+				HttpEasyReader reader = execute(requestMethod);
+				reader.bufferResponse();
+				future.complete(reader);
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			} finally {
+				if (resumed != null) {
+					resumed.close();
+				}
+			}
+		});
+
+		return future;
+	}
+
+	private HttpURLConnection getConnectionMethod(String requestMethod) throws IOException {
+		URL url = getURL();
+		RequestThrottle throttle = client.getThrottle();
+		RequestThrottle.Permit permit;
+
+		// The throttle and transport limit their waits to the deadline, report running out of time as the deadline passing
+		try {
+			permit = throttle == null ? null : throttle.acquire(url);
+		} catch (IOException e) {
+			throw deadlineExceeded(requestMethod, url, e);
+		}
+
+		if (deadline != null && deadline.isExpired()) {
+			if (permit != null) {
+				permit.release();
+			}
+
+			throw new SocketTimeoutException(String.format("The deadline for %s %s passed before it was sent", requestMethod, url));
+		}
+
+		RequestTimer timer = new RequestTimer(requestMethod, url, urlParams.length == 0 || redirectLocation != null ? null : getSpec());
+		HttpURLConnection connection;
+
+		try {
+			connection = getConnection(url, timer);
+		} catch (IOException | RuntimeException e) {
+			if (permit != null) {
+				permit.release();
+			}
+
+			publish(timer, 0);
+
+			if (e instanceof IOException) {
+				throw deadlineExceeded(requestMethod, url, (IOException) e);
+			}
+
+			throw e;
+		}
+
+		timers.put(connection, timer);
+
+		if (deadline != null) {
+			expiries.put(connection, DEADLINES.schedule(() -> expire(requestMethod, url, connection), 
+					deadline.getRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS));
+		}
+
+		try {
+			sendRequest(requestMethod, url, connection, timer);
+		} catch (IOException e) {
+			releaseConnection(connection);
+			throw deadlineExceeded(requestMethod, url, e);
+		} catch (RuntimeException e) {
+			releaseConnection(connection);
+			throw e;
+		} finally {
+			// The request is no longer in flight once its response head has been received, whether or not the response is read
+			if (permit != null) {
+				permit.release();
+			}
+		}
+
+		// The response may never be read, don't hold the transport's limit for the host until it is
+		transport.responseReceived(connection);
+
+		return connection;
+	}
+
+	/**
+	 * Close the connection of a request that has run past its deadline, a read blocked on the connection then fails.
+	 */
+	private void expire(String requestMethod, URL url, HttpURLConnection connection) {
+		LOGGER.warn("{} {} did not complete before its deadline, closing the connection", requestMethod, url);
+		connection.disconnect();
+	}
+
+	private IOException deadlineExceeded(String requestMethod, URL url, IOException e) {
+		// Waits capped to the deadline are in whole milliseconds so can end just short of it
+		if (deadline == null || deadline.getRemaining(TimeUnit.MILLISECONDS) > 0) {
+			return e;
+		}
+
+		SocketTimeoutException timeout = new SocketTimeoutException(String.format("%s %s did not complete before its deadline: %s", requestMethod, url, e));
+		timeout.initCause(e);
+
+		return timeout;
+	}
+
+	private static ScheduledThreadPoolExecutor createDeadlineExecutor() {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "HttpEasy-deadline");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Most requests complete well before their deadline, don't keep the cancelled tasks until then
+		executor.setRemoveOnCancelPolicy(true);
+
+		return executor;
+	}
+
+	private void sendRequest(String requestMethod, URL url, HttpURLConnection connection, RequestTimer timer) throws IOException {
+		DataWriter dataWriter = null;
+
+		setHeaders(connection);
+
+		connection.setRequestMethod(requestMethod);
+		connection.setConnectTimeout(capToDeadline(timeout != null ? timeout : client.getConnectTimeoutMillis()));
+		connection.setReadTimeout(capToDeadline(timeout != null ? timeout : client.getReadTimeoutMillis()));
+
+		connection.setInstanceFollowRedirects(false);
+		
+		if (requestMethod.equals("POST") || requestMethod.equals("PUT")) {
+			dataWriter = getDataWriter(dataWriter, url, connection);
+			
+			if (dataWriter != null) {
+				// Stream the body rather than letting HttpURLConnection buffer it all in memory to calculate the length
+				if (isCompressRequest()) {
+					connection.setRequestProperty("Content-Encoding", "gzip");
+					connection.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+				} else if (dataWriter.getContentLength() >= 0) {
+					connection.setFixedLengthStreamingMode(dataWriter.getContentLength());
+				} else {
+					connection.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+				}
+			}
+
+			connection.setDoOutput(true);
+		} else {
+			if (fields.size() > 0 && !redirectDroppedBody) {
+				throw new IllegalStateException("Fields have been specified but the method " + requestMethod + " will not use them, try POST or PUT instead.");
+			}
+		}
+
+		String authUser = "";
+
+		if (authString != null && !authString.isEmpty()) {
+			authUser = authString.substring(0, authString.indexOf(":"));
+			authUser = " as user '" + authUser + "'";
+		}
+
+		LOGGER.trace("Sending {}{} to {}", requestMethod, authUser, url.toString());
+		
+		if (logRequestDetails) {
+			StringBuilder sb = new StringBuilder();
+
+			for (Entry<String, List<String>> header : connection.getRequestProperties().entrySet()) {
+				for (String value : header.getValue()) {
+					sb.append("\t").append(header.getKey()).append(": ").append(value).append(System.lineSeparator());
+				}
+			}
+
+			LOGGER.trace("With Request Headers:{}{}", System.lineSeparator(), sb);
+		}
+
+		long connecting = System.nanoTime();
+
+		timer.connecting();
+
+		try {
+			connection.connect();
+		} finally {
+			timer.connected(connecting);
+		}
+
+		if (dataWriter != null) {
+			writeData(connection, dataWriter);
+		}
+
+		timer.requestSent();
+		timer.responseReceived(connection.getResponseCode());
+
+		HttpCookieJar jar = getCookieJar();
+
+		if (jar != null) {
+			jar.store(url, connection.getHeaderFields());
+		}
+	}
+
+	private void writeData(HttpURLConnection connection, DataWriter dataWriter) throws IOException {
+		CountingOutputStream wire = new CountingOutputStream(connection.getOutputStream());
+		CountingOutputStream body = wire;
+
+		if (isCompressRequest()) {
+			body = new CountingOutputStream(new GZIPOutputStream(wire));
+		}
+
+		try (OutputStream outputStream = body) {
+			dataWriter.write(outputStream, logRequestDetails ? LOGGER : null);
+		}
+
+		requestBytes = body.getCount();
+		requestBytesOnWire = wire.getCount();
+
+		if (isCompressRequest()) {
+			LOGGER.trace("Sent {} bytes compressed to {} bytes", requestBytes, requestBytesOnWire);
+		}
+	}
+
+	/**
+	 * @return The timeout, or the time remaining before the deadline if that is shorter, a timeout of 0 is no limit
+	 */
+	private int capToDeadline(int timeoutMillis) {
+		if (deadline == null) {
+			return timeoutMillis;
+		}
+
+		// At least 1ms, 0 would wait forever
+		int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline.getRemaining(TimeUnit.MILLISECONDS)));
+
+		return timeoutMillis == 0 ? remaining : Math.min(timeoutMillis, remaining);
+	}
+
+	/**
+	 * Only raw data and url encoded forms are compressed, servers rarely support compressed multipart forms.
+	 */
+	private boolean isCompressRequest() {
+		if (dataContentType != DataContentType.RAW && dataContentType != DataContentType.X_WWW_FORM_URLENCODED) {
+			return false;
+		}
+
+		return compressRequest == null ? client.isCompressRequests() : compressRequest;
+	}
+
+	private DataWriter getDataWriter(DataWriter dataWriter, URL url, HttpURLConnection connection) throws UnsupportedEncodingException {
+		if (dataContentType == DataContentType.AUTO_SELECT) {
+			if (!fields.isEmpty()) {
+				if (fieldsHasFile()) {
+					dataContentType = DataContentType.FORM_DATA;
+				} else {
 					dataContentType = DataContentType.X_WWW_FORM_URLENCODED;
 				}
 			}
@@ -581,37 +1575,61 @@ public class HttpEasy {
 		return false;
 	}
 
-	private HttpURLConnection getConnection(URL url) throws IOException {
-		HttpURLConnection connection;
-		Proxy useProxy = HttpEasyDefaults.getProxy();
+	private HttpURLConnection getConnection(URL url, RequestTimer timer) throws IOException {
+		Proxy useProxy = client.getProxy();
 
-		if (HttpEasyDefaults.isBypassProxyForLocalAddresses() && isLocalAddress(url)) {
+		if (client.isBypassProxyForLocalAddresses() && isLocalAddress(url)) {
 			useProxy = Proxy.NO_PROXY;
 		}
 
-		if (url.getProtocol().equals("https")) {
-			connection = (HttpsURLConnection) url.openConnection(useProxy);
-		} else {
-			connection = (HttpURLConnection) url.openConnection(useProxy);
+		transport = client.getTransport();
+
+		HttpURLConnection connection = transport.open(url, useProxy);
+
+		// A proxy resolves the host itself, and a replayed response needs no network
+		if (client.getMetrics() != null && (useProxy == null || useProxy.type() == Proxy.Type.DIRECT) && !(connection instanceof ReplayHttpURLConnection)) {
+			resolveHost(url, timer);
+		}
+
+		if (connection instanceof HttpsURLConnection) {
+			HttpsURLConnection https = (HttpsURLConnection) connection;
+
+			if (client.getSslSocketFactory() != null) {
+				https.setSSLSocketFactory(client.getSslSocketFactory());
+			}
+
+			if (client.getHostnameVerifier() != null) {
+				https.setHostnameVerifier(client.getHostnameVerifier());
+			}
 		}
 
 		return connection;
 	}
 
+	/**
+	 * Time the lookup of the host name, the connection then finds the address in the JVM's DNS cache.
+	 */
+	private void resolveHost(URL url, RequestTimer timer) {
+		long started = System.nanoTime();
+
+		try {
+			InetAddress.getByName(url.getHost());
+			timer.dnsResolved(started);
+		} catch (UnknownHostException e) {
+			// Reported when the connection is made
+		}
+	}
+
 	private boolean isLocalAddress(URL url) {
 		return "localhost, 127.0.0.1".contains(url.getHost());
 	}
 
 	private URL getURL() throws MalformedURLException {
-		String spec = "";
-		
-		if (!containsProtol(path) && !containsProtol(query)) {
-			spec = (baseURI == null || baseURI.isEmpty()) ? HttpEasyDefaults.getBaseURI() : baseURI;	
+		if (redirectLocation != null) {
+			return redirectLocation;
 		}
-		
-		spec = appendSegmentToUrl(spec, path, "/");
-		spec = appendSegmentToUrl(spec, query, "?");
-		spec = replaceParameters(spec);
+
+		String spec = replaceParameters(getSpec());
 
 		URL url = new URL(spec);
 
@@ -624,6 +1642,22 @@ public class HttpEasy {
 		return url;
 	}
 
+	/**
+	 * @return The url before any parameters are replaced
+	 */
+	private String getSpec() {
+		String spec = "";
+		
+		if (!containsProtol(path) && !containsProtol(query)) {
+			spec = (baseURI == null || baseURI.isEmpty()) ? client.getBaseURI() : baseURI;	
+		}
+		
+		spec = appendSegmentToUrl(spec, path, "/");
+		spec = appendSegmentToUrl(spec, query, "?");
+
+		return spec;
+	}
+
 	private boolean containsProtol(String url) {
 		if (url == null || url.isEmpty()) {
 			return false;
@@ -653,38 +1687,58 @@ public class HttpEasy {
 	}
 
 	private String replaceParameters(String url) {
-		int index = 0;
-		int param = 0;
-		String currentParameter = "";
-
-		// Check all occurrences
-		while ((index = url.indexOf(startToken, index)) > 0) {
-			if (param < urlParams.length) {
-				currentParameter = String.valueOf(urlParams[param]);
-				param++;
-			}
-
-			if (currentParameter.contains(" ")) {
-				throw new IllegalArgumentException("URL Parameter [" + param + "] cannot contain a space");
-			}
-
-			url = url.substring(0, index) + currentParameter + url.substring(url.indexOf(endToken) + 1);
+		if (urlParams.length == 0) {
+			return url;
 		}
 
-		return url;
+		return UrlTemplate.of(url, startToken, endToken).expand(urlParams);
 	}
 
 	private void setHeaders(HttpURLConnection connection) throws UnsupportedEncodingException {
 		setProxyAuthorization(connection);
 		setAuthorization(connection);
 
+		boolean acceptCompressed = acceptCompressedResponse == null ? client.isAcceptCompressedResponses() : acceptCompressedResponse;
+
+		if (acceptCompressed) {
+			connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+		}
+
 		for (Map.Entry<String, Object> header : headers.entrySet()) {
-			connection.setRequestProperty(header.getKey(), String.valueOf(header.getValue()));
+			if (isSentToLocation(header.getKey())) {
+				connection.setRequestProperty(header.getKey(), String.valueOf(header.getValue()));
+			}
+		}
+
+		setCookies(connection);
+	}
+
+	/**
+	 * Once redirected, credentials are only sent to the original site and the headers describing the body are dropped with the body. 
+	 */
+	private boolean isSentToLocation(String header) {
+		if (!sendCredentials && ("Authorization".equalsIgnoreCase(header) || "Cookie".equalsIgnoreCase(header))) {
+			return false;
+		}
+
+		return !(redirectDroppedBody && header.regionMatches(true, 0, "Content-", 0, "Content-".length()));
+	}
+
+	private void setCookies(HttpURLConnection connection) {
+		HttpCookieJar jar = getCookieJar() == null ? redirectCookies : getCookieJar();
+		String cookies = jar == null ? null : jar.getCookieHeader(connection.getURL());
+
+		if (cookies == null) {
+			return;
 		}
+
+		String existing = connection.getRequestProperty("Cookie");
+
+		connection.setRequestProperty("Cookie", existing == null || existing.isEmpty() ? cookies : existing + "; " + cookies);
 	}
 
 	private void setAuthorization(HttpURLConnection connection) {
-		if (authString == null || authString.isEmpty()) {
+		if (authString == null || authString.isEmpty() || !sendCredentials) {
 			return;
 		}
 		
@@ -692,15 +1746,15 @@ public class HttpEasy {
 	}
 
 	private void setProxyAuthorization(HttpURLConnection connection) {
-		if (HttpEasyDefaults.getProxyUser() == null || HttpEasyDefaults.getProxyUser().isEmpty()) {
+		if (client.getProxyUser() == null || client.getProxyUser().isEmpty()) {
 			return;
 		}
 		
-		if (HttpEasyDefaults.getProxyPassword() == null || HttpEasyDefaults.getProxyPassword().isEmpty()) {
+		if (client.getProxyPassword() == null || client.getProxyPassword().isEmpty()) {
 			return;
 		}
 
-		String usernameAndPassword = HttpEasyDefaults.getProxyUser() + ":" + HttpEasyDefaults.getProxyPassword();
+		String usernameAndPassword = client.getProxyUser() + ":" + client.getProxyPassword();
 		String proxyAuthString = "Basic " + Base64.getEncoder().encodeToString(usernameAndPassword.getBytes(StandardCharsets.UTF_8));
 		connection.setRequestProperty("Proxy-Authorization", proxyAuthString);
 	}
@@ -0,0 +1,407 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nz.govt.msd.utils.Deadline;
+
+/**
+ * Sends a batch of similar requests, such as seeding records or polling a list of ids, with a bounded number in parallel.
+ *
+ * <p>
+ * Each row of the batch is turned into a request by a function, so a batch can be a list of prepared requests:
+ *
+ * <pre>
+ * List&lt;HttpEasy&gt; requests = ...;
+ * HttpEasyBatch.Result result = new HttpEasyBatch().run(requests, HttpEasy::post);
+ * </pre>
+ *
+ * or a request template and a list of parameter rows:
+ *
+ * <pre>
+ * HttpEasyBatch.Result result = new HttpEasyBatch()
+ *     .withParallelism(20)
+ *     .run(ids, id -&gt; HttpEasy.request().path("/item/{id}").urlParameters(id).get());
+ *
+ * result.throwFirstFailure();
+ * LOGGER.info("{}", result);
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * Results and failures are returned in the same order as the rows.  Responses are read into memory before the request is
+ * counted as complete so that connections are released as soon as possible.  In {@link Mode#COLLECT_ALL} mode every row
+ * is sent whether or not others fail, in {@link Mode#FAIL_FAST} mode no further requests are started after the first failure
+ * and the rows that were not sent are marked as skipped.
+ * </p>
+ */
+public class HttpEasyBatch {
+	private static final AtomicInteger BATCH_NUMBER = new AtomicInteger();
+
+	private int parallelism = 10;
+	private Mode mode = Mode.COLLECT_ALL;
+
+	/**
+	 * How a batch responds to a failed request.
+	 */
+	public enum Mode {
+		/** Stop starting requests once one has failed. */
+		FAIL_FAST,
+
+		/** Send every request and collect all failures. */
+		COLLECT_ALL
+	}
+
+	/**
+	 * Sends a request for a row of a batch.
+	 *
+	 * @param <T> Type of the rows
+	 */
+	@FunctionalInterface
+	public interface RequestFunction<T> {
+		/**
+		 * @param row The row
+		 * @return The response
+		 * @throws IOException If the request failed
+		 */
+		HttpEasyReader send(T row) throws IOException;
+	}
+
+	/**
+	 * Sets the number of requests sent at the same time, defaults to 10.
+	 *
+	 * @param requests Maximum number of requests in flight
+	 * @return A self reference
+	 */
+	public HttpEasyBatch withParallelism(int requests) {
+		if (requests < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+
+		this.parallelism = requests;
+		return this;
+	}
+
+	/**
+	 * Sets how the batch responds to a failed request, defaults to {@link Mode#COLLECT_ALL}.
+	 *
+	 * @param mode Failure mode
+	 * @return A self reference
+	 */
+	public HttpEasyBatch withMode(Mode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+	/**
+	 * Send a request for each row and wait for them all to complete.  A {@link Deadline} on the calling thread applies to the
+	 * requests.
+	 *
+	 * @param <T> Type of the rows
+	 * @param rows Rows to send, eg prepared requests or request parameters
+	 * @param request Sends the request for a row
+	 * @return Results in the same order as the rows
+	 * @throws InterruptedIOException If interrupted while waiting for the batch, requests in progress are interrupted
+	 */
+	public <T> Result run(List<T> rows, RequestFunction<? super T> request) throws InterruptedIOException {
+		Item[] items = new Item[rows.size()];
+		AtomicInteger next = new AtomicInteger();
+		AtomicBoolean failed = new AtomicBoolean(false);
+		int threads = Math.min(parallelism, Math.max(1, rows.size()));
+		ExecutorService executor = createExecutor(threads);
+		Deadline callerDeadline = Deadline.current();
+		long started = System.nanoTime();
+
+		try {
+			List<Future<?>> workers = new ArrayList<Future<?>>(threads);
+
+			for (int i = 0; i < threads; i++) {
+				workers.add(executor.submit(() -> {
+					int index;
+					Deadline resumed = Deadline.resume(callerDeadline);
+
+					try {
+						while ((index = next.getAndIncrement()) < items.length) {
+							if (mode == Mode.FAIL_FAST && failed.get()) {
+								items[index] = Item.skipped(index);
+								continue;
+							}
+
+							items[index] = send(index, rows.get(index), request);
+
+							if (items[index].isFailed()) {
+								failed.set(true);
+							}
+						}
+					} finally {
+						if (resumed != null) {
+							resumed.close();
+						}
+					}
+				}));
+			}
+
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for batch of " + rows.size() + " requests");
+		} catch (ExecutionException e) {
+			// Failures are caught for each request so only an Error can get here
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Result result = new Result(Arrays.asList(items), System.nanoTime() - started);
+
+		HttpEasy.LOGGER.debug("Batch complete: {}", result);
+
+		return result;
+	}
+
+	private <T> Item send(int index, T row, RequestFunction<? super T> request) {
+		long started = System.nanoTime();
+
+		try {
+			HttpEasyReader reader = request.send(row);
+
+			if (reader != null) {
+				reader.bufferResponse();
+			}
+
+			return new Item(index, reader, null, false, System.nanoTime() - started);
+		} catch (Exception e) {
+			return new Item(index, null, e, false, System.nanoTime() - started);
+		}
+	}
+
+	private static ExecutorService createExecutor(int threads) {
+		int batch = BATCH_NUMBER.incrementAndGet();
+		AtomicInteger threadNumber = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "HttpEasy-batch-" + batch + "-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * The outcome of a single row of a batch.
+	 */
+	public static class Item {
+		private final int index;
+		private final HttpEasyReader response;
+		private final Exception failure;
+		private final boolean skipped;
+		private final long latencyNanos;
+
+		Item(int index, HttpEasyReader response, Exception failure, boolean skipped, long latencyNanos) {
+			this.index = index;
+			this.response = response;
+			this.failure = failure;
+			this.skipped = skipped;
+			this.latencyNanos = latencyNanos;
+		}
+
+		static Item skipped(int index) {
+			return new Item(index, null, null, true, 0);
+		}
+
+		/**
+		 * @return Position of the row in the batch
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return The response, null if the request failed or was skipped
+		 */
+		public HttpEasyReader getResponse() {
+			return response;
+		}
+
+		/**
+		 * @return Why the request failed, null if it succeeded or was skipped
+		 */
+		public Exception getFailure() {
+			return failure;
+		}
+
+		/**
+		 * @return true if the request failed
+		 */
+		public boolean isFailed() {
+			return failure != null;
+		}
+
+		/**
+		 * @return true if the request was not sent because an earlier request failed in {@link Mode#FAIL_FAST} mode
+		 */
+		public boolean isSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * @return Time taken to send the request and read the response in milliseconds
+		 */
+		public double getLatencyMillis() {
+			return latencyNanos / 1_000_000d;
+		}
+	}
+
+	/**
+	 * The outcome of a batch, in the same order as the rows, with throughput and latency statistics.
+	 */
+	public static class Result {
+		private final List<Item> items;
+		private final long elapsedNanos;
+		private final long[] sortedLatencies;
+
+		Result(List<Item> items, long elapsedNanos) {
+			this.items = Collections.unmodifiableList(items);
+			this.elapsedNanos = elapsedNanos;
+			this.sortedLatencies = items.stream().filter(item -> !item.isSkipped()).mapToLong(item -> item.latencyNanos).sorted().toArray();
+		}
+
+		/**
+		 * @return The outcome of each row
+		 */
+		public List<Item> getItems() {
+			return items;
+		}
+
+		/**
+		 * @return The response for each row, null for rows that failed or were skipped
+		 */
+		public List<HttpEasyReader> getResponses() {
+			List<HttpEasyReader> responses = new ArrayList<HttpEasyReader>(items.size());
+
+			for (Item item : items) {
+				responses.add(item.getResponse());
+			}
+
+			return responses;
+		}
+
+		/**
+		 * @return The rows that failed
+		 */
+		public List<Item> getFailures() {
+			List<Item> failures = new ArrayList<Item>();
+
+			for (Item item : items) {
+				if (item.isFailed()) {
+					failures.add(item);
+				}
+			}
+
+			return failures;
+		}
+
+		/**
+		 * @return true if any request failed
+		 */
+		public boolean hasFailures() {
+			return items.stream().anyMatch(Item::isFailed);
+		}
+
+		/**
+		 * Rethrow the failure of the first row that failed, if any, with the failures of the other rows suppressed.
+		 *
+		 * @throws IOException The first failure
+		 */
+		public void throwFirstFailure() throws IOException {
+			List<Item> failures = getFailures();
+
+			if (failures.isEmpty()) {
+				return;
+			}
+
+			Exception first = failures.get(0).getFailure();
+
+			for (int i = 1; i < failures.size(); i++) {
+				first.addSuppressed(failures.get(i).getFailure());
+			}
+
+			if (first instanceof IOException) {
+				throw (IOException) first;
+			}
+
+			if (first instanceof RuntimeException) {
+				throw (RuntimeException) first;
+			}
+
+			throw new IOException(first);
+		}
+
+		/**
+		 * @return Number of requests that were sent, whether or not they succeeded
+		 */
+		public int getSent() {
+			return sortedLatencies.length;
+		}
+
+		/**
+		 * @return Time taken by the whole batch in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		}
+
+		/**
+		 * @return Requests sent per second
+		 */
+		public double getThroughput() {
+			if (elapsedNanos == 0) {
+				return 0;
+			}
+
+			return sortedLatencies.length / (elapsedNanos / 1_000_000_000d);
+		}
+
+		/**
+		 * @param percentile Between 0 and 100, eg 99 for the 99th percentile
+		 * @return The latency that the given percentage of requests completed within in milliseconds, 0 if no requests were sent
+		 */
+		public double getLatencyMillis(double percentile) {
+			if (percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("Percentile must be between 0 and 100");
+			}
+
+			if (sortedLatencies.length == 0) {
+				return 0;
+			}
+
+			// Nearest rank
+			int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+
+			return sortedLatencies[Math.max(0, rank - 1)] / 1_000_000d;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s requests (%s failed, %s skipped) in %sms, %.1f requests/second, latency p50 %.1fms p90 %.1fms p99 %.1fms",
+					getSent(), getFailures().size(), items.size() - getSent(), getElapsedMillis(), getThroughput(),
+					getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99));
+		}
+	}
+}
@@ -0,0 +1,552 @@
+package nz.govt.msd.driver.http;
+
+import java.net.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import nz.govt.msd.driver.http.TlsRegistry.TrustPolicy;
+
+/**
+ * An immutable set of connection settings that requests are made with, a client can be shared between threads.
+ *
+ * <p>
+ * {@link HttpEasy#request()} uses the default client configured through {@link HttpEasy#withDefaults()}.  Where tests
+ * running in parallel need different settings, for example to target two environments through different proxies, create
+ * a client for each:
+ *
+ * <pre>
+ * HttpEasyClient uat = HttpEasyClient.builder()
+ *     .baseUrl("https://uat.example.com")
+ *     .trustAllCertificates()
+ *     .transport(new PooledHttpTransport())
+ *     .build();
+ *
+ * uat.request().path("/status").get();
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * Certificate and host name verification settings apply only to the connections made by the client, they do not change
+ * the JVM wide defaults.
+ * </p>
+ */
+public final class HttpEasyClient {
+	private static final int DEFAULT_ASYNC_THREAD_COUNT = 10;
+	private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+	private static final int DEFAULT_READ_TIMEOUT_MILLIS = 60 * 1000;
+
+	private final Proxy proxy;
+	private final String proxyUser;
+	private final String proxyPassword;
+	private final boolean bypassProxyForLocalAddresses;
+	private final String baseURI;
+	private final HttpTransport transport;
+	private final Supplier<ExecutorService> asyncExecutor;
+	private final boolean acceptCompressedResponses;
+	private final boolean compressRequests;
+	private final SSLSocketFactory sslSocketFactory;
+	private final HostnameVerifier hostnameVerifier;
+	private final RetryPolicy retryPolicy;
+	private final RedirectPolicy redirectPolicy;
+	private final HttpCookieJar cookieJar;
+	private final RequestThrottle throttle;
+	private final HttpCache cache;
+	private final HttpMetricsListener metrics;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+
+	private HttpEasyClient(Builder builder) {
+		this.proxy = builder.proxy;
+		this.proxyUser = builder.proxyUser;
+		this.proxyPassword = builder.proxyPassword;
+		this.bypassProxyForLocalAddresses = builder.bypassProxyForLocalAddresses;
+		this.baseURI = builder.baseURI;
+		this.transport = builder.transport;
+		this.asyncExecutor = builder.asyncExecutor;
+		this.acceptCompressedResponses = builder.acceptCompressedResponses;
+		this.compressRequests = builder.compressRequests;
+		this.sslSocketFactory = builder.sslSocketFactory;
+		this.hostnameVerifier = builder.hostnameVerifier;
+		this.retryPolicy = builder.retryPolicy;
+		this.redirectPolicy = builder.redirectPolicy;
+		this.cookieJar = builder.cookieJar;
+		this.throttle = builder.throttle;
+		this.cache = builder.cache;
+		this.metrics = builder.metrics;
+		this.connectTimeoutMillis = builder.connectTimeoutMillis;
+		this.readTimeoutMillis = builder.readTimeoutMillis;
+	}
+
+	/**
+	 * @return A builder with the default settings
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return A builder initialised with this client's settings, the new client will share this client's transport and executor
+	 */
+	public Builder toBuilder() {
+		return new Builder(this);
+	}
+
+	/**
+	 * @return Request object that uses this client's settings
+	 */
+	public HttpEasy request() {
+		return new HttpEasy(this);
+	}
+
+	public Proxy getProxy() {
+		return proxy;
+	}
+
+	public String getProxyUser() {
+		return proxyUser;
+	}
+
+	public String getProxyPassword() {
+		return proxyPassword;
+	}
+
+	public boolean isBypassProxyForLocalAddresses() {
+		return bypassProxyForLocalAddresses;
+	}
+
+	public String getBaseURI() {
+		return baseURI;
+	}
+
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+	public boolean isAcceptCompressedResponses() {
+		return acceptCompressedResponses;
+	}
+
+	public boolean isCompressRequests() {
+		return compressRequests;
+	}
+
+	/**
+	 * @return Socket factory for HTTPS connections, null to use the factory chosen by the transport
+	 */
+	public SSLSocketFactory getSslSocketFactory() {
+		return sslSocketFactory;
+	}
+
+	/**
+	 * @return Host name verifier for HTTPS connections, null to use the JVM default
+	 */
+	public HostnameVerifier getHostnameVerifier() {
+		return hostnameVerifier;
+	}
+
+	/**
+	 * @return Policy for retrying failed requests, null if requests are not retried
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * @return Policy for following redirects, null if redirects are not followed
+	 */
+	public RedirectPolicy getRedirectPolicy() {
+		return redirectPolicy;
+	}
+
+	/**
+	 * @return Jar cookies are sent from and stored in, null if cookies are not kept between requests
+	 */
+	public HttpCookieJar getCookieJar() {
+		return cookieJar;
+	}
+
+	/**
+	 * @return Limits on the requests sent to each host, null if requests are not throttled
+	 */
+	public RequestThrottle getThrottle() {
+		return throttle;
+	}
+
+	/**
+	 * @return Cache for GET responses, null if responses are not cached
+	 */
+	public HttpCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return Listener notified of the timings of each request, null if requests are not timed
+	 */
+	public HttpMetricsListener getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return Time allowed to open a connection in milliseconds, 0 for no limit
+	 */
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	/**
+	 * @return Time allowed to wait for data from the server in milliseconds, 0 for no limit
+	 */
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	/**
+	 * @return The executor used to run async requests, the default executor is created when the first async request is made
+	 */
+	public ExecutorService getAsyncExecutor() {
+		return asyncExecutor.get();
+	}
+
+	private static ExecutorService createAsyncExecutor(int threadCount) {
+		final int queueCapacity = 1000;
+		AtomicInteger threadNumber = new AtomicInteger();
+
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "HttpEasy-async-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(queueCapacity), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+
+		// Let the threads of an executor that has been replaced die off
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * Builder for {@link HttpEasyClient}.
+	 */
+	public static final class Builder {
+		private Proxy proxy = Proxy.NO_PROXY;
+		private String proxyUser = null;
+		private String proxyPassword = null;
+		private boolean bypassProxyForLocalAddresses = true;
+		private String baseURI = "";
+		private HttpTransport transport = new DefaultHttpTransport();
+		private Supplier<ExecutorService> asyncExecutor = Suppliers.memoize(() -> createAsyncExecutor(DEFAULT_ASYNC_THREAD_COUNT));
+		private boolean acceptCompressedResponses = false;
+		private boolean compressRequests = false;
+		private SSLSocketFactory sslSocketFactory = null;
+		private HostnameVerifier hostnameVerifier = null;
+		private RetryPolicy retryPolicy = null;
+		private RedirectPolicy redirectPolicy = null;
+		private HttpCookieJar cookieJar = null;
+		private RequestThrottle throttle = null;
+		private HttpCache cache = null;
+		private HttpMetricsListener metrics = null;
+		private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+		private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+		private Builder() {
+		}
+
+		private Builder(HttpEasyClient client) {
+			this.proxy = client.proxy;
+			this.proxyUser = client.proxyUser;
+			this.proxyPassword = client.proxyPassword;
+			this.bypassProxyForLocalAddresses = client.bypassProxyForLocalAddresses;
+			this.baseURI = client.baseURI;
+			this.transport = client.transport;
+			this.asyncExecutor = client.asyncExecutor;
+			this.acceptCompressedResponses = client.acceptCompressedResponses;
+			this.compressRequests = client.compressRequests;
+			this.sslSocketFactory = client.sslSocketFactory;
+			this.hostnameVerifier = client.hostnameVerifier;
+			this.retryPolicy = client.retryPolicy;
+			this.redirectPolicy = client.redirectPolicy;
+			this.cookieJar = client.cookieJar;
+			this.throttle = client.throttle;
+			this.cache = client.cache;
+			this.metrics = client.metrics;
+			this.connectTimeoutMillis = client.connectTimeoutMillis;
+			this.readTimeoutMillis = client.readTimeoutMillis;
+		}
+
+		/**
+		 * Trust all certificates, for HTTPS connections made by this client only.  The socket factory is shared with other
+		 * clients that trust all certificates, see {@link TlsRegistry}.
+		 *
+		 * @return A self reference
+		 */
+		public Builder trustAllCertificates() {
+			this.sslSocketFactory = TlsRegistry.getSocketFactory(TrustPolicy.TRUST_ALL);
+			return this;
+		}
+
+		/**
+		 * Skip host name verification, for HTTPS connections made by this client only.
+		 *
+		 * @return A self reference
+		 */
+		public Builder allowAllHosts() {
+			this.hostnameVerifier = (hostname, session) -> true;
+			return this;
+		}
+
+		/**
+		 * Set the socket factory used for HTTPS connections, takes precedence over any factory set on the transport.
+		 *
+		 * @param factory Socket factory, null to use the factory chosen by the transport
+		 * @return A self reference
+		 */
+		public Builder sslSocketFactory(SSLSocketFactory factory) {
+			this.sslSocketFactory = factory;
+			return this;
+		}
+
+		/**
+		 * Set the host name verifier used for HTTPS connections.
+		 *
+		 * @param verifier Host name verifier, null to use the JVM default
+		 * @return A self reference
+		 */
+		public Builder hostnameVerifier(HostnameVerifier verifier) {
+			this.hostnameVerifier = verifier;
+			return this;
+		}
+
+		/**
+		 * Set an entry representing a PROXY connection.
+		 *
+		 * @param proxy	Sets the {@link Proxy} to use for all connections
+		 * @return A self reference
+		 */
+		public Builder proxy(Proxy proxy) {
+			this.proxy = proxy;
+			return this;
+		}
+
+		/**
+		 * Set the username and password for proxy authentication.
+		 *
+		 * @param userName Proxy username
+		 * @param password Proxy password
+		 * @return A self reference
+		 */
+		public Builder proxyAuth(String userName, String password) {
+			this.proxyUser = userName;
+			this.proxyPassword = password;
+			return this;
+		}
+
+		/**
+		 * Use proxy, or not, for local addresses.
+		 *
+		 * @param bypassLocalAddresses Value
+		 * @return A self reference
+		 */
+		public Builder bypassProxyForLocalAddresses(boolean bypassLocalAddresses) {
+			this.bypassProxyForLocalAddresses = bypassLocalAddresses;
+			return this;
+		}
+
+		/**
+		 * Set the base url for requests that do not specify one.
+		 *
+		 * @param baseUrl Base URL
+		 * @return A self reference
+		 */
+		public Builder baseUrl(String baseUrl) {
+			this.baseURI = baseUrl;
+			return this;
+		}
+
+		/**
+		 * Set the transport used to open and release connections, see {@link PooledHttpTransport} to reuse connections between requests.
+		 *
+		 * @param transport Transport
+		 * @return A self reference
+		 */
+		public Builder transport(HttpTransport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		/**
+		 * Set the number of threads used to run async requests such as {@link HttpEasy#getAsync()}, defaults to 10.
+		 *
+		 * <p>
+		 * A new executor is created when the first async request is made.  If the executor's queue is full the request is
+		 * run on the calling thread.
+		 * </p>
+		 *
+		 * @param threadCount Maximum number of concurrent async requests
+		 * @return A self reference
+		 */
+		public Builder asyncThreadCount(int threadCount) {
+			if (threadCount < 1) {
+				throw new IllegalArgumentException("Async thread count must be at least 1");
+			}
+
+			this.asyncExecutor = Suppliers.memoize(() -> createAsyncExecutor(threadCount));
+			return this;
+		}
+
+		/**
+		 * Replace the executor used to run async requests.
+		 *
+		 * @param executor Executor service, null to use a default executor
+		 * @return A self reference
+		 */
+		public Builder asyncExecutor(ExecutorService executor) {
+			if (executor == null) {
+				return asyncThreadCount(DEFAULT_ASYNC_THREAD_COUNT);
+			}
+
+			this.asyncExecutor = () -> executor;
+			return this;
+		}
+
+		/**
+		 * Set how long to wait for a connection to the server to open, defaults to 15 seconds.
+		 *
+		 * @param unit The unit of time
+		 * @param duration The timeout, 0 for no limit
+		 * @return A self reference
+		 */
+		public Builder connectTimeout(TimeUnit unit, long duration) {
+			this.connectTimeoutMillis = toTimeoutMillis(unit, duration);
+			return this;
+		}
+
+		/**
+		 * Set how long to wait for the server to send data, for the response to start and between each block of the response,
+		 * defaults to 60 seconds.  See {@link HttpEasy#deadline(TimeUnit, long)} to limit the time taken by the whole request.
+		 *
+		 * @param unit The unit of time
+		 * @param duration The timeout, 0 for no limit
+		 * @return A self reference
+		 */
+		public Builder readTimeout(TimeUnit unit, long duration) {
+			this.readTimeoutMillis = toTimeoutMillis(unit, duration);
+			return this;
+		}
+
+		private static int toTimeoutMillis(TimeUnit unit, long duration) {
+			if (duration < 0) {
+				throw new IllegalArgumentException("Timeout must not be negative");
+			}
+
+			return (int) Math.min(Integer.MAX_VALUE, unit.toMillis(duration));
+		}
+
+		/**
+		 * Ask the server to compress responses, see {@link HttpEasy#acceptCompressedResponse()}.
+		 *
+		 * @param accept Send an "Accept-Encoding: gzip, deflate" header
+		 * @return A self reference
+		 */
+		public Builder acceptCompressedResponses(boolean accept) {
+			this.acceptCompressedResponses = accept;
+			return this;
+		}
+
+		/**
+		 * Gzip the request body, see {@link HttpEasy#compressRequest()}.
+		 *
+		 * @param compress Compress requests
+		 * @return A self reference
+		 */
+		public Builder compressRequests(boolean compress) {
+			this.compressRequests = compress;
+			return this;
+		}
+
+		/**
+		 * Retry requests that fail with a transient error, by default requests are not retried.
+		 *
+		 * @param policy Retry policy, null to not retry
+		 * @return A self reference
+		 */
+		public Builder retryPolicy(RetryPolicy policy) {
+			this.retryPolicy = policy;
+			return this;
+		}
+
+		/**
+		 * Follow redirect responses, by default a redirect response is returned to the caller.
+		 *
+		 * @param policy Redirect policy, null to not follow redirects
+		 * @return A self reference
+		 */
+		public Builder redirectPolicy(RedirectPolicy policy) {
+			this.redirectPolicy = policy;
+			return this;
+		}
+
+		/**
+		 * Send cookies from, and store cookies in, a jar shared by the client's requests, by default cookies are not kept
+		 * between requests.
+		 *
+		 * @param jar Cookie jar, null to not keep cookies
+		 * @return A self reference
+		 */
+		public Builder cookieJar(HttpCookieJar jar) {
+			this.cookieJar = jar;
+			return this;
+		}
+
+		/**
+		 * Limit the rate of requests, and number of requests in flight, to each host, by default requests are not throttled.
+		 *
+		 * @param throttle Request throttle, null to not throttle requests
+		 * @return A self reference
+		 */
+		public Builder throttle(RequestThrottle throttle) {
+			this.throttle = throttle;
+			return this;
+		}
+
+		/**
+		 * Cache GET responses, by default responses are not cached.
+		 *
+		 * @param cache Response cache, null to not cache responses
+		 * @return A self reference
+		 */
+		public Builder cache(HttpCache cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/**
+		 * Report the timings of each request, see {@link HttpMetrics}, by default requests are not timed.
+		 *
+		 * @param listener Listener notified once each request has completed, null to not report timings
+		 * @return A self reference
+		 */
+		public Builder metrics(HttpMetricsListener listener) {
+			this.metrics = listener;
+			return this;
+		}
+
+		/**
+		 * @return A new client with the current settings
+		 */
+		public HttpEasyClient build() {
+			return new HttpEasyClient(this);
+		}
+	}
+}
@@ -1,75 +1,155 @@
 package nz.govt.msd.driver.http;
 
 import java.net.Proxy;
-import java.security.cert.X509Certificate;
-
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 
 /**
  * Allows setting of default properties used by all subsequent HttpEasy requests. 
  * 
+ * <p>
+ * The settings are held by the default {@link HttpEasyClient}, each change replaces the default client with a copy that 
+ * includes the change so requests that are already running are not affected.  To use different settings on different 
+ * threads create separate {@link HttpEasyClient}s instead.
+ * </p>
+ * 
  * @author Andrew Sumner
  */
 public class HttpEasyDefaults {
-	// Static values are set by RestRequestDefaults and apply to all requests
-	private static Proxy proxy = Proxy.NO_PROXY;
-	private static String proxyUser = null;
-	private static String proxyPassword = null;
-	private static boolean bypassProxyForLocalAddresses = true;
-	private static String baseURI = "";
+	// Used by HttpEasy.request() and replaced whenever a default is changed
+	private static volatile HttpEasyClient client = HttpEasyClient.builder().build();
 	
 	/**
-	 * Create all-trusting certificate verifier.
+	 * Create all-trusting certificate verifier, applies to requests made by the default client only rather than the whole JVM.
 	 * @return A self reference
 	 */
 	public HttpEasyDefaults trustAllCertificates() {
-		// Create a trust manager that does not validate certificate chains
-		TrustManager[] trustAllCerts = new TrustManager[] {
-				new X509TrustManager() {
-					public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-						return null;
-					}
-					
-					public void checkClientTrusted(X509Certificate[] certs, String authType) {
-					}
-					
-					public void checkServerTrusted(X509Certificate[] certs, String authType) {
-					}
-				}
-		};
-
-		// Install the all-trusting trust manager
-		try {
-			SSLContext sc = SSLContext.getInstance("SSL");
-			sc.init(null, trustAllCerts, new java.security.SecureRandom());
-			HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-		} catch (Exception e) {
-			HttpEasy.LOGGER.error(e.getMessage());
-		}
-		
+		update(builder -> builder.trustAllCertificates());
 		return this;
 	}
 
 	/**
-	 * Create all-trusting host name verifier.
+	 * Create all-trusting host name verifier, applies to requests made by the default client only rather than the whole JVM.
 	 * 
 	 * @return A self reference
 	 */
 	public HttpEasyDefaults allowAllHosts() {
-		HostnameVerifier allHostsValid = new HostnameVerifier() {
-			public boolean verify(String hostname, SSLSession session) {
-				return true;
-			}
-		};
+		update(builder -> builder.allowAllHosts());
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of TLS sessions cached for resumption by each trust policy, see {@link TlsRegistry}.
+	 * 
+	 * @param size Maximum number of sessions, or 0 for no limit
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults tlsSessionCacheSize(int size) {
+		TlsRegistry.setSessionCacheSize(size);
+		return this;
+	}
+
+	/**
+	 * Sets how long a cached TLS session can be resumed for, see {@link TlsRegistry}.
+	 * 
+	 * @param unit The unit of time
+	 * @param duration The session timeout
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults tlsSessionTimeout(TimeUnit unit, long duration) {
+		TlsRegistry.setSessionTimeout(unit, duration);
+		return this;
+	}
+	
+	/**
+	 * Retry requests that fail with a transient error, by default requests are not retried.
+	 * 
+	 * @param policy Retry policy, null to not retry
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults retryPolicy(RetryPolicy policy) {
+		HttpEasyDefaults.setRetryPolicy(policy);
+		return this;
+	}
+
+	/**
+	 * Send cookies from, and store cookies in, a jar shared by all requests, by default cookies are not kept between requests.
+	 * 
+	 * @param jar Cookie jar, null to not keep cookies
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults cookieJar(HttpCookieJar jar) {
+		HttpEasyDefaults.setCookieJar(jar);
+		return this;
+	}
+
+	/**
+	 * Follow redirect responses, by default a redirect response is returned to the caller.
+	 * 
+	 * @param policy Redirect policy, null to not follow redirects
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults redirectPolicy(RedirectPolicy policy) {
+		HttpEasyDefaults.setRedirectPolicy(policy);
+		return this;
+	}
+
+	/**
+	 * Limit the rate of requests, and number of requests in flight, to each host, by default requests are not throttled.
+	 * 
+	 * @param throttle Request throttle, null to not throttle requests
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults throttle(RequestThrottle throttle) {
+		HttpEasyDefaults.setThrottle(throttle);
+		return this;
+	}
+
+	/**
+	 * Limit the requests sent to a host, adding the limit to a copy of the current {@link RequestThrottle} or creating one if 
+	 * requests are not throttled.  Clients already created from the defaults keep the limits they were created with.
+	 * 
+	 * @param host Host name, eg "uat.example.com"
+	 * @param requestsPerSecond Maximum average requests per second, 0 for no limit
+	 * @param maxInFlight Maximum concurrent requests, 0 for no limit
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults throttleHost(String host, double requestsPerSecond, int maxInFlight) {
+		HttpEasyDefaults.setHostLimit(host, requestsPerSecond, maxInFlight);
+		return this;
+	}
+
+	/**
+	 * Cache GET responses, by default responses are not cached.
+	 * 
+	 * @param cache Response cache, null to not cache responses
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults cache(HttpCache cache) {
+		HttpEasyDefaults.setCache(cache);
+		return this;
+	}
+
+	/**
+	 * Report the timings of each request, see {@link HttpMetrics}, by default requests are not timed.
+	 * 
+	 * @param listener Listener notified once each request has completed, null to not report timings
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults metrics(HttpMetricsListener listener) {
+		HttpEasyDefaults.setMetrics(listener);
+		return this;
+	}
 
-		// Install the all-trusting host verifier
-		HttpsURLConnection.setDefaultHostnameVerifier(allHostsValid);
-		
+	/**
+	 * Replace the default client.
+	 * 
+	 * @param defaultClient Client to use for {@link HttpEasy#request()}
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults client(HttpEasyClient defaultClient) {
+		HttpEasyDefaults.setClient(defaultClient);
 		return this;
 	}
 	
@@ -118,40 +198,228 @@ public class HttpEasyDefaults {
 		return this;
 	}
 
+	/**
+	 * Set the transport used to open and release connections, see {@link PooledHttpTransport} to reuse connections between requests.
+	 * 
+	 * @param transport Transport
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults transport(HttpTransport transport) {
+		HttpEasyDefaults.setTransport(transport);
+		return this;
+	}
+
+	/**
+	 * Set the number of threads the default executor uses to run async requests such as {@link HttpEasy#getAsync()}, defaults to 10.
+	 * 
+	 * <p>
+	 * The executor is created when the first async request is made, changing the thread count after that creates a new
+	 * executor for subsequent requests.  If the executor's queue is full the request is run on the calling thread.
+	 * </p>
+	 * 
+	 * @param threadCount Maximum number of concurrent async requests
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults asyncThreadCount(int threadCount) {
+		HttpEasyDefaults.setAsyncThreadCount(threadCount);
+		return this;
+	}
+
+	/**
+	 * Replace the default executor used to run async requests.
+	 * 
+	 * @param executor Executor service
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults asyncExecutor(ExecutorService executor) {
+		HttpEasyDefaults.setAsyncExecutor(executor);
+		return this;
+	}
+
+	/**
+	 * Set how long to wait for a connection to the server to open, defaults to 15 seconds.
+	 * 
+	 * @param unit The unit of time
+	 * @param duration The timeout, 0 for no limit
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults connectTimeout(TimeUnit unit, long duration) {
+		HttpEasyDefaults.setConnectTimeout(unit, duration);
+		return this;
+	}
+
+	/**
+	 * Set how long to wait for the server to send data, defaults to 60 seconds, see 
+	 * {@link HttpEasyClient.Builder#readTimeout(TimeUnit, long)}.
+	 * 
+	 * @param unit The unit of time
+	 * @param duration The timeout, 0 for no limit
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults readTimeout(TimeUnit unit, long duration) {
+		HttpEasyDefaults.setReadTimeout(unit, duration);
+		return this;
+	}
+
+	/**
+	 * Ask the server to compress responses for all requests, see {@link HttpEasy#acceptCompressedResponse()}.
+	 * 
+	 * @param accept Send an "Accept-Encoding: gzip, deflate" header
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults acceptCompressedResponses(boolean accept) {
+		HttpEasyDefaults.setAcceptCompressedResponses(accept);
+		return this;
+	}
+
+	/**
+	 * Gzip the request body for all requests, see {@link HttpEasy#compressRequest()}.
+	 * 
+	 * @param compress Compress requests
+	 * @return A self reference
+	 */
+	public HttpEasyDefaults compressRequests(boolean compress) {
+		HttpEasyDefaults.setCompressRequests(compress);
+		return this;
+	}
+
+	/**
+	 * @return The client used by {@link HttpEasy#request()}
+	 */
+	public static HttpEasyClient getClient() {
+		return HttpEasyDefaults.client;
+	}
+
 	public static Proxy getProxy() {
-		return HttpEasyDefaults.proxy;
+		return client.getProxy();
 	}
 
 	public static String getProxyUser() {
-		return HttpEasyDefaults.proxyUser;
+		return client.getProxyUser();
 	}
 
 	public static String getProxyPassword() {
-		return HttpEasyDefaults.proxyPassword;
+		return client.getProxyPassword();
 	}
 
 	public static boolean isBypassProxyForLocalAddresses() {
-		return HttpEasyDefaults.bypassProxyForLocalAddresses;
+		return client.isBypassProxyForLocalAddresses();
 	}
 
 	public static String getBaseURI() {
-		return HttpEasyDefaults.baseURI;
+		return client.getBaseURI();
+	}
+
+	public static HttpTransport getTransport() {
+		return client.getTransport();
+	}
+
+	public static boolean isAcceptCompressedResponses() {
+		return client.isAcceptCompressedResponses();
+	}
+
+	public static boolean isCompressRequests() {
+		return client.isCompressRequests();
+	}
+
+	public static RequestThrottle getThrottle() {
+		return client.getThrottle();
+	}
+
+	public static HttpCache getCache() {
+		return client.getCache();
+	}
+
+	public static HttpMetricsListener getMetrics() {
+		return client.getMetrics();
+	}
+
+	/**
+	 * @return The executor used to run async requests, creating the default executor if one has not been set
+	 */
+	public static ExecutorService getAsyncExecutor() {
+		return client.getAsyncExecutor();
+	}
+
+	private static synchronized void update(UnaryOperator<HttpEasyClient.Builder> change) {
+		HttpEasyDefaults.client = change.apply(client.toBuilder()).build();
+	}
+
+	private static synchronized void setClient(HttpEasyClient defaultClient) {
+		HttpEasyDefaults.client = defaultClient;
 	}
 
 	private static void setBaseUrl(String baseUrl) {
-		HttpEasyDefaults.baseURI = baseUrl;
+		update(builder -> builder.baseUrl(baseUrl));
 	}
 
 	private static void setProxy(Proxy proxy) {
-		HttpEasyDefaults.proxy = proxy;
+		update(builder -> builder.proxy(proxy));
 	}
 
 	private static void setProxyAuth(String userName, String password) {
-		HttpEasyDefaults.proxyUser = userName;
-		HttpEasyDefaults.proxyPassword = password;
+		update(builder -> builder.proxyAuth(userName, password));
 	}
 	
+	private static void setAsyncThreadCount(int threadCount) {
+		update(builder -> builder.asyncThreadCount(threadCount));
+	}
+
+	private static void setAsyncExecutor(ExecutorService executor) {
+		update(builder -> builder.asyncExecutor(executor));
+	}
+
+	private static void setAcceptCompressedResponses(boolean accept) {
+		update(builder -> builder.acceptCompressedResponses(accept));
+	}
+
+	private static void setCompressRequests(boolean compress) {
+		update(builder -> builder.compressRequests(compress));
+	}
+
+	private static void setConnectTimeout(TimeUnit unit, long duration) {
+		update(builder -> builder.connectTimeout(unit, duration));
+	}
+
+	private static void setReadTimeout(TimeUnit unit, long duration) {
+		update(builder -> builder.readTimeout(unit, duration));
+	}
+
+	private static void setRetryPolicy(RetryPolicy policy) {
+		update(builder -> builder.retryPolicy(policy));
+	}
+
+	private static void setCookieJar(HttpCookieJar jar) {
+		update(builder -> builder.cookieJar(jar));
+	}
+
+	private static void setRedirectPolicy(RedirectPolicy policy) {
+		update(builder -> builder.redirectPolicy(policy));
+	}
+
+	private static void setThrottle(RequestThrottle throttle) {
+		update(builder -> builder.throttle(throttle));
+	}
+
+	private static synchronized void setHostLimit(String host, double requestsPerSecond, int maxInFlight) {
+		RequestThrottle throttle = client.getThrottle();
+
+		setThrottle((throttle == null ? new RequestThrottle() : throttle.copy()).withHostLimit(host, requestsPerSecond, maxInFlight));
+	}
+
+	private static void setCache(HttpCache cache) {
+		update(builder -> builder.cache(cache));
+	}
+
+	private static void setMetrics(HttpMetricsListener listener) {
+		update(builder -> builder.metrics(listener));
+	}
+
+	private static void setTransport(HttpTransport transport) {
+		update(builder -> builder.transport(transport));
+	}
+
 	private static void setBypassProxyForLocalAddresses(boolean bypassLocalAddresses) {
-		HttpEasyDefaults.bypassProxyForLocalAddresses = bypassLocalAddresses;
+		update(builder -> builder.bypassProxyForLocalAddresses(bypassLocalAddresses));
 	}
-}
\ No newline at end of file
+}
@@ -1,29 +1,75 @@
 package nz.govt.msd.driver.http;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.client.HttpResponseException;
 import org.xml.sax.SAXException;
 
+import com.google.common.base.Optional;
+import com.google.common.io.CountingInputStream;
+import com.google.common.net.MediaType;
+import com.google.gson.JsonElement;
+
 /**
  * Response reader for HTTP requests, can parse JSON and XML and download files.
  * 
+ * <p>
+ * The connection is released back to the {@link HttpTransport} once the response has been read, if the response is not going
+ * to be read then call {@link #close()}.  A reader that is neither read nor closed leaves its connection open, and with
+ * {@link PooledHttpTransport} that connection can't be reused, so read the response or use try-with-resources:
+ * </p>
+ * 
+ * <pre>
+ * try (HttpEasyReader response = HttpEasy.request().path(url).post()) {
+ *     return response.getResponseCode();
+ * }
+ * </pre>
+ * 
  * @author Andrew Sumner
  */
-public class HttpEasyReader {
+public class HttpEasyReader implements AutoCloseable {
+	static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
 	private HttpURLConnection connection;
+	private HttpEasy request;
+	private ResponseHead head = null;
+	private boolean released = false;
 	private String returned = null;
+	private byte[] buffered = null;
+	private boolean consumed = false;
+	private CountingInputStream wireCounter = null;
+	private CountingInputStream decodedCounter = null;
+	private Consumer<byte[]> bodyListener = null;
+	private int bodyListenerLimit = 0;
+	private long requestBytes;
+	private long requestBytesOnWire;
 	
 	/**
 	 * Create new HttpEasyReader.
@@ -36,13 +82,31 @@ public class HttpEasyReader {
 	public HttpEasyReader(HttpURLConnection connection, HttpEasy request) throws HttpResponseException, IOException {
 
 		this.connection = connection;
+		this.request = request;
+		this.requestBytes = request.getRequestBytes();
+		this.requestBytesOnWire = request.getRequestBytesOnWire();
+
+		try {
+			this.head = ResponseHead.from(connection);
 
-		Family resposeFamily = getResponseCodeFamily();
+			checkResponse(request);
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private void checkResponse(HttpEasy request) throws HttpResponseException, IOException {
+		if (!hasResponseBody()) {
+			close();
+		}
 
 		if (request.isLogRequestDetails()) {
 			StringBuilder sb = new StringBuilder();
 
-			for (Entry<String, List<String>> header : getConnection().getHeaderFields().entrySet()) {
+			sb.append("\t").append(head.getStatus()).append(" ").append(head.getMessage()).append(System.lineSeparator());
+
+			for (Entry<String, List<String>> header : head.getHeaders().entrySet()) {
 				for (String value : header.getValue()) {
 					sb.append("\t").append(header.getKey()).append(": ").append(value).append(System.lineSeparator());
 				}
@@ -52,32 +116,80 @@ public class HttpEasyReader {
 			HttpEasy.LOGGER.trace("With Response:{}{}", System.lineSeparator(), asString());
 		}
 
-		if (resposeFamily != Family.SUCCESSFUL) {
-			if (listContains(request.ignoreResponseCodes, getResponseCode())) {
-				return;
-			}
+		if (!request.isExpectedResponse(head.getStatus())) {
+			throw new HttpResponseException(head.getStatus(),
+					"Server returned HTTP response code " + head.getStatus() + ": " + head.getMessage() +
+							"\r\nResponse Content: " + asString());
+		}
+	}
 
-			if (listContains(request.ignoreResponseFamily, resposeFamily)) {
-				return;
-			}
+	private boolean hasResponseBody() throws IOException {
+		int code = getResponseCode();
 
-			throw new HttpResponseException(getResponseCode(),
-					"Server returned HTTP response code " + connection.getResponseCode() + ": " + connection.getResponseMessage() +
-							"\r\nResponse Content: " + asString(connection.getErrorStream()));
+		if ("HEAD".equals(connection.getRequestMethod())) {
+			return false;
 		}
 
+		return code != HttpURLConnection.HTTP_NO_CONTENT && code != HttpURLConnection.HTTP_NOT_MODIFIED;
 	}
 
-	private <T> boolean listContains(List<T> array, T targetValue) {
-		for (T s : array) {
-			if (s.equals(targetValue)) {
-				return true;
-			}
+	/**
+	 * Release the connection, this is done automatically once the response has been read and only needs to be called
+	 * if the response is not read.
+	 */
+	@Override
+	public void close() {
+		if (released) {
+			return;
+		}
+
+		released = true;
+		request.releaseConnection(connection, getResponseBytesOnWire());
+
+		if (decodedCounter != null && isEncoded()) {
+			HttpEasy.LOGGER.trace("Received {} bytes decoded to {} bytes", wireCounter.getCount(), decodedCounter.getCount());
 		}
-		
-		return false;
 	}
-	
+
+	/**
+	 * @return Number of bytes in the request body before compression
+	 */
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * @return Number of bytes in the request body as sent over the network
+	 */
+	public long getRequestBytesOnWire() {
+		return requestBytesOnWire;
+	}
+
+	/**
+	 * @return Number of bytes of the response body read so far as received over the network
+	 */
+	public long getResponseBytesOnWire() {
+		return wireCounter == null ? 0 : wireCounter.getCount();
+	}
+
+	/**
+	 * @return Number of bytes of the response body read so far after it has been decompressed
+	 */
+	public long getResponseBytes() {
+		return decodedCounter == null ? 0 : decodedCounter.getCount();
+	}
+
+	/**
+	 * Receive a copy of the decoded response body once it has been completely read, used to cache the response.
+	 * 
+	 * @param limit Largest body to copy, the listener is not called for a larger body
+	 * @param listener Receives the body
+	 */
+	void onBodyRead(int limit, Consumer<byte[]> listener) {
+		this.bodyListener = listener;
+		this.bodyListenerLimit = limit;
+	}
+
 	/**
 	 * Returns the underlying connection object in the event that the 
 	 * exposed methods don't provide the information you are after.
@@ -88,13 +200,22 @@ public class HttpEasyReader {
 		return connection;
 	}
 	
+	/**
+	 * The status line and headers of the response, read once when the response was received so checking them is cheap.
+	 * 
+	 * @return A {@link ResponseHead}
+	 */
+	public ResponseHead getResponseHead() {
+		return head;
+	}
+
 	/**
 	 * Gets the status code from an HTTP response message, see {@link HttpURLConnection#getResponseCode()}.
 	 * @return Response code
 	 * @throws IOException
 	 */
 	public int getResponseCode() throws IOException {
-		return connection.getResponseCode();
+		return head.getStatus();
 	}
 
 	/**
@@ -103,12 +224,14 @@ public class HttpEasyReader {
 	 * @throws IOException
 	 */
 	public Family getResponseCodeFamily() throws IOException {
-		return Family.familyOf(connection.getResponseCode());
+		return head.getFamily();
 	}
 	
 	/** 
-	 * @return The response as a string, makes no attempt to determine the content type
-	 *  
+	 * Read the response as a string, makes no attempt to determine the content type.  The response is decoded using the charset 
+	 * from the Content-Type header, or UTF-8 if not specified, and any leading and trailing whitespace is removed.
+	 * 
+	 * @return The response as a string
 	 * @throws IOException If unable to read the response
 	 */
 	public String asString() throws IOException {
@@ -116,31 +239,246 @@ public class HttpEasyReader {
 			return returned;
 		} 
 		
-		if (connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST) {
-			return asString(connection.getInputStream());
+		if (released && buffered == null) {
+			// No response body, or the reader was closed before the response was read
+			returned = "";
+			return returned;
+		}
+		
+		return asString(getResponseStream());
+	}
+
+	/**
+	 * Stream the response without reading it into memory, the connection is released when the stream is closed.
+	 * 
+	 * <p>
+	 * The response can only be read once, the stream must be closed once it has been read:
+	 * 
+	 * <pre>
+	 * try (InputStream stream = HttpEasy.request().path(url).get().asInputStream()) {
+	 *     ...
+	 * }
+	 * </pre>
+	 * </p>
+	 * 
+	 * @return The response as a stream, an empty stream if there is no response
+	 * @throws IOException If unable to read the response
+	 */
+	public InputStream asInputStream() throws IOException {
+		if (buffered != null) {
+			return new ByteArrayInputStream(buffered);
+		}
+
+		checkNotConsumed();
+
+		if (released && buffered == null) {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+
+		InputStream stream = getResponseStream();
+
+		if (stream == null) {
+			close();
+			return new ByteArrayInputStream(new byte[0]);
+		}
+
+		consumed = true;
+
+		return new FilterInputStream(stream) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					HttpEasyReader.this.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Stream the response as characters without reading it into memory, the connection is released when the reader is closed.
+	 * The response is decoded using the charset from the Content-Type header, or UTF-8 if not specified.
+	 * 
+	 * @return The response as a reader
+	 * @throws IOException If unable to read the response
+	 * @see #asInputStream()
+	 */
+	public Reader asReader() throws IOException {
+		return new InputStreamReader(asInputStream(), getCharset());
+	}
+
+	/**
+	 * Read the response into a byte array, useful for binary content.
+	 * 
+	 * @return The response, an empty array if there is no response
+	 * @throws IOException If unable to read the response
+	 */
+	public byte[] asBytes() throws IOException {
+		if (buffered != null) {
+			return buffered;
+		}
+
+		try (InputStream stream = asInputStream()) {
+			long length = head.getContentLength();
+
+			if (length > 0 && length <= Integer.MAX_VALUE && !isEncoded()) {
+				buffered = IOUtils.toByteArray(stream, (int) length);
+			} else {
+				buffered = IOUtils.toByteArray(stream);
+			}
+		}
+
+		// Response can now be re-read from the buffer
+		consumed = false;
+
+		return buffered;
+	}
+
+	private InputStream getResponseStream() throws IOException {
+		if (buffered != null) {
+			return new ByteArrayInputStream(buffered);
+		}
+
+		InputStream stream;
+
+		if (head.getStatus() < HttpURLConnection.HTTP_BAD_REQUEST) {
+			stream = connection.getInputStream();
 		} else {
-			return asString(connection.getErrorStream());
+			stream = connection.getErrorStream();
+		}
+
+		if (stream == null) {
+			return null;
 		}
+
+		wireCounter = new CountingInputStream(stream);
+		decodedCounter = new CountingInputStream(decode(wireCounter));
+
+		if (bodyListener != null) {
+			return new CapturingInputStream(decodedCounter, bodyListenerLimit, isEncoded() ? -1 : head.getContentLength(), bodyListener);
+		}
+
+		return decodedCounter;
+	}
+
+	private boolean isEncoded() {
+		String encoding = head.getHeader("Content-Encoding");
+
+		return encoding != null && !encoding.isEmpty() && !"identity".equalsIgnoreCase(encoding);
+	}
+
+	private InputStream decode(InputStream stream) throws IOException {
+		String encoding = head.getHeader("Content-Encoding");
+
+		if (encoding == null) {
+			return stream;
+		}
+
+		switch (encoding.trim().toLowerCase()) {
+		case "gzip":
+		case "x-gzip":
+			return new GZIPInputStream(stream);
+
+		case "deflate":
+			return inflate(stream);
+
+		default:
+			return stream;
+		}
+	}
+
+	/**
+	 * Deflate should be zlib wrapped but some servers send raw deflate data, check for a zlib header to tell them apart.
+	 */
+	private InputStream inflate(InputStream stream) throws IOException {
+		final int zlibDeflateMethod = 8;
+		final int zlibHeaderCheck = 31;
+		PushbackInputStream pushback = new PushbackInputStream(stream, 2);
+		byte[] header = new byte[2];
+		int read = IOUtils.read(pushback, header);
+
+		pushback.unread(header, 0, read);
+
+		boolean zlibWrapped = read == 2 && (header[0] & 0x0F) == zlibDeflateMethod && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % zlibHeaderCheck == 0;
+
+		Inflater inflater = new Inflater(!zlibWrapped);
+
+		return new InflaterInputStream(pushback, inflater) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+
+	private void checkNotConsumed() {
+		if (consumed) {
+			throw new IllegalStateException("The response has already been read as a stream");
+		}
+	}
+
+	private Charset getCharset() {
+		String contentType = head.getHeader("Content-Type");
+
+		if (contentType != null) {
+			try {
+				Optional<Charset> charset = MediaType.parse(contentType).charset();
+
+				if (charset.isPresent()) {
+					return charset.get();
+				}
+			} catch (IllegalArgumentException e) {
+				// Unparseable content type or unsupported charset, fall back to default
+			}
+		}
+
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Read the response into memory and release the connection, used when the response will be read on a different thread
+	 * to the one that sent the request.
+	 * 
+	 * @throws IOException If unable to read the response
+	 */
+	void bufferResponse() throws IOException {
+		if (released) {
+			return;
+		}
+
+		asBytes();
 	}
 	
 	private String asString(InputStream stream) throws IOException {
 		if (stream == null) {
+			close();
 			returned = "";
 			return returned;
 		}
-		
-		// read the output from the server
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-			StringBuilder sb = new StringBuilder();
 
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				sb.append(line + "\n");
+		checkNotConsumed();
+
+		// Read the output from the server, sizing the buffer up front when the length is known 
+		final int bufferSize = 8192;
+		long length = head.getContentLength();
+
+		try (Reader reader = new InputStreamReader(stream, getCharset())) {
+			StringBuilder sb = new StringBuilder(length > 0 && length <= Integer.MAX_VALUE ? (int) length : bufferSize);
+			char[] buffer = new char[bufferSize];
+			int read;
+
+			while ((read = reader.read(buffer)) != -1) {
+				sb.append(buffer, 0, read);
 			}
 			
 			returned = sb.toString().trim();
 		} finally {
-			connection.disconnect();
+			close();
 		}
 	
 		return returned;
@@ -152,9 +490,45 @@ public class HttpEasyReader {
 	 * @throws IOException If unable to read the response
 	 */
 	public JsonReader getJsonReader() throws IOException {
-		return new JsonReader(asString());
+		if (returned != null) {
+			return new JsonReader(returned);
+		}
+
+		try (Reader reader = asReader()) {
+			return new JsonReader(reader);
+		}
 	}
 	
+	/**
+	 * Find the value of a path in a json response without parsing the whole response, see 
+	 * {@link JsonReader#extract(Reader, String...)}.  The connection is released once the value has been found.
+	 * 
+	 * @param path A dot separated Json search path, eg "rows[0].doc._id"
+	 * @return JsonElement or null if not found
+	 * @throws IOException If unable to read the response
+	 */
+	public JsonElement jsonPath(String path) throws IOException {
+		return jsonPaths(path).get(path);
+	}
+
+	/**
+	 * Find the values of several paths in a json response in a single pass without parsing the whole response, see 
+	 * {@link JsonReader#extract(Reader, String...)}.  The connection is released once the values have been found.
+	 * 
+	 * @param paths Dot separated Json search paths
+	 * @return The value of each path, in the order requested, a value is null if the path was not found
+	 * @throws IOException If unable to read the response
+	 */
+	public Map<String, JsonElement> jsonPaths(String... paths) throws IOException {
+		if (returned != null) {
+			return JsonReader.extract(new StringReader(returned), paths);
+		}
+
+		try (Reader reader = asReader()) {
+			return JsonReader.extract(reader, paths);
+		}
+	}
+
 	/**
 	 * @return An XmlReader to handle an xml response.
 	 * @throws SAXException 
@@ -162,21 +536,144 @@ public class HttpEasyReader {
 	 * @throws IOException If unable to read the response
 	 */
 	public XmlReader getXmlReader() throws ParserConfigurationException, SAXException, IOException {
-		return new XmlReader(asString());
+		if (returned != null) {
+			return new XmlReader(returned);
+		}
+
+		try (InputStream stream = skipLeadingWhitespace(asInputStream())) {
+			return new XmlReader(stream);
+		}
+	}
+
+	/**
+	 * Find the text content of an XPath selector in an xml response without building a DOM, see 
+	 * {@link XmlReader#extract(InputStream, String...)}.  The connection is released once the value has been found.
+	 * 
+	 * @param selector XPath selector, eg "//output[@name='documentId']"
+	 * @return The text content of the first matching element, or null if not found
+	 * @throws IOException If unable to read the response
+	 * @throws XMLStreamException If the response is not well formed XML
+	 */
+	public String textContent(String selector) throws IOException, XMLStreamException {
+		return textContents(selector).get(selector);
+	}
+
+	/**
+	 * Find the text content of several XPath selectors in an xml response in a single pass without building a DOM, see 
+	 * {@link XmlReader#extract(InputStream, String...)}.  The connection is released once the values have been found.
+	 * 
+	 * @param selectors XPath selectors
+	 * @return The text content of each selector, in the order requested, a value is null if the selector was not found
+	 * @throws IOException If unable to read the response
+	 * @throws XMLStreamException If the response is not well formed XML
+	 */
+	public Map<String, String> textContents(String... selectors) throws IOException, XMLStreamException {
+		if (returned != null) {
+			return XmlReader.extract(new StringReader(returned), selectors);
+		}
+
+		try (InputStream stream = skipLeadingWhitespace(asInputStream())) {
+			return XmlReader.extract(stream, selectors);
+		}
+	}
+
+	/**
+	 * The XML parser rejects a document with whitespace before the XML declaration.
+	 */
+	private InputStream skipLeadingWhitespace(InputStream stream) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(stream);
+		int next;
+
+		do {
+			next = pushback.read();
+		} while (next != -1 && Character.isWhitespace(next));
+
+		if (next != -1) {
+			pushback.unread(next);
+		}
+
+		return pushback;
 	}
 	
 	
 	/**
-	 * Download a file from the response.
+	 * Download a file from the response, overwriting any existing file.
 	 * 
 	 * @param saveDir Location to place the file, the file name is gotten from the response headers
 	 * @return File object
 	 * @throws IOException If unable to write the file
+	 * @see #downloadFile(String, DownloadOptions)
 	 */
 	public File downloadFile(String saveDir) throws IOException {
-		final int bufferSize = 4096;
+		return downloadFile(saveDir, new DownloadOptions());
+	}
+
+	/**
+	 * Download a file from the response, overwriting any existing file.
+	 * 
+	 * <p>
+	 * The response is transferred straight to the file channel in blocks of {@link DownloadOptions#withBufferSize(int)} bytes
+	 * and the file is pre-allocated when the server sends the Content-Length.  If the download is interrupted the file is
+	 * truncated to the bytes received.
+	 * </p>
+	 * 
+	 * <p>
+	 * The request has already been sent so {@link DownloadOptions#withResume(boolean)} is not applied here, use 
+	 * {@link HttpEasy#downloadFile(String, DownloadOptions)} to download a file that can be resumed.
+	 * </p>
+	 * 
+	 * @param saveDir Location to place the file, the file name is gotten from the response headers
+	 * @param options Download options
+	 * @return File object
+	 * @throws IOException If unable to write the file
+	 */
+	public File downloadFile(String saveDir, DownloadOptions options) throws IOException {
+		checkCanDownload();
+
+		return writeFile(getSaveFile(saveDir), null, null, options);
+	}
+
+	/**
+	 * Download a file from the response, recording the version of the file next to it so that the download can be resumed if it
+	 * is interrupted.
+	 * 
+	 * @param saveDir Location to place the file, the file name is gotten from the response headers
+	 * @param source Url the request was sent to
+	 * @param options Download options
+	 * @return File object
+	 * @throws IOException If unable to write the file
+	 */
+	File downloadResumableFile(String saveDir, URL source, DownloadOptions options) throws IOException {
+		checkCanDownload();
+
+		return writeFile(getSaveFile(saveDir), source, null, options);
+	}
+
+	/**
+	 * Append the remainder of a partially downloaded file from the response to a request for the missing byte range.
+	 * 
+	 * @param partial Partially downloaded file
+	 * @param source Url the request was sent to
+	 * @param options Download options
+	 * @return File object
+	 * @throws IOException If unable to write the file
+	 */
+	File resumeFile(PartialDownload partial, URL source, DownloadOptions options) throws IOException {
+		checkCanDownload();
+
+		return writeFile(partial.getFile(), source, partial, options);
+	}
+
+	private void checkCanDownload() throws IOException {
+		if (released && buffered == null) {
+			throw new IOException("Unable to download file, the response has already been read or closed");
+		}
+
+		checkNotConsumed();
+	}
 
-		String fileName = parseDispositionFilename(connection.getHeaderField("Content-Disposition"));
+	private File getSaveFile(String saveDir) throws IOException {
+		String fileName = parseDispositionFilename(head.getHeader("Content-Disposition"));
 		
 		if (fileName == null) {
 			fileName = connection.getURL().getPath();
@@ -200,25 +697,192 @@ public class HttpEasyReader {
 			}
 		}
 		
-		File saveFile = new File(saveDir, fileName);
-		
+		return new File(saveDir, fileName);
+	}
+
+	private boolean canResume() throws IOException {
+		return buffered == null
+				&& "GET".equals(connection.getRequestMethod())
+				&& getResponseCode() == HttpURLConnection.HTTP_OK
+				&& "bytes".equalsIgnoreCase(head.getHeader("Accept-Ranges"))
+				&& getRangeValidator() != null;
+	}
+
+	/**
+	 * If-Range requires a strong ETag, fall back to Last-Modified.
+	 */
+	private String getRangeValidator() {
+		String etag = head.getHeader("ETag");
+
+		if (etag != null && !etag.startsWith("W/")) {
+			return etag;
+		}
+
+		return head.getHeader("Last-Modified");
+	}
+
+	/**
+	 * @param url Url the request was sent to if the download is to be resumable, otherwise null
+	 * @param partial The partially downloaded file a range was requested for, otherwise null
+	 */
+	private File writeFile(File saveFile, URL url, PartialDownload partial, DownloadOptions options) throws IOException {
+		long resumeFrom = partial == null ? 0 : partial.getLength();
+		boolean resumable = partial != null;
+		long start = 0;
+		long total = isEncoded() ? -1 : head.getContentLength();
+
+		try {
+			switch (getResponseCode()) {
+			case HttpURLConnection.HTTP_PARTIAL:
+				start = parseContentRangeStart();
+				total = parseContentRangeTotal();
+
+				if (start != resumeFrom) {
+					throw new IOException(String.format("Unable to resume download of %s, requested byte %s but server sent from byte %s", 
+							saveFile.getName(), resumeFrom, start));
+				}
+
+				// The server has confirmed the partial file is the version recorded for it, which still applies
+				break;
+
+			case HTTP_RANGE_NOT_SATISFIABLE:
+				// Range starts at or beyond the end of the unchanged file, the partial file is already complete
+				if (partial == null || parseContentRangeTotal() != resumeFrom) {
+					PartialDownload.clear(saveFile);
+
+					throw new IOException(String.format("Unable to resume download of %s, server rejected request for byte range %s-", 
+							saveFile.getName(), resumeFrom));
+				}
+
+				PartialDownload.clear(saveFile);
+				notifyProgress(options, new DownloadOptions.Progress(resumeFrom, resumeFrom, resumeFrom, 0));
+				close();
+
+				return saveFile;
+
+			default:
+				if (resumeFrom > 0) {
+					HttpEasy.LOGGER.trace("Server sent the whole of {}, downloading again", saveFile.getName());
+				}
+
+				// Record the version being written before writing any of it, or forget any earlier version of the file
+				resumable = url != null && canResume();
+
+				if (resumable) {
+					PartialDownload.record(saveFile, url, getRangeValidator());
+				} else {
+					PartialDownload.clear(saveFile);
+				}
+
+				break;
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+
+		InputStream stream = getResponseStream();
+
+		if (buffered == null) {
+			consumed = true;
+		}
+
+		if (stream == null) {
+			stream = new ByteArrayInputStream(new byte[0]);
+		}
+
 		try (
-			InputStream inputStream = connection.getInputStream();
-			FileOutputStream outputStream = new FileOutputStream(saveFile); 
+			ReadableByteChannel source = Channels.newChannel(stream);
+			RandomAccessFile file = new RandomAccessFile(saveFile, "rw");
+			FileChannel target = file.getChannel();
 		) {
-			
-			int bytesRead = -1;
-			byte[] buffer = new byte[bufferSize];
-			while ((bytesRead = inputStream.read(buffer)) != -1) {
-				outputStream.write(buffer, 0, bytesRead);
+			// Pre-allocate when the size is known, except for a download that can be resumed as the length of its partial file must 
+			// only count the bytes received, otherwise discard anything beyond where this download starts from
+			file.setLength(total >= 0 && !resumable ? total : start);
+
+			long began = System.nanoTime();
+			long position = start;
+			long transferred;
+			boolean complete = false;
+
+			try {
+				while ((transferred = target.transferFrom(source, position, options.getBufferSize())) > 0) {
+					position += transferred;
+
+					notifyProgress(options, new DownloadOptions.Progress(start, position, total, System.nanoTime() - began));
+				}
+
+				if (position == start) {
+					notifyProgress(options, new DownloadOptions.Progress(start, position, total, System.nanoTime() - began));
+				}
+
+				complete = total < 0 || position == total;
+
+				if (!complete) {
+					throw new IOException(String.format("Download of %s is incomplete, received %s of %s bytes", saveFile.getName(), position, total));
+				}
+			} finally {
+				if (!complete) {
+					// Keep only what was received, not the pre-allocated space, so that the download can be resumed
+					file.setLength(position);
+				}
 			}
+
+			PartialDownload.clear(saveFile);
 		} finally {
-			connection.disconnect();
+			close();
 		}
 
 		return saveFile;
 	}
 
+	private void notifyProgress(DownloadOptions options, DownloadOptions.Progress progress) {
+		if (options.getProgressListener() != null) {
+			options.getProgressListener().progress(progress);
+		}
+	}
+
+	/**
+	 * @return First byte position from a Content-Range header such as "bytes 100-999/1000"
+	 */
+	private long parseContentRangeStart() throws IOException {
+		String range = getContentRange();
+
+		try {
+			return Long.parseLong(range.substring(range.indexOf(' ') + 1, range.indexOf('-')).trim());
+		} catch (IndexOutOfBoundsException | NumberFormatException e) {
+			throw new IOException("Unable to parse Content-Range header: " + range, e);
+		}
+	}
+
+	/**
+	 * @return Complete length from a Content-Range header such as "bytes 100-999/1000" or "bytes *&#47;1000", -1 if unknown
+	 */
+	private long parseContentRangeTotal() throws IOException {
+		String range = getContentRange();
+		String total = range.substring(range.indexOf('/') + 1).trim();
+
+		if ("*".equals(total)) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(total);
+		} catch (NumberFormatException e) {
+			throw new IOException("Unable to parse Content-Range header: " + range, e);
+		}
+	}
+
+	private String getContentRange() throws IOException {
+		String range = head.getHeader("Content-Range");
+
+		if (range == null || !range.startsWith("bytes ") || range.indexOf('/') < 0) {
+			throw new IOException("Server did not return a valid Content-Range header: " + range);
+		}
+
+		return range;
+	}
+
 	/** 
      * Retrieves the "filename" attribute from a content disposition line.
      *
@@ -271,19 +935,22 @@ public class HttpEasyReader {
 	 * @return Field value
 	 */
 	public String getResponseHeaderField(String name) {
-		return connection.getHeaderField(name);
+		return head.getHeader(name);
 	}
 
 	/**
 	 * Response header field.
 	 * 
-	 * <b>If called on a connection that sets the same header multiple times then all values are returned in a list.</b>
+	 * <b>If called on a connection that sets the same header multiple times then all values are returned in a list, in the
+	 * order they were received.</b>
 	 * 
-	 * @param name Field name
-	 * @return Field value
+	 * @param name Field name, in any case
+	 * @return Field values, null if the header is not present
 	 */
 	public List<String> getResponseHeaderFields(String name) {
-		return connection.getHeaderFields().get(name);
+		List<String> values = head.getHeaders(name);
+
+		return values.isEmpty() ? null : values;
 	}
 	
 	/**
@@ -0,0 +1,104 @@
+package nz.govt.msd.driver.http;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import nz.govt.msd.driver.http.RequestMetrics.Phase;
+
+/**
+ * Keeps a histogram of each phase of the requests to every endpoint, identified by host and path template, so that the time
+ * spent talking to each service can be reported at the end of a test run.
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpMetrics metrics = new HttpMetrics();
+ *
+ * HttpEasy.withDefaults().metrics(metrics);
+ * ...
+ * metrics.getEndpoints().values().forEach(endpoint -{@literal >} LOGGER.info("{}", endpoint));
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A slow environment shows up as slow connect and time to first byte across every endpoint of a host, whereas a slow test
+ * makes a lot of requests that are each fast.
+ * </p>
+ */
+public class HttpMetrics implements HttpMetricsListener {
+	private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+	@Override
+	public void requestCompleted(RequestMetrics metrics) {
+		endpoints.computeIfAbsent(metrics.getHost() + " " + metrics.getPathTemplate(), key -> new Endpoint(metrics.getHost(), metrics.getPathTemplate()))
+				.record(metrics);
+	}
+
+	/**
+	 * @return Snapshot of the timings of each endpoint, sorted by host and path template
+	 */
+	public Map<String, EndpointMetrics> getEndpoints() {
+		Map<String, EndpointMetrics> snapshot = new TreeMap<String, EndpointMetrics>();
+
+		for (Map.Entry<String, Endpoint> endpoint : endpoints.entrySet()) {
+			snapshot.put(endpoint.getKey(), endpoint.getValue().snapshot());
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * Discard the timings recorded so far.
+	 */
+	public void clear() {
+		endpoints.clear();
+	}
+
+	/**
+	 * Histograms of the requests to one endpoint.
+	 */
+	private static class Endpoint {
+		private final String host;
+		private final String pathTemplate;
+		private final Map<Phase, LatencyHistogram> phases = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder requestBytes = new LongAdder();
+		private final LongAdder responseBytes = new LongAdder();
+
+		Endpoint(String host, String pathTemplate) {
+			this.host = host;
+			this.pathTemplate = pathTemplate;
+
+			for (Phase phase : Phase.values()) {
+				phases.put(phase, new LatencyHistogram());
+			}
+		}
+
+		void record(RequestMetrics metrics) {
+			for (Phase phase : Phase.values()) {
+				phases.get(phase).record(metrics.getNanos(phase));
+			}
+
+			if (metrics.isFailed()) {
+				failures.increment();
+			}
+
+			requestBytes.add(metrics.getRequestBytes());
+			responseBytes.add(metrics.getResponseBytes());
+		}
+
+		EndpointMetrics snapshot() {
+			Map<Phase, LatencyHistogram> copy = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+
+			for (Map.Entry<Phase, LatencyHistogram> phase : phases.entrySet()) {
+				copy.put(phase.getKey(), phase.getValue().snapshot());
+			}
+
+			return new EndpointMetrics(host, pathTemplate, copy, failures.sum(), requestBytes.sum(), responseBytes.sum());
+		}
+	}
+}
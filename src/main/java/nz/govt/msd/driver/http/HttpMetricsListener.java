@@ -0,0 +1,18 @@
+package nz.govt.msd.driver.http;
+
+/**
+ * Receives the timings of every request sent by a client, set via {@link HttpEasyDefaults#metrics(HttpMetricsListener)} or
+ * {@link HttpEasyClient.Builder#metrics(HttpMetricsListener)}.
+ *
+ * <p>
+ * {@link HttpMetrics} keeps a histogram of the timings of each endpoint in memory, implement this interface to publish the
+ * timings elsewhere.  The listener is called on the thread that released the connection so must be thread safe and quick.
+ * </p>
+ */
+@FunctionalInterface
+public interface HttpMetricsListener {
+	/**
+	 * @param metrics Timings of a request whose response has been read or whose reader has been closed
+	 */
+	void requestCompleted(RequestMetrics metrics);
+}
@@ -0,0 +1,49 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * Service provider interface for obtaining and releasing the connections used by {@link HttpEasy}.
+ *
+ * <p>
+ * A transport only manages the lifetime of a connection, HttpEasy still configures and sends the request and
+ * {@link HttpEasyReader} reads the response.  The transport used by all requests is set via
+ * {@link HttpEasyDefaults#transport(HttpTransport)}, the following implementations are provided:
+ *
+ * * {@link DefaultHttpTransport} - a new connection per request that is closed once the response has been read
+ * * {@link PooledHttpTransport} - keep-alive connections that are reused between requests to the same host
+ * </p>
+ */
+public interface HttpTransport {
+
+	/**
+	 * Open a connection to the supplied url, the connection must not yet be connected.
+	 *
+	 * @param url Url to connect to
+	 * @param proxy Proxy to connect through, {@link Proxy#NO_PROXY} for a direct connection
+	 * @return An unconnected HttpURLConnection
+	 * @throws IOException If unable to open the connection
+	 */
+	public HttpURLConnection open(URL url, Proxy proxy) throws IOException;
+
+	/**
+	 * Called once the response head of a connection opened by this transport has been received, the body may not yet have been
+	 * read.  A transport that limits the requests to a host can allow another to be sent from this point, as a response that is
+	 * never read or closed would otherwise hold its place until the connection is released.
+	 *
+	 * @param connection Connection the response was received on
+	 */
+	public default void responseReceived(HttpURLConnection connection) {
+	}
+
+	/**
+	 * Called exactly once for each connection opened by this transport, either when the response has been read or when the
+	 * request failed and the connection is no longer required.
+	 *
+	 * @param connection Connection to release
+	 */
+	public void release(HttpURLConnection connection);
+}
@@ -0,0 +1,89 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Wraps a socket factory to record the number and duration of TLS handshakes in {@link TlsRegistry}.
+ *
+ * <p>
+ * The duration of a handshake is measured from when the socket is created so, when the connection has not yet been made,
+ * also includes the TCP connect.  A handshake is counted as resumed if the session was created before the socket was, this
+ * holds for both TLS 1.2 session ids and TLS 1.3 session tickets.
+ * </p>
+ *
+ * <p>
+ * A socket created while HttpEasy is opening a connection also reports its handshake to that request's {@link RequestTimer}.
+ * </p>
+ */
+class InstrumentedSslSocketFactory extends SSLSocketFactory {
+	private final SSLSocketFactory delegate;
+
+	InstrumentedSslSocketFactory(SSLSocketFactory delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return delegate.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return delegate.getSupportedCipherSuites();
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return instrument(delegate.createSocket());
+	}
+
+	@Override
+	public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+		return instrument(delegate.createSocket(socket, host, port, autoClose));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		return instrument(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return instrument(delegate.createSocket(host, port, localHost, localPort));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return instrument(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+		return instrument(delegate.createSocket(address, port, localAddress, localPort));
+	}
+
+	private Socket instrument(Socket socket) {
+		if (socket instanceof SSLSocket) {
+			final long started = System.nanoTime();
+			final long created = System.currentTimeMillis();
+			final RequestTimer timer = RequestTimer.current();
+
+			((SSLSocket) socket).addHandshakeCompletedListener(event -> {
+				long duration = System.nanoTime() - started;
+
+				TlsRegistry.recordHandshake(duration, event.getSession().getCreationTime() < created);
+
+				if (timer != null) {
+					timer.tlsHandshake(duration);
+				}
+			});
+		}
+
+		return socket;
+	}
+}
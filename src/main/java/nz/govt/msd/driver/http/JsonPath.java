@@ -0,0 +1,714 @@
+package nz.govt.msd.driver.http;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A json search path compiled into a list of steps so that it can be evaluated many times without being parsed again.
+ *
+ * <p>
+ * Compiled paths are cached by path string, so calling {@link JsonReader#jsonPath(String)} with the same path in a loop only
+ * pays for walking the document.
+ * </p>
+ *
+ * <p>
+ * A path is made up of dot separated names, each optionally followed by one or more steps in square brackets:
+ *
+ * * name - a member of an object, a dot in a name can be escaped with a backslash, eg "ele2part1\\.ele2part2"
+ * * ['name'] - a member of an object whose name contains characters that have a meaning in a path
+ * * [2] - an element of an array, a path may start with an index if the document is an array, eg "[0].id"
+ * * [*], or * in place of a name - every member of an object or element of an array
+ * * [start:end:step] - a slice of an array, any part may be left out and negative positions count back from the end, eg "[-2:]"
+ * * [?(@.name == 'value')] - the elements of an array, or an object, for which the condition holds.  The condition compares
+ *   a name path below the element, or the element itself if just "@", using ==, !=, &lt;, &lt;=, &gt; or &gt;= with a number,
+ *   quoted string, true, false or null.  With no comparison, eg [?(@.isbn)], the condition holds if the name path exists.
+ * </p>
+ *
+ * <p>
+ * A path that only uses names and indexes finds a single value, a path with a wildcard, slice or filter can find many.
+ * </p>
+ *
+ * <pre>
+ * JsonPath titles = JsonPath.compile("store.book[?(@.price &lt; 10)].title");
+ * List{@literal <JsonElement>} cheap = titles.findAll(json);
+ * </pre>
+ */
+public final class JsonPath {
+	private static final int CACHE_SIZE = 1000;
+
+	private static final Cache<String, JsonPath> CACHE = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+	private final String path;
+	private final Step[] steps;
+	private final boolean definite;
+
+	private JsonPath(String path) {
+		List<Step> stepList = new ArrayList<Step>();
+		boolean isDefinite = true;
+
+		new Parser(path).parse(stepList);
+
+		for (Step step : stepList) {
+			isDefinite &= step.isDefinite();
+		}
+
+		this.path = path;
+		this.steps = stepList.toArray(new Step[stepList.size()]);
+		this.definite = isDefinite;
+	}
+
+	/**
+	 * Get the compiled path for a path string.
+	 *
+	 * @param path A json search path
+	 * @return The compiled path
+	 * @throws IllegalArgumentException If the path is not valid
+	 */
+	public static JsonPath compile(String path) {
+		if (path == null) {
+			throw new IllegalArgumentException("Json path must be specified");
+		}
+
+		JsonPath compiled = CACHE.getIfPresent(path);
+
+		if (compiled == null) {
+			compiled = new JsonPath(path);
+			CACHE.put(path, compiled);
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * @return The path string
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Whether the path only uses names and indexes and so finds at most one value
+	 */
+	public boolean isDefinite() {
+		return definite;
+	}
+
+	/**
+	 * Find the value of the path.
+	 *
+	 * @param json Json element to search from
+	 * @return For a definite path the value or null if not found, otherwise a {@link JsonArray} of every match which is empty if
+	 * nothing matched
+	 */
+	public JsonElement find(JsonElement json) {
+		if (definite) {
+			return find(json, 0);
+		}
+
+		JsonArray matches = new JsonArray();
+
+		for (JsonElement match : findAll(json)) {
+			matches.add(match);
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Find every value that matches the path.
+	 *
+	 * @param json Json element to search from
+	 * @return The matches in document order, an empty list if nothing matched
+	 */
+	public List<JsonElement> findAll(JsonElement json) {
+		if (definite) {
+			JsonElement value = find(json, 0);
+
+			return value == null ? Collections.<JsonElement>emptyList() : Collections.singletonList(value);
+		}
+
+		List<JsonElement> current = new ArrayList<JsonElement>();
+		List<JsonElement> next = new ArrayList<JsonElement>();
+
+		if (json != null) {
+			current.add(json);
+		}
+
+		for (Step step : steps) {
+			for (JsonElement node : current) {
+				step.collect(node, next);
+			}
+
+			List<JsonElement> swap = current;
+
+			current = next;
+			next = swap;
+			next.clear();
+
+			if (current.isEmpty()) {
+				break;
+			}
+		}
+
+		return current;
+	}
+
+	/**
+	 * Walk a definite path from one of its steps.
+	 *
+	 * @param json Value found at the steps before from
+	 * @param from Index of the first step to take
+	 * @return The value at the end of the path, null if it is not there
+	 */
+	JsonElement find(JsonElement json, int from) {
+		JsonElement current = json;
+
+		for (int i = from; i < steps.length && current != null; i++) {
+			current = steps[i].select(current);
+		}
+
+		return current;
+	}
+
+	int length() {
+		return steps.length;
+	}
+
+	Step getStep(int index) {
+		return steps[index];
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+
+	/**
+	 * One step of a path.
+	 */
+	abstract static class Step {
+		/**
+		 * @return Whether the step selects at most one value
+		 */
+		boolean isDefinite() {
+			return false;
+		}
+
+		/**
+		 * @param name Member name
+		 * @return Whether a definite step selects the member with this name
+		 */
+		boolean matches(String name) {
+			return false;
+		}
+
+		/**
+		 * @param index Array index
+		 * @return Whether a definite step selects the element at this index
+		 */
+		boolean matches(int index) {
+			return false;
+		}
+
+		/**
+		 * @param node Value to step into
+		 * @return The value selected by a definite step, null if none
+		 */
+		JsonElement select(JsonElement node) {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * @param node Value to step into
+		 * @param matches List to add the values selected by the step to
+		 */
+		abstract void collect(JsonElement node, List<JsonElement> matches);
+	}
+
+	private static final class NameStep extends Step {
+		private final String name;
+
+		NameStep(String name) {
+			this.name = name;
+		}
+
+		@Override
+		boolean isDefinite() {
+			return true;
+		}
+
+		@Override
+		boolean matches(String memberName) {
+			return name.equals(memberName);
+		}
+
+		@Override
+		JsonElement select(JsonElement node) {
+			return node.isJsonObject() ? node.getAsJsonObject().get(name) : null;
+		}
+
+		@Override
+		void collect(JsonElement node, List<JsonElement> matches) {
+			JsonElement value = select(node);
+
+			if (value != null) {
+				matches.add(value);
+			}
+		}
+	}
+
+	private static final class IndexStep extends Step {
+		private final int index;
+
+		IndexStep(int index) {
+			this.index = index;
+		}
+
+		@Override
+		boolean isDefinite() {
+			return true;
+		}
+
+		@Override
+		boolean matches(int elementIndex) {
+			return index == elementIndex;
+		}
+
+		@Override
+		JsonElement select(JsonElement node) {
+			if (!node.isJsonArray()) {
+				return null;
+			}
+
+			JsonArray array = node.getAsJsonArray();
+
+			return index < array.size() ? array.get(index) : null;
+		}
+
+		@Override
+		void collect(JsonElement node, List<JsonElement> matches) {
+			JsonElement value = select(node);
+
+			if (value != null) {
+				matches.add(value);
+			}
+		}
+	}
+
+	private static final class WildcardStep extends Step {
+		@Override
+		void collect(JsonElement node, List<JsonElement> matches) {
+			if (node.isJsonArray()) {
+				for (JsonElement element : node.getAsJsonArray()) {
+					matches.add(element);
+				}
+			} else if (node.isJsonObject()) {
+				for (Map.Entry<String, JsonElement> member : node.getAsJsonObject().entrySet()) {
+					matches.add(member.getValue());
+				}
+			}
+		}
+	}
+
+	private static final class SliceStep extends Step {
+		private final Integer start;
+		private final Integer end;
+		private final int step;
+
+		SliceStep(Integer start, Integer end, int step) {
+			this.start = start;
+			this.end = end;
+			this.step = step;
+		}
+
+		@Override
+		void collect(JsonElement node, List<JsonElement> matches) {
+			if (!node.isJsonArray()) {
+				return;
+			}
+
+			JsonArray array = node.getAsJsonArray();
+			int size = array.size();
+			int from = position(start, 0, size);
+			int to = position(end, size, size);
+
+			for (int i = from; i < to; i += step) {
+				matches.add(array.get(i));
+			}
+		}
+
+		private static int position(Integer position, int defaultValue, int size) {
+			if (position == null) {
+				return defaultValue;
+			}
+
+			int value = position < 0 ? size + position : position;
+
+			return Math.max(0, Math.min(size, value));
+		}
+	}
+
+	private static final class FilterStep extends Step {
+		private final JsonPath relative;
+		private final String operator;
+		private final JsonElement literal;
+
+		/**
+		 * @param relative Path below the element to test, null to test the element itself
+		 * @param operator Comparison operator, null to test whether the path exists
+		 * @param literal Value to compare with
+		 */
+		FilterStep(JsonPath relative, String operator, JsonElement literal) {
+			this.relative = relative;
+			this.operator = operator;
+			this.literal = literal;
+		}
+
+		@Override
+		void collect(JsonElement node, List<JsonElement> matches) {
+			if (node.isJsonArray()) {
+				for (JsonElement element : node.getAsJsonArray()) {
+					if (test(element)) {
+						matches.add(element);
+					}
+				}
+			} else if (node.isJsonObject() && test(node)) {
+				matches.add(node);
+			}
+		}
+
+		private boolean test(JsonElement element) {
+			JsonElement value = relative == null ? element : relative.find(element, 0);
+
+			if (operator == null || value == null) {
+				return value != null;
+			}
+
+			switch (operator) {
+			case "==":
+				return isEqual(value);
+
+			case "!=":
+				return !isEqual(value);
+
+			default:
+				Integer comparison = compare(value);
+
+				if (comparison == null) {
+					return false;
+				}
+
+				switch (operator) {
+				case "<":
+					return comparison < 0;
+				case "<=":
+					return comparison <= 0;
+				case ">":
+					return comparison > 0;
+				default:
+					return comparison >= 0;
+				}
+			}
+		}
+
+		private boolean isEqual(JsonElement value) {
+			if (isNumber(value) && isNumber(literal)) {
+				return value.getAsBigDecimal().compareTo(literal.getAsBigDecimal()) == 0;
+			}
+
+			return value.equals(literal);
+		}
+
+		/**
+		 * @return The order of the value relative to the literal, null if they can't be ordered
+		 */
+		private Integer compare(JsonElement value) {
+			if (isNumber(value) && isNumber(literal)) {
+				return value.getAsBigDecimal().compareTo(literal.getAsBigDecimal());
+			}
+
+			if (isString(value) && isString(literal)) {
+				return value.getAsString().compareTo(literal.getAsString());
+			}
+
+			return null;
+		}
+
+		private static boolean isNumber(JsonElement element) {
+			return element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber();
+		}
+
+		private static boolean isString(JsonElement element) {
+			return element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+		}
+	}
+
+	/**
+	 * Splits a path string into steps, reading it a character at a time.
+	 */
+	private static final class Parser {
+		private final String path;
+		private int position = 0;
+
+		Parser(String path) {
+			this.path = path;
+		}
+
+		void parse(List<Step> steps) {
+			while (true) {
+				String name = readName();
+
+				// A name is optional before an index, eg "[0].id" or "a[0][1]"
+				if (!name.isEmpty() || !isAt('[')) {
+					steps.add("*".equals(name) ? new WildcardStep() : new NameStep(name));
+				}
+
+				while (isAt('[')) {
+					steps.add(readBracket());
+				}
+
+				if (position == path.length()) {
+					return;
+				}
+
+				if (!isAt('.')) {
+					throw invalid("expected '.' or '['");
+				}
+
+				position++;
+			}
+		}
+
+		private String readName() {
+			StringBuilder name = null;
+			int start = position;
+
+			while (position < path.length()) {
+				char c = path.charAt(position);
+
+				if (c == '.' || c == '[') {
+					break;
+				}
+
+				if (c == '\\' && position + 1 < path.length() && (path.charAt(position + 1) == '.' || path.charAt(position + 1) == '[')) {
+					if (name == null) {
+						name = new StringBuilder(path.length());
+						name.append(path, start, position);
+					}
+
+					name.append(path.charAt(position + 1));
+					position += 2;
+					continue;
+				}
+
+				if (name != null) {
+					name.append(c);
+				}
+
+				position++;
+			}
+
+			return name == null ? path.substring(start, position) : name.toString();
+		}
+
+		private Step readBracket() {
+			position++;
+
+			if (isAt('?')) {
+				return readFilter();
+			}
+
+			if (isAt('\'') || isAt('"')) {
+				String name = readQuoted();
+
+				expect(']');
+				return new NameStep(name);
+			}
+
+			int close = path.indexOf(']', position);
+
+			if (close < 0) {
+				throw invalid("missing ']'");
+			}
+
+			String content = path.substring(position, close).trim();
+
+			position = close + 1;
+
+			if ("*".equals(content)) {
+				return new WildcardStep();
+			}
+
+			if (content.indexOf(':') >= 0) {
+				return readSlice(content);
+			}
+
+			int index = readInteger(content);
+
+			if (index < 0) {
+				throw invalid("array index must not be negative, use a slice such as [-1:] to select from the end");
+			}
+
+			return new IndexStep(index);
+		}
+
+		private Step readSlice(String content) {
+			String[] parts = content.split(":", -1);
+
+			if (parts.length > 3) {
+				throw invalid("a slice has at most three parts");
+			}
+
+			Integer start = parts[0].trim().isEmpty() ? null : readInteger(parts[0]);
+			Integer end = parts[1].trim().isEmpty() ? null : readInteger(parts[1]);
+			int step = parts.length < 3 || parts[2].trim().isEmpty() ? 1 : readInteger(parts[2]);
+
+			if (step <= 0) {
+				throw invalid("slice step must be greater than 0");
+			}
+
+			return new SliceStep(start, end, step);
+		}
+
+		private Step readFilter() {
+			position++;
+			expect('(');
+			skipWhitespace();
+			expect('@');
+
+			int start = position;
+
+			while (position < path.length() && " \t=!<>)".indexOf(path.charAt(position)) < 0) {
+				if (isAt('\'') || isAt('"')) {
+					readQuoted();
+				} else {
+					position++;
+				}
+			}
+
+			JsonPath relative = null;
+
+			if (position > start) {
+				String relativePath = path.substring(start, position);
+
+				// The path below the element starts with a '.' or '[', eg "@.name" or "@['name']"
+				relative = new JsonPath(relativePath.startsWith(".") ? relativePath.substring(1) : relativePath);
+
+				if (!relative.isDefinite()) {
+					throw invalid("a filter can only test a path of names and indexes");
+				}
+			}
+
+			skipWhitespace();
+
+			String operator = null;
+			JsonElement literal = null;
+
+			if (!isAt(')')) {
+				operator = readOperator();
+				skipWhitespace();
+				literal = readLiteral();
+				skipWhitespace();
+			}
+
+			expect(')');
+			expect(']');
+
+			return new FilterStep(relative, operator, literal);
+		}
+
+		private String readOperator() {
+			for (String operator : new String[] {"==", "!=", "<=", ">=", "<", ">"}) {
+				if (path.startsWith(operator, position)) {
+					position += operator.length();
+					return operator;
+				}
+			}
+
+			throw invalid("expected a comparison operator");
+		}
+
+		private JsonElement readLiteral() {
+			if (isAt('\'') || isAt('"')) {
+				return new JsonPrimitive(readQuoted());
+			}
+
+			int start = position;
+
+			while (position < path.length() && " \t)".indexOf(path.charAt(position)) < 0) {
+				position++;
+			}
+
+			String literal = path.substring(start, position);
+
+			switch (literal) {
+			case "true":
+				return new JsonPrimitive(Boolean.TRUE);
+			case "false":
+				return new JsonPrimitive(Boolean.FALSE);
+			case "null":
+				return JsonNull.INSTANCE;
+			default:
+				try {
+					return new JsonPrimitive(new BigDecimal(literal));
+				} catch (NumberFormatException e) {
+					throw invalid("expected a number, quoted string, true, false or null but found '" + literal + "'");
+				}
+			}
+		}
+
+		private String readQuoted() {
+			char quote = path.charAt(position);
+			int close = path.indexOf(quote, position + 1);
+
+			if (close < 0) {
+				throw invalid("missing closing quote");
+			}
+
+			String value = path.substring(position + 1, close);
+
+			position = close + 1;
+			return value;
+		}
+
+		private int readInteger(String value) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				throw invalid("'" + value + "' is not a valid array index");
+			}
+		}
+
+		private void skipWhitespace() {
+			while (isAt(' ') || isAt('\t')) {
+				position++;
+			}
+		}
+
+		private void expect(char c) {
+			if (!isAt(c)) {
+				throw invalid("expected '" + c + "'");
+			}
+
+			position++;
+		}
+
+		private boolean isAt(char c) {
+			return position < path.length() && path.charAt(position) == c;
+		}
+
+		private IllegalArgumentException invalid(String reason) {
+			return new IllegalArgumentException(String.format("Invalid json path %s at position %s, %s", path, position, reason));
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Finds the values of one or more paths in a JSON document by reading its tokens in a single pass, only the values that have
+ * been asked for are parsed into {@link JsonElement}s.
+ *
+ * <p>
+ * Objects and arrays that are not on the way to a requested path are skipped without being parsed, and reading stops as soon as
+ * every path has either been found or can no longer be found, so the memory needed does not grow with the size of the document
+ * and the rest of a large response need not be read at all.
+ * </p>
+ *
+ * <p>
+ * Paths must be definite {@link JsonPath}s: dot separated names, each optionally followed by one or more array indexes, eg
+ * "rows[0].doc._id".  A path may start with an index if the document is an array, eg "[0].id".
+ * </p>
+ */
+class JsonPathScanner {
+	private final List<Path> paths = new ArrayList<Path>();
+	private int unsettled;
+
+	/**
+	 * @param paths Paths to find
+	 */
+	JsonPathScanner(JsonPath... paths) {
+		for (JsonPath path : paths) {
+			if (!path.isDefinite()) {
+				throw new IllegalArgumentException("Only paths of names and indexes can be found while streaming: " + path);
+			}
+
+			this.paths.add(new Path(path));
+		}
+	}
+
+	/**
+	 * @param json Json document, the caller is responsible for closing the reader
+	 * @return The value of each path, in the order they were requested, a value is null if the path was not found
+	 * @throws IOException If unable to read the document
+	 * @throws JsonSyntaxException If the document is not valid json
+	 */
+	Map<String, JsonElement> scan(Reader json) throws IOException {
+		unsettled = paths.size();
+
+		if (unsettled > 0) {
+			JsonReader in = new JsonReader(json);
+
+			in.setLenient(true);
+
+			try {
+				visit(in, paths, 0);
+			} catch (IllegalStateException | NumberFormatException e) {
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		Map<String, JsonElement> values = new LinkedHashMap<String, JsonElement>();
+
+		for (Path path : paths) {
+			values.put(path.compiled.getPath(), path.value);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Read the value at the current position, which matches the first depth steps of each of the candidate paths.
+	 */
+	private void visit(JsonReader in, List<Path> candidates, int depth) throws IOException {
+		JsonToken token = in.peek();
+
+		if (hasPathEndingAt(candidates, depth)) {
+			// Parse the requested value once, any longer paths below it are found within the parsed value
+			JsonElement value = new JsonParser().parse(in);
+
+			for (Path path : candidates) {
+				settle(path, path.compiled.find(value, depth));
+			}
+
+			return;
+		}
+
+		if (token == JsonToken.BEGIN_OBJECT) {
+			visitObject(in, candidates, depth);
+		} else if (token == JsonToken.BEGIN_ARRAY) {
+			visitArray(in, candidates, depth);
+		} else {
+			// A path can't go below a primitive value
+			in.skipValue();
+		}
+
+		for (Path path : candidates) {
+			settle(path, null);
+		}
+	}
+
+	private void visitObject(JsonReader in, List<Path> candidates, int depth) throws IOException {
+		in.beginObject();
+
+		while (in.hasNext() && unsettled > 0) {
+			String name = in.nextName();
+			List<Path> matching = new ArrayList<Path>();
+
+			for (Path path : candidates) {
+				if (!path.settled && path.compiled.getStep(depth).matches(name)) {
+					matching.add(path);
+				}
+			}
+
+			if (matching.isEmpty()) {
+				in.skipValue();
+			} else {
+				visit(in, matching, depth + 1);
+			}
+		}
+
+		if (unsettled > 0) {
+			in.endObject();
+		}
+	}
+
+	private void visitArray(JsonReader in, List<Path> candidates, int depth) throws IOException {
+		in.beginArray();
+
+		int index = 0;
+
+		while (in.hasNext() && unsettled > 0) {
+			List<Path> matching = new ArrayList<Path>();
+
+			for (Path path : candidates) {
+				if (!path.settled && path.compiled.getStep(depth).matches(index)) {
+					matching.add(path);
+				}
+			}
+
+			if (matching.isEmpty()) {
+				in.skipValue();
+			} else {
+				visit(in, matching, depth + 1);
+			}
+
+			index++;
+		}
+
+		if (unsettled > 0) {
+			in.endArray();
+		}
+	}
+
+	private boolean hasPathEndingAt(List<Path> candidates, int depth) {
+		for (Path path : candidates) {
+			if (!path.settled && path.compiled.length() == depth) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * A path is settled once it has been found or the part of the document it points into has been read without finding it.
+	 */
+	private void settle(Path path, JsonElement value) {
+		if (path.settled) {
+			return;
+		}
+
+		path.settled = true;
+		path.value = value;
+		unsettled--;
+	}
+
+	/**
+	 * A path being searched for.
+	 */
+	private static class Path {
+		final JsonPath compiled;
+		boolean settled = false;
+		JsonElement value = null;
+
+		Path(JsonPath compiled) {
+			this.compiled = compiled;
+		}
+	}
+}
@@ -1,12 +1,13 @@
 package nz.govt.msd.driver.http;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Type;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
@@ -14,12 +15,15 @@ import com.google.gson.JsonSyntaxException;
 /**
  * A wrapper around "com.google.gson.Gson" for simplifying the parsing JSON strings.
  * 
+ * <p>
+ * A JsonReader holds the whole document in memory, to pick a few values out of a large document without doing so use 
+ * {@link #extract(Reader, String...)}.
+ * </p>
+ * 
  * @author Andrew Sumner
  */
 public class JsonReader implements ResponseReader {
 	private final JsonElement json;
-	// Check if has '.' not preceded by '\'
-	private static final Pattern CHECK_FOR_DOT = Pattern.compile("(?<!\\\\)\\.");
 
 	/**
 	 * A json reader.
@@ -30,6 +34,15 @@ public class JsonReader implements ResponseReader {
 		this.json = new JsonParser().parse(json);
 	}
 	
+	/**
+	 * A json reader that parses the json directly from a stream, avoiding the need to read it into a string first.
+	 * 
+	 * @param json Json stream, the caller is responsible for closing the stream
+	 */
+	public JsonReader(Reader json) {
+		this.json = new JsonParser().parse(json);
+	}
+	
 	/**
 	 * A json reader.
 	 * @param element Json Element
@@ -38,14 +51,63 @@ public class JsonReader implements ResponseReader {
 		this.json = element;
 	}
 
+	/**
+	 * Find the values of one or more paths while reading a JSON stream, without parsing the whole document.
+	 * 
+	 * <p>
+	 * The stream is read once, parts of the document that are not on the way to a requested path are skipped without being 
+	 * parsed, and reading stops once every path has been found or can no longer be found.  The memory needed depends on the
+	 * size of the values asked for rather than the size of the document, so values can be taken from a response of 100's of 
+	 * megabytes.
+	 * </p>
+	 * 
+	 * <pre>
+	 * Map{@literal <String, JsonElement>} values = JsonReader.extract(reader, "total_rows", "rows[0].doc._id");
+	 * </pre>
+	 * 
+	 * <p>
+	 * Only paths made up of names and indexes can be found while streaming, if any path has a wildcard, slice or filter the
+	 * whole document is parsed and that path's value is a JsonArray of its matches.
+	 * </p>
+	 * 
+	 * @param json Json stream, the caller is responsible for closing the stream
+	 * @param paths Dot separated Json search paths, see {@link JsonPath}, a path may start with an index if the document is
+	 * an array, eg "[0].id"
+	 * @return The value of each path, in the order requested, a value is null if the path was not found
+	 * @throws IOException If unable to read the stream
+	 * @throws JsonSyntaxException If the stream is not valid JSON
+	 */
+	public static Map<String, JsonElement> extract(Reader json, String... paths) throws IOException {
+		JsonPath[] compiled = new JsonPath[paths.length];
+		boolean definite = true;
+
+		for (int i = 0; i < paths.length; i++) {
+			compiled[i] = JsonPath.compile(paths[i]);
+			definite &= compiled[i].isDefinite();
+		}
+
+		if (definite) {
+			return new JsonPathScanner(compiled).scan(json);
+		}
+
+		// Wildcards, slices and filters can match anywhere in the document so it has to be parsed in full
+		JsonElement document = new JsonParser().parse(json);
+		Map<String, JsonElement> values = new LinkedHashMap<String, JsonElement>();
+
+		for (JsonPath path : compiled) {
+			values.put(path.getPath(), path.find(document));
+		}
+
+		return values;
+	}
+
 	/**
 	 * @return A nicely formatted JSON string
 	 * @throws IOException If unable to read the response
 	 */
 	@Override
 	public String asPrettyString() throws IOException {
-		Gson gson = new GsonBuilder().setPrettyPrinting().create();
-		return gson.toJson(json);
+		return GsonRegistry.getPretty().toJson(json);
 	}
 	
 	/**
@@ -73,8 +135,12 @@ public class JsonReader implements ResponseReader {
 	 * </pre>
 	 * </p>
 	 * 
+	 * <p>
+	 * Paths are compiled once and cached, see {@link JsonPath} for the full syntax including wildcards, slices and filters.
+	 * </p>
+	 * 
 	 * @param path A dot separated Json search path
-	 * @return JsonElement or null if not found
+	 * @return JsonElement or null if not found, for a path with a wildcard, slice or filter a JsonArray of the matches
 	 */
 	public JsonElement jsonPath (String path) {
 		return jsonPath(json, path);
@@ -93,57 +159,24 @@ public class JsonReader implements ResponseReader {
 	 * 
 	 * @param json Json element
 	 * @param path A dot separated Json search path
-	 * @return JsonElement or null if not found
+	 * @return JsonElement or null if not found, for a path with a wildcard, slice or filter a JsonArray of the matches
 	 */
 	public JsonElement jsonPath(JsonElement json, String path) {
-
-		if (!hasNextJsonPathElement(path)) {
-			return json.getAsJsonObject().get(removeEscapeCharacter(path));
-		} else {
-			JsonElement newJson;
-			String next = getNextJsonPathElement(path);
-
-			if (next.endsWith("]")) {
-				int pos = next.lastIndexOf('[');
-				String index = next.substring(pos + 1, next.length() - 1);
-				next = next.substring(0, pos);
-
-				newJson = json.getAsJsonObject().get(next).getAsJsonArray().get(Integer.parseInt(index));
-			} else {
-				newJson = json.getAsJsonObject().get(next);
-			}
-
-			return jsonPath(newJson, getNewJsonPath(path));
-		} 
-	}
-
-	private String removeEscapeCharacter(String path) {
-		return path.replace("\\.", ".");
-	}
-
-	private boolean hasNextJsonPathElement(String path) {
-		Matcher matcher = CHECK_FOR_DOT.matcher(path);
-		return matcher.find();
+		return JsonPath.compile(path).find(json);
 	}
 
-	private String getNextJsonPathElement(String path) {
-		Matcher matcher = CHECK_FOR_DOT.matcher(path);
-
-		if (matcher.find()) {
-			return removeEscapeCharacter(path.substring(0, matcher.start()));
-		} else {
-			return path;
-		}
-	}
-
-	private String getNewJsonPath(String path) {
-		Matcher matcher = CHECK_FOR_DOT.matcher(path);
-
-		if (matcher.find()) {
-			return path.substring(matcher.end());
-		} else {
-			return "";
-		}
+	/**
+	 * Search the JSON response for every element matching a path.
+	 * 
+	 * <pre>
+	 * List{@literal <JsonElement>} ids = reader.jsonPathAll("rows[?(@.doc.type == 'order')].id");
+	 * </pre>
+	 * 
+	 * @param path A Json search path, see {@link JsonPath}
+	 * @return The matching elements in document order, an empty list if none
+	 */
+	public List<JsonElement> jsonPathAll(String path) {
+		return JsonPath.compile(path).findAll(json);
 	}
 
 	/**
@@ -155,11 +188,11 @@ public class JsonReader implements ResponseReader {
 	 * @throws IOException  if json is not a valid representation for an object of type classOfT
 	 */
 	public <T> T fromJson(Class<T> type) throws IOException {
-		return new Gson().fromJson(json, type);
+		return GsonRegistry.getDefault().fromJson(json, type);
 	}
 	
 	/**
-	 * Deserialize the Json into an object of the specified class using a default builder.
+	 * Deserialize the Json into an object of the specified class using the default {@link GsonRegistry} builder.
 	 * 
 	 * @param <T> The type of the desired object
 	 * @param returnType Class to populate
@@ -167,7 +200,7 @@ public class JsonReader implements ResponseReader {
 	 * @throws JsonSyntaxException if json is not a valid representation for an object of type classOfT
 	 */
 	public <T> T fromJson(Type returnType) throws JsonSyntaxException {
-		return new Gson().fromJson(json, returnType);
+		return GsonRegistry.getDefault().fromJson(json, returnType);
 	}
 	
 	/**
@@ -0,0 +1,130 @@
+package nz.govt.msd.driver.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size histogram of durations in the style of HdrHistogram, recording a duration costs a few atomic increments and the
+ * memory used does not grow with the number of durations recorded.
+ *
+ * <p>
+ * Durations are recorded in microseconds in buckets that double in width, each split into 32 sub-buckets, so a percentile is
+ * accurate to within about 3% and durations of up to 19 hours can be recorded.  Durations under 64 microseconds are exact.
+ * </p>
+ */
+class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int EXACT = SUB_BUCKETS * 2;
+	private static final long MAX_MICROS = (1L << 36) - 1;
+	private static final int BUCKETS = indexOf(MAX_MICROS) + 1;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS);
+	}
+
+	private LatencyHistogram(LatencyHistogram source) {
+		long[] copy = new long[BUCKETS];
+		long copied = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = source.counts.get(i);
+			copied += copy[i];
+		}
+
+		this.counts = new AtomicLongArray(copy);
+		this.count.add(copied);
+		this.totalMicros.add(source.totalMicros.sum());
+		this.maxMicros.set(source.maxMicros.get());
+	}
+
+	/**
+	 * @param nanos Duration in nanoseconds, a negative duration is ignored
+	 */
+	void record(long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+
+		long micros = Math.min(nanos / 1000, MAX_MICROS);
+
+		counts.incrementAndGet(indexOf(micros));
+		count.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	/**
+	 * @return A copy that is not changed by later recordings, so that the count and percentiles agree with each other
+	 */
+	LatencyHistogram snapshot() {
+		return new LatencyHistogram(this);
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	double getMeanMillis() {
+		long recorded = count.sum();
+
+		return recorded == 0 ? 0 : totalMicros.sum() / 1000d / recorded;
+	}
+
+	double getMaxMillis() {
+		return maxMicros.get() / 1000d;
+	}
+
+	/**
+	 * @param percentile Percentile, eg 99 for the 99th percentile
+	 * @return The duration that the percentile of recorded durations are less than or equal to, in milliseconds
+	 */
+	double getPercentileMillis(double percentile) {
+		long recorded = count.sum();
+
+		if (recorded == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * recorded));
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+
+			if (seen >= rank) {
+				return Math.min(highestValueAt(i), maxMicros.get()) / 1000d;
+			}
+		}
+
+		return getMaxMillis();
+	}
+
+	private static int indexOf(long micros) {
+		if (micros < EXACT) {
+			return (int) micros;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+		int subBucket = (int) (micros >>> shift);
+
+		return EXACT + (shift - 1) * SUB_BUCKETS + (subBucket - SUB_BUCKETS);
+	}
+
+	private static long highestValueAt(int index) {
+		if (index < EXACT) {
+			return index;
+		}
+
+		int shift = (index - EXACT) / SUB_BUCKETS + 1;
+		int subBucket = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+
+		return ((long) (subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,139 @@
+package nz.govt.msd.driver.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * Remembers which version of a file a partially downloaded copy came from so that the download can be resumed safely.
+ *
+ * <p>
+ * The url and the ETag or Last-Modified of the response the copy was written from are stored in a sidecar file next to it,
+ * named after the file with a ".partial" suffix.  A resumed request sends that value as If-Range so that the server only sends
+ * the remainder if the file has not changed since, otherwise it sends the whole of the current file.  The sidecar is removed once
+ * the file is complete.
+ * </p>
+ */
+final class PartialDownload {
+	private static final String SUFFIX = ".partial";
+	private static final String URL_PROPERTY = "url";
+	private static final String VALIDATOR_PROPERTY = "validator";
+
+	private final File file;
+	private final String validator;
+
+	private PartialDownload(File file, String validator) {
+		this.file = file;
+		this.validator = validator;
+	}
+
+	/**
+	 * @param folder Folder the file is downloaded to
+	 * @param url Url the file is downloaded from
+	 * @return The partial copy of the file downloaded from the url, null if there isn't one
+	 */
+	static PartialDownload find(File folder, URL url) {
+		File[] sidecars = folder.listFiles((dir, name) -> name.endsWith(SUFFIX));
+
+		if (sidecars == null) {
+			return null;
+		}
+
+		for (File sidecar : sidecars) {
+			Properties properties = load(sidecar);
+
+			if (properties == null || !url.toExternalForm().equals(properties.getProperty(URL_PROPERTY))) {
+				continue;
+			}
+
+			String name = sidecar.getName();
+			File file = new File(folder, name.substring(0, name.length() - SUFFIX.length()));
+			String validator = properties.getProperty(VALIDATOR_PROPERTY);
+
+			if (file.length() > 0 && validator != null) {
+				return new PartialDownload(file, validator);
+			}
+
+			// Nothing left to resume
+			clear(file);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Record the version of the file being written, before any of it is written, so that the download can be resumed if it is
+	 * interrupted.
+	 *
+	 * @param file File being downloaded
+	 * @param url Url the file is downloaded from
+	 * @param validator ETag or Last-Modified of the response
+	 * @throws IOException If unable to write the sidecar
+	 */
+	static void record(File file, URL url, String validator) throws IOException {
+		Properties properties = new Properties();
+
+		properties.setProperty(URL_PROPERTY, url.toExternalForm());
+		properties.setProperty(VALIDATOR_PROPERTY, validator);
+
+		try (OutputStream output = new FileOutputStream(getSidecar(file))) {
+			properties.store(output, null);
+		}
+	}
+
+	/**
+	 * Forget the version of the file, either because it is complete or because it can no longer be resumed.
+	 *
+	 * @param file Downloaded file
+	 */
+	static void clear(File file) {
+		File sidecar = getSidecar(file);
+
+		if (sidecar.exists() && !sidecar.delete()) {
+			HttpEasy.LOGGER.warn("Unable to delete {}", sidecar.getPath());
+		}
+	}
+
+	private static File getSidecar(File file) {
+		return new File(file.getParentFile(), file.getName() + SUFFIX);
+	}
+
+	private static Properties load(File sidecar) {
+		Properties properties = new Properties();
+
+		try (InputStream input = new FileInputStream(sidecar)) {
+			properties.load(input);
+		} catch (IOException e) {
+			HttpEasy.LOGGER.warn("Unable to read {}: {}", sidecar.getPath(), e.getMessage());
+			return null;
+		}
+
+		return properties;
+	}
+
+	/**
+	 * @return The partially downloaded file
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return Number of bytes already downloaded, a file that can be resumed is never pre-allocated so this is its length
+	 */
+	long getLength() {
+		return file.length();
+	}
+
+	/**
+	 * @return ETag or Last-Modified of the response the file was written from
+	 */
+	String getValidator() {
+		return validator;
+	}
+}
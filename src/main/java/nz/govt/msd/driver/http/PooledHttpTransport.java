@@ -0,0 +1,349 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import nz.govt.msd.utils.Deadline;
+
+/**
+ * Reuses keep-alive connections between requests to the same host.
+ *
+ * <p>
+ * {@link HttpURLConnection} will return a socket to the JVM's keep-alive cache if the response body is fully read and the
+ * stream closed, but not if {@link HttpURLConnection#disconnect()} is called.  This transport releases connections by
+ * draining and closing the response rather than disconnecting so that subsequent requests skip the TCP and TLS handshakes.
+ * </p>
+ *
+ * <p>
+ * On top of that it:
+ *
+ * * limits the number of requests to each host awaiting a response, further requests wait for one to be received rather than
+ *   opening more connections
+ * * closes connections that have been idle for longer than the idle timeout
+ * * uses a single SSLSocketFactory for all HTTPS connections so that TLS sessions are resumed rather than renegotiated
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.withDefaults()
+ *     .transport(new PooledHttpTransport()
+ *         .withMaxConnectionsPerHost(10)
+ *         .withIdleTimeout(TimeUnit.SECONDS, 30));
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A host's place is held from when the connection is opened until the response head is received, so a response that is never
+ * read does not stop other requests being sent.  The connection itself is only returned for reuse once the response has been
+ * read or the {@link HttpEasyReader} closed, an unread response keeps its socket open until then, so always close a reader
+ * whose response is not read:
+ *
+ * <pre>
+ * try (HttpEasyReader response = HttpEasy.request().path(url).post()) {
+ *     ...
+ * }
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * The JVM reads the system property "http.maxConnections" (the number of idle connections to keep per host, default 5) when
+ * the first connection is made, if it has not been set {@link #withMaxConnectionsPerHost(int)} sets it to the same value.
+ * </p>
+ */
+public class PooledHttpTransport implements HttpTransport {
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+	private final Map<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+	private final Map<HttpURLConnection, Lease> leased = new ConcurrentHashMap<HttpURLConnection, Lease>();
+	private final ScheduledExecutorService evictor;
+
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+	private long connectionWaitMillis = TimeUnit.SECONDS.toMillis(60);
+	private SSLSocketFactory sslSocketFactory = null;
+
+	/**
+	 * Constructor.
+	 */
+	public PooledHttpTransport() {
+		evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "HttpEasy-idle-connection-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		evictor.scheduleWithFixedDelay(this::evictIdleConnections, 1, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Sets the maximum number of requests to each host that can be awaiting a response at once, defaults to 5.
+	 *
+	 * @param max Maximum connections
+	 * @return A self reference
+	 */
+	public PooledHttpTransport withMaxConnectionsPerHost(int max) {
+		if (max < 1) {
+			throw new IllegalArgumentException("Maximum connections per host must be at least 1");
+		}
+
+		if (!pools.isEmpty()) {
+			throw new IllegalStateException("Maximum connections per host cannot be changed once connections have been opened");
+		}
+
+		this.maxConnectionsPerHost = max;
+
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", String.valueOf(max));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Sets how long a host's connections may be idle before they are closed, defaults to 30 seconds.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The idle timeout
+	 * @return A self reference
+	 */
+	public PooledHttpTransport withIdleTimeout(TimeUnit unit, long duration) {
+		this.idleTimeoutMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Sets how long a request will wait to be sent when the host's connection limit has been reached before failing, defaults
+	 * to 60 seconds.  The wait is limited to the time remaining before the current thread's {@link Deadline}.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The wait timeout
+	 * @return A self reference
+	 */
+	public PooledHttpTransport withConnectionWaitTimeout(TimeUnit unit, long duration) {
+		this.connectionWaitMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the socket factory to use for all HTTPS connections, if not set the JVM default factory at the time the connection is
+	 * opened is used.  A socket factory set on the {@link HttpEasyClient}, eg by trustAllCertificates(), takes precedence.
+	 *
+	 * @param factory SSLSocketFactory
+	 * @return A self reference
+	 */
+	public PooledHttpTransport withSslSocketFactory(SSLSocketFactory factory) {
+		this.sslSocketFactory = factory;
+		return this;
+	}
+
+	@Override
+	public HttpURLConnection open(URL url, Proxy proxy) throws IOException {
+		HostPool pool = getPool(url);
+
+		try {
+			if (!pool.permits.tryAcquire(Deadline.cap(TimeUnit.MILLISECONDS, connectionWaitMillis), TimeUnit.MILLISECONDS)) {
+				throw new IOException(String.format("Timed out waiting for a free connection to %s, %s requests are awaiting a response", pool.host, maxConnectionsPerHost));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a free connection to " + pool.host, e);
+		}
+
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection(proxy);
+
+			if (connection instanceof HttpsURLConnection) {
+				((HttpsURLConnection) connection).setSSLSocketFactory(getSslSocketFactory());
+			}
+
+			leased.put(connection, new Lease(pool));
+
+			return connection;
+		} catch (IOException | RuntimeException e) {
+			pool.permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void responseReceived(HttpURLConnection connection) {
+		Lease lease = leased.get(connection);
+
+		if (lease != null) {
+			lease.responded = true;
+			lease.returnPermit();
+		}
+	}
+
+	@Override
+	public void release(HttpURLConnection connection) {
+		Lease lease = leased.remove(connection);
+
+		if (lease == null) {
+			return;
+		}
+
+		try {
+			// Without a response there is nothing to drain, and asking for one would connect again
+			if (lease.responded && drain(connection)) {
+				lease.pool.returned(connection, maxConnectionsPerHost);
+			} else {
+				connection.disconnect();
+			}
+		} finally {
+			lease.returnPermit();
+		}
+	}
+
+	/**
+	 * Close the idle connections of any host that has not been used for longer than the idle timeout.
+	 */
+	public void evictIdleConnections() {
+		long now = System.currentTimeMillis();
+
+		for (HostPool pool : pools.values()) {
+			if (now - pool.lastUsed > idleTimeoutMillis && pool.permits.availablePermits() == maxConnectionsPerHost) {
+				pool.closeIdle();
+			}
+		}
+	}
+
+	/**
+	 * Close all idle connections and stop the idle connection evictor, the transport must not be used after this is called.
+	 */
+	public void shutdown() {
+		evictor.shutdownNow();
+
+		for (HostPool pool : pools.values()) {
+			pool.closeIdle();
+		}
+	}
+
+	private SSLSocketFactory getSslSocketFactory() {
+		if (sslSocketFactory != null) {
+			return sslSocketFactory;
+		}
+
+		return HttpsURLConnection.getDefaultSSLSocketFactory();
+	}
+
+	private HostPool getPool(URL url) {
+		String host = url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() == -1 ? url.getDefaultPort() : url.getPort());
+
+		return pools.computeIfAbsent(host, key -> new HostPool(key, maxConnectionsPerHost));
+	}
+
+	/**
+	 * Read any unread response so the socket can be returned to the keep-alive cache.
+	 *
+	 * @return false if the remaining response is too large to be worth reading, or could not be read
+	 */
+	private boolean drain(HttpURLConnection connection) {
+		try {
+			InputStream stream;
+
+			if (connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST) {
+				stream = connection.getInputStream();
+			} else {
+				stream = connection.getErrorStream();
+			}
+
+			if (stream == null) {
+				return true;
+			}
+
+			try (InputStream input = stream) {
+				byte[] buffer = new byte[4096];
+				int total = 0;
+				int read;
+
+				while ((read = input.read(buffer)) != -1) {
+					total += read;
+
+					if (total > MAX_DRAIN_BYTES) {
+						return false;
+					}
+				}
+			}
+
+			return true;
+		} catch (IOException e) {
+			// Stream has already been closed by the reader, or the connection failed
+			return true;
+		}
+	}
+
+	/**
+	 * A connection opened from a host's pool, the host's permit is returned once, either when the response is received or when
+	 * the connection is released.  A connection whose response was never received, because it failed to connect or was closed
+	 * at its deadline, is disconnected rather than reused.
+	 */
+	private static class Lease {
+		final HostPool pool;
+		volatile boolean responded = false;
+		private final AtomicBoolean permitHeld = new AtomicBoolean(true);
+
+		Lease(HostPool pool) {
+			this.pool = pool;
+		}
+
+		void returnPermit() {
+			if (permitHeld.compareAndSet(true, false)) {
+				pool.permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Connection limit and recently released connections for a single host.
+	 */
+	private static class HostPool {
+		final String host;
+		final Semaphore permits;
+		final Deque<HttpURLConnection> released = new ArrayDeque<HttpURLConnection>();
+		volatile long lastUsed = System.currentTimeMillis();
+
+		HostPool(String host, int maxConnections) {
+			this.host = host;
+			this.permits = new Semaphore(maxConnections, true);
+		}
+
+		synchronized void returned(HttpURLConnection connection, int maxConnections) {
+			lastUsed = System.currentTimeMillis();
+			released.addFirst(connection);
+
+			while (released.size() > maxConnections) {
+				released.removeLast();
+			}
+		}
+
+		/**
+		 * Disconnecting a connection whose response has been read closes one of the host's idle keep-alive sockets.
+		 */
+		synchronized void closeIdle() {
+			HttpURLConnection connection;
+
+			while ((connection = released.pollFirst()) != null) {
+				connection.disconnect();
+			}
+		}
+	}
+}
@@ -2,7 +2,6 @@ package nz.govt.msd.driver.http;
 
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
@@ -19,7 +18,6 @@ import com.google.common.net.MediaType;
  * @author Andrew Sumner
  */
 class RawDataWriter implements DataWriter {
-	private HttpURLConnection connection;
 	private byte[] postEndcoded = null;
 	private File uploadFile = null;
 	
@@ -33,13 +31,10 @@ class RawDataWriter implements DataWriter {
 	 * @throws UnsupportedEncodingException
 	 */
 	public RawDataWriter(HttpURLConnection connection, Object rawData, MediaType rawDataMediaType) {
-		this.connection = connection;
-		
 		if (rawData instanceof File) {
 			uploadFile = (File)rawData;
 			
 			connection.setRequestProperty("Content-Type", rawDataMediaType.toString());
-			connection.setRequestProperty("Content-Length", Long.toString(uploadFile.length()));
 		} else {
 			// Assume data is encoded correctly
 			//this.postEndcoded = rawData.getBytes(URLEncoder.encode(String.valueOf(data), "UTF-8"));
@@ -47,12 +42,20 @@ class RawDataWriter implements DataWriter {
 			
 			connection.setRequestProperty("charset", "utf-8");
 			connection.setRequestProperty("Content-Type", rawDataMediaType.toString());
-			connection.setRequestProperty("Content-Length", Integer.toString(postEndcoded.length));
 		}
 	}
 
 	@Override
-	public void write(Logger logger) throws IOException {
+	public long getContentLength() {
+		if (uploadFile == null) {
+			return postEndcoded.length;
+		} else {
+			return uploadFile.length();
+		}
+	}
+
+	@Override
+	public void write(OutputStream outputStream, Logger logger) throws IOException {
 
 		StringBuilder logBuffer = null;
 
@@ -65,24 +68,16 @@ class RawDataWriter implements DataWriter {
 				logBuffer.append(postEndcoded);
 			}
 
-			try (DataOutputStream wr = new DataOutputStream(connection.getOutputStream())) {
+			try (DataOutputStream wr = new DataOutputStream(outputStream)) {
 				wr.write(postEndcoded);
 			}
 		} else {
-			OutputStream outputStream = connection.getOutputStream();
-			
-			try (FileInputStream inputStream = new FileInputStream(uploadFile)) {
-				byte[] buffer = new byte[4096];
-				int bytesRead = -1;
-
+			try (OutputStream output = outputStream) {
 				if (logBuffer != null) {
 					logBuffer.append("... Content of file ").append(uploadFile.getAbsolutePath()).append(" ...").append(System.lineSeparator());
 				}
 
-				while ((bytesRead = inputStream.read(buffer)) != -1) {
-					outputStream.write(buffer, 0, bytesRead);
-				}
-				outputStream.flush();
+				DataWriter.copyFile(uploadFile, output);
 			}
 		}
 
@@ -0,0 +1,121 @@
+package nz.govt.msd.driver.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * Records the requests made through {@link HttpEasy} and their responses to a directory, and replays them without using the
+ * network, so tests that depend on external services can be run quickly and repeatably.
+ *
+ * <p>
+ * Requests are matched on method, url and a hash of the request body, the boundary of a multipart request is ignored.  Each
+ * recording is a JSON file that can be reviewed and edited, the directory's index.json lists the recorded requests.
+ * A request that is recorded again replaces the earlier recording.
+ * </p>
+ *
+ * <p>
+ * The transport has two modes:
+ *
+ * * {@link Mode#RECORD} - send every request to the server and record the response
+ * * {@link Mode#REPLAY} - answer every request from the recordings, an unrecorded request fails with an IOException
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.withDefaults()
+ *     .transport(new RecordReplayTransport(new File("src/test/resources/recordings"), Mode.REPLAY)
+ *         .withDelegate(new PooledHttpTransport()));
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A response is recorded once it has been released, any of the response the test did not read is read first so the whole
+ * response is recorded.
+ * </p>
+ */
+public class RecordReplayTransport implements HttpTransport {
+	private final RecordingStore store;
+	private final Mode mode;
+	private HttpTransport delegate = new DefaultHttpTransport();
+
+	/**
+	 * Whether requests are recorded or replayed.
+	 */
+	public enum Mode {
+		/** Send requests to the server and record the responses. */
+		RECORD,
+
+		/** Answer requests from the recordings without using the network. */
+		REPLAY
+	}
+
+	/**
+	 * @param directory Directory holding the recordings, created when the first recording is saved
+	 * @param mode Whether requests are recorded or replayed
+	 */
+	public RecordReplayTransport(File directory, Mode mode) {
+		this.store = new RecordingStore(directory);
+		this.mode = mode;
+	}
+
+	/**
+	 * Sets the transport used to send requests that are being recorded, defaults to {@link DefaultHttpTransport}.
+	 *
+	 * @param transport Transport for requests sent to the server
+	 * @return A self reference
+	 */
+	public RecordReplayTransport withDelegate(HttpTransport transport) {
+		this.delegate = transport;
+		return this;
+	}
+
+	/**
+	 * @return Whether requests are recorded or replayed
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	@Override
+	public HttpURLConnection open(URL url, Proxy proxy) throws IOException {
+		if (mode == Mode.REPLAY) {
+			return new ReplayHttpURLConnection(url, store);
+		}
+
+		return new RecordingHttpURLConnection(delegate.open(url, proxy));
+	}
+
+	@Override
+	public void responseReceived(HttpURLConnection connection) {
+		if (connection instanceof RecordingHttpURLConnection) {
+			delegate.responseReceived(((RecordingHttpURLConnection) connection).getDelegate());
+		}
+	}
+
+	@Override
+	public void release(HttpURLConnection connection) {
+		if (!(connection instanceof RecordingHttpURLConnection)) {
+			return;
+		}
+
+		RecordingHttpURLConnection recording = (RecordingHttpURLConnection) connection;
+
+		try {
+			Recording saved = recording.finish();
+
+			if (saved != null) {
+				store.save(saved);
+				HttpEasy.LOGGER.debug("Recorded {} {} ({})", saved.getMethod(), saved.getUrl(), saved.getStatus());
+			}
+		} catch (IOException e) {
+			HttpEasy.LOGGER.warn("Unable to save recording of {}: {}", connection.getURL(), e.getMessage());
+		} finally {
+			delegate.release(recording.getDelegate());
+		}
+	}
+}
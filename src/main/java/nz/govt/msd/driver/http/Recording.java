@@ -0,0 +1,148 @@
+package nz.govt.msd.driver.http;
+
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.net.MediaType;
+
+/**
+ * A request and its response as saved by {@link RecordReplayTransport}, stored as JSON so that recordings can be reviewed
+ * and edited.
+ *
+ * <p>
+ * The response body is saved exactly as it was received, as text if it is an uncompressed textual content type and
+ * otherwise base64 encoded.
+ * </p>
+ */
+class Recording {
+	private String method;
+	private String url;
+	private String requestBodyHash;
+	private int status;
+	private String message;
+	private Map<String, List<String>> headers;
+	private String body;
+	private String bodyBase64;
+
+	/** Used by Gson. */
+	Recording() {
+	}
+
+	Recording(String method, String url, String requestBodyHash, int status, String message, Map<String, List<String>> headers, byte[] responseBody) {
+		this.method = method;
+		this.url = url;
+		this.requestBodyHash = requestBodyHash;
+		this.status = status;
+		this.message = message;
+		this.headers = new LinkedHashMap<String, List<String>>();
+
+		for (Entry<String, List<String>> header : headers.entrySet()) {
+			// The status line has a null key
+			if (header.getKey() != null) {
+				this.headers.put(header.getKey(), new ArrayList<String>(header.getValue()));
+			}
+		}
+
+		Charset charset = getTextCharset();
+
+		if (charset != null) {
+			this.body = new String(responseBody, charset);
+		} else {
+			this.bodyBase64 = Base64.getEncoder().encodeToString(responseBody);
+		}
+	}
+
+	/**
+	 * @param method Request method
+	 * @param url Request url
+	 * @param requestBodyHash Hash from {@link RequestBodyDigest}
+	 * @return Key that identifies the request
+	 */
+	static String getKey(String method, String url, String requestBodyHash) {
+		return method + " " + url + " " + requestBodyHash;
+	}
+
+	String getKey() {
+		return getKey(method, url, requestBodyHash);
+	}
+
+	String getMethod() {
+		return method;
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @param requestUrl Url of the request being replayed
+	 * @return A connection that replays the response
+	 */
+	BufferedHttpURLConnection toConnection(URL requestUrl) {
+		byte[] responseBody;
+
+		if (bodyBase64 != null) {
+			responseBody = Base64.getDecoder().decode(bodyBase64);
+		} else if (body != null) {
+			Charset charset = getTextCharset();
+
+			responseBody = body.getBytes(charset == null ? StandardCharsets.UTF_8 : charset);
+		} else {
+			responseBody = new byte[0];
+		}
+
+		return new BufferedHttpURLConnection(requestUrl, method, status, message, headers, responseBody);
+	}
+
+	/**
+	 * @return The charset of a textual body, or null if the body is binary or compressed
+	 */
+	private Charset getTextCharset() {
+		if (getHeader("Content-Encoding") != null && !"identity".equalsIgnoreCase(getHeader("Content-Encoding"))) {
+			return null;
+		}
+
+		String contentType = getHeader("Content-Type");
+
+		if (contentType == null) {
+			return null;
+		}
+
+		try {
+			MediaType mediaType = MediaType.parse(contentType);
+			String subtype = mediaType.subtype();
+			boolean text = "text".equals(mediaType.type())
+					|| subtype.endsWith("json") || subtype.endsWith("xml") || subtype.endsWith("javascript")
+					|| "x-www-form-urlencoded".equals(subtype);
+
+			if (!text) {
+				return null;
+			}
+
+			return mediaType.charset().or(StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private String getHeader(String name) {
+		for (Entry<String, List<String>> header : headers.entrySet()) {
+			if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+				return header.getValue().get(header.getValue().size() - 1);
+			}
+		}
+
+		return null;
+	}
+}
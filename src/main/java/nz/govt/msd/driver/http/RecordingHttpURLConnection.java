@@ -0,0 +1,314 @@
+package nz.govt.msd.driver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.security.Permission;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+
+/**
+ * Wraps a real connection to keep a copy of the request body hash and the response for {@link RecordReplayTransport}.
+ *
+ * <p>
+ * Extends HttpsURLConnection so that HttpEasy can pass its TLS settings through to a wrapped HTTPS connection, they are
+ * ignored for a plain HTTP connection.
+ * </p>
+ */
+class RecordingHttpURLConnection extends HttpsURLConnection {
+	private final HttpURLConnection delegate;
+	private String contentType = null;
+	private RequestBodyDigest requestBody = null;
+	private ByteArrayOutputStream responseBody = null;
+	private InputStream responseStream = null;
+
+	RecordingHttpURLConnection(HttpURLConnection delegate) {
+		super(delegate.getURL());
+
+		this.delegate = delegate;
+	}
+
+	HttpURLConnection getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Read any of the response the caller did not read, so that the whole response is recorded.
+	 *
+	 * @return The recording, or null if the request failed before a response was received
+	 */
+	Recording finish() {
+		try {
+			int status = delegate.getResponseCode();
+
+			if (responseStream == null) {
+				InputStream stream = status < HTTP_BAD_REQUEST ? delegate.getInputStream() : delegate.getErrorStream();
+
+				responseBody = new ByteArrayOutputStream();
+
+				if (stream != null) {
+					responseStream = new TeeInputStream(stream, responseBody, true);
+				}
+			}
+
+			if (responseStream != null) {
+				IOUtils.skip(responseStream, Long.MAX_VALUE);
+				responseStream.close();
+			}
+
+			String bodyHash = requestBody == null ? RequestBodyDigest.NO_BODY : requestBody.getHash();
+
+			return new Recording(delegate.getRequestMethod(), delegate.getURL().toExternalForm(), bodyHash, status,
+					delegate.getResponseMessage(), delegate.getHeaderFields(), responseBody.toByteArray());
+		} catch (IOException e) {
+			HttpEasy.LOGGER.debug("Not recording {} {}: {}", delegate.getRequestMethod(), delegate.getURL(), e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public void connect() throws IOException {
+		if (!connected) {
+			// Request properties can't be read once connected
+			contentType = delegate.getRequestProperty("Content-Type");
+			delegate.connect();
+			connected = true;
+		}
+	}
+
+	@Override
+	public void disconnect() {
+		delegate.disconnect();
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return delegate.usingProxy();
+	}
+
+	@Override
+	public void setRequestMethod(String method) throws ProtocolException {
+		super.setRequestMethod(method);
+		delegate.setRequestMethod(method);
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return delegate.getRequestMethod();
+	}
+
+	@Override
+	public void setConnectTimeout(int timeout) {
+		delegate.setConnectTimeout(timeout);
+	}
+
+	@Override
+	public int getConnectTimeout() {
+		return delegate.getConnectTimeout();
+	}
+
+	@Override
+	public void setReadTimeout(int timeout) {
+		delegate.setReadTimeout(timeout);
+	}
+
+	@Override
+	public int getReadTimeout() {
+		return delegate.getReadTimeout();
+	}
+
+	@Override
+	public void setInstanceFollowRedirects(boolean followRedirects) {
+		delegate.setInstanceFollowRedirects(followRedirects);
+	}
+
+	@Override
+	public boolean getInstanceFollowRedirects() {
+		return delegate.getInstanceFollowRedirects();
+	}
+
+	@Override
+	public void setDoOutput(boolean doOutput) {
+		delegate.setDoOutput(doOutput);
+	}
+
+	@Override
+	public boolean getDoOutput() {
+		return delegate.getDoOutput();
+	}
+
+	@Override
+	public void setDoInput(boolean doInput) {
+		delegate.setDoInput(doInput);
+	}
+
+	@Override
+	public boolean getDoInput() {
+		return delegate.getDoInput();
+	}
+
+	@Override
+	public void setUseCaches(boolean useCaches) {
+		delegate.setUseCaches(useCaches);
+	}
+
+	@Override
+	public boolean getUseCaches() {
+		return delegate.getUseCaches();
+	}
+
+	@Override
+	public void setFixedLengthStreamingMode(int contentLength) {
+		delegate.setFixedLengthStreamingMode(contentLength);
+	}
+
+	@Override
+	public void setFixedLengthStreamingMode(long contentLength) {
+		delegate.setFixedLengthStreamingMode(contentLength);
+	}
+
+	@Override
+	public void setChunkedStreamingMode(int chunkLength) {
+		delegate.setChunkedStreamingMode(chunkLength);
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		delegate.setRequestProperty(key, value);
+	}
+
+	@Override
+	public void addRequestProperty(String key, String value) {
+		delegate.addRequestProperty(key, value);
+	}
+
+	@Override
+	public String getRequestProperty(String key) {
+		return delegate.getRequestProperty(key);
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestProperties() {
+		return delegate.getRequestProperties();
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		connect();
+
+		requestBody = new RequestBodyDigest(contentType);
+
+		return new TeeOutputStream(delegate.getOutputStream(), requestBody);
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		return delegate.getResponseCode();
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		return delegate.getResponseMessage();
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return delegate.getHeaderField(name);
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return delegate.getHeaderField(n);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return delegate.getHeaderFieldKey(n);
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		return delegate.getHeaderFields();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return capture(delegate.getInputStream());
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return capture(delegate.getErrorStream());
+	}
+
+	@Override
+	public Permission getPermission() throws IOException {
+		return delegate.getPermission();
+	}
+
+	@Override
+	public void setSSLSocketFactory(SSLSocketFactory factory) {
+		if (delegate instanceof HttpsURLConnection) {
+			((HttpsURLConnection) delegate).setSSLSocketFactory(factory);
+		}
+	}
+
+	@Override
+	public void setHostnameVerifier(HostnameVerifier verifier) {
+		if (delegate instanceof HttpsURLConnection) {
+			((HttpsURLConnection) delegate).setHostnameVerifier(verifier);
+		}
+	}
+
+	@Override
+	public String getCipherSuite() {
+		return delegate instanceof HttpsURLConnection ? ((HttpsURLConnection) delegate).getCipherSuite() : null;
+	}
+
+	@Override
+	public Certificate[] getLocalCertificates() {
+		return delegate instanceof HttpsURLConnection ? ((HttpsURLConnection) delegate).getLocalCertificates() : null;
+	}
+
+	@Override
+	public Certificate[] getServerCertificates() throws SSLPeerUnverifiedException {
+		if (delegate instanceof HttpsURLConnection) {
+			return ((HttpsURLConnection) delegate).getServerCertificates();
+		}
+
+		throw new SSLPeerUnverifiedException("Not an HTTPS connection");
+	}
+
+	private InputStream capture(InputStream stream) {
+		if (stream == null) {
+			return null;
+		}
+
+		if (responseStream == null) {
+			responseBody = new ByteArrayOutputStream();
+			responseStream = new TeeInputStream(stream, responseBody, true);
+		}
+
+		// Leave the stream open when the caller closes it so that finish() can read what the caller did not
+		return new FilterInputStream(responseStream) {
+			@Override
+			public void close() {
+				// Closed by finish()
+			}
+		};
+	}
+}
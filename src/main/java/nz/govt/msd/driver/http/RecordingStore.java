@@ -0,0 +1,141 @@
+package nz.govt.msd.driver.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * A directory of {@link Recording}s with an index, index.json, that maps each request to the file holding its recording.
+ *
+ * <p>
+ * The index is read once and recordings are read when first replayed, so replaying a request costs a map lookup after the
+ * first time.  Files are written to a temporary file and moved into place so a failed run never leaves a partial recording.
+ * </p>
+ */
+class RecordingStore {
+	private static final String INDEX_FILE = "index.json";
+	private static final int FILE_NAME_HASH_LENGTH = 20;
+	private static final Type INDEX_TYPE = new TypeToken<TreeMap<String, String>>() { }.getType();
+
+	private final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+	private final File directory;
+	private final Map<String, String> index = new ConcurrentHashMap<String, String>();
+	private final Map<String, Recording> loaded = new ConcurrentHashMap<String, Recording>();
+
+	RecordingStore(File directory) {
+		this.directory = directory;
+
+		File indexFile = new File(directory, INDEX_FILE);
+
+		if (indexFile.isFile()) {
+			try (Reader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+				Map<String, String> saved = gson.fromJson(reader, INDEX_TYPE);
+
+				if (saved != null) {
+					index.putAll(saved);
+				}
+			} catch (IOException | JsonParseException e) {
+				throw new IllegalStateException("Unable to read recording index " + indexFile, e);
+			}
+		}
+	}
+
+	File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param key Key from {@link Recording#getKey(String, String, String)}
+	 * @return The recording, or null if the request has not been recorded
+	 * @throws IOException If unable to read the recording
+	 */
+	Recording find(String key) throws IOException {
+		Recording recording = loaded.get(key);
+
+		if (recording != null) {
+			return recording;
+		}
+
+		String fileName = index.get(key);
+
+		if (fileName == null) {
+			return null;
+		}
+
+		try (Reader reader = Files.newBufferedReader(new File(directory, fileName).toPath(), StandardCharsets.UTF_8)) {
+			recording = gson.fromJson(reader, Recording.class);
+		} catch (JsonParseException e) {
+			throw new IOException("Unable to read recording " + fileName + ": " + e.getMessage(), e);
+		}
+
+		loaded.put(key, recording);
+
+		return recording;
+	}
+
+	/**
+	 * Save a recording, replacing any earlier recording of the same request.
+	 *
+	 * @param recording The recording
+	 * @throws IOException If unable to write the recording
+	 */
+	synchronized void save(Recording recording) throws IOException {
+		String key = recording.getKey();
+		String fileName = getFileName(recording);
+
+		Files.createDirectories(directory.toPath());
+
+		write(new File(directory, fileName).toPath(), recording);
+
+		index.put(key, fileName);
+		loaded.put(key, recording);
+
+		write(new File(directory, INDEX_FILE).toPath(), new TreeMap<String, String>(index));
+	}
+
+	/**
+	 * Readable file name, eg get-weather-forecast-3f2a...json, that is unique to the request.
+	 */
+	private String getFileName(Recording recording) {
+		String path = recording.getUrl().replaceFirst("^[a-zA-Z]+://[^/]*", "").replaceFirst("[?#].*", "");
+		String slug = (recording.getMethod() + "-" + path).toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+		final int maxSlugLength = 60;
+
+		if (slug.length() > maxSlugLength) {
+			slug = slug.substring(0, maxSlugLength);
+		}
+
+		String hash = Hashing.sha256().hashString(recording.getKey(), StandardCharsets.UTF_8).toString().substring(0, FILE_NAME_HASH_LENGTH);
+
+		return slug + "-" + hash + ".json";
+	}
+
+	private void write(Path file, Object content) throws IOException {
+		Path temp = Files.createTempFile(directory.toPath(), "recording", ".tmp");
+
+		try {
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				gson.toJson(content, writer);
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package nz.govt.msd.driver.http;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides whether redirect responses are followed, by default HttpEasy returns a redirect response to the caller.
+ *
+ * <p>
+ * A 301, 302, 303, 307 or 308 response with a Location header is followed by sending the request to the new location, up to
+ * the maximum number of redirects.  As browsers do, a POST that is redirected by a 301 or 302, and any method other than HEAD
+ * redirected by a 303, is sent to the new location as a GET without its body.  A 307 or 308 redirect keeps the method and body.
+ * </p>
+ *
+ * <p>
+ * The Authorization header, and any Cookie header set on the request, are only sent to the scheme, host and port of the
+ * original request so that credentials aren't handed to another site.  Cookies set by the redirect responses are stored in
+ * the request's {@link HttpCookieJar}, or if it doesn't have one are kept for the rest of the request, and sent on to later
+ * hops where they apply.
+ * </p>
+ *
+ * <p>
+ * Permanent redirects (301 and 308) are remembered, a later request for the same url goes straight to the final location
+ * without the extra round trip.  Remembered redirects are kept by the policy, so are shared by every client and request
+ * that uses it.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.withDefaults().redirectPolicy(new RedirectPolicy().withMaxRedirects(5));
+ * </pre>
+ * </p>
+ */
+public class RedirectPolicy {
+	private static final int HTTP_TEMPORARY_REDIRECT = 307;
+	private static final int HTTP_PERMANENT_REDIRECT = 308;
+	private static final int MAX_PERMANENT_REDIRECTS = 1000;
+
+	private int maxRedirects = 5;
+	private boolean rememberPermanentRedirects = true;
+	private final Map<String, Redirect> permanentRedirects = Collections.synchronizedMap(new LinkedHashMap<String, Redirect>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Redirect> eldest) {
+			return size() > MAX_PERMANENT_REDIRECTS;
+		}
+	});
+
+	/**
+	 * @return A policy that does not follow redirects, use to turn off redirects for a single request
+	 */
+	public static RedirectPolicy none() {
+		return new RedirectPolicy().withMaxRedirects(0);
+	}
+
+	/**
+	 * Sets the maximum number of redirects followed for one request, defaults to 5.  The request fails with a
+	 * {@link java.net.ProtocolException} if it is redirected more times than this.
+	 *
+	 * @param redirects Maximum redirects, 0 to not follow redirects
+	 * @return A self reference
+	 */
+	public RedirectPolicy withMaxRedirects(int redirects) {
+		if (redirects < 0) {
+			throw new IllegalArgumentException("Maximum redirects must not be negative");
+		}
+
+		this.maxRedirects = redirects;
+		return this;
+	}
+
+	/**
+	 * Sets whether permanent redirects are remembered so that later requests go straight to the final location, defaults to true.
+	 *
+	 * @param remember Remember permanent redirects
+	 * @return A self reference
+	 */
+	public RedirectPolicy withRememberPermanentRedirects(boolean remember) {
+		this.rememberPermanentRedirects = remember;
+
+		if (!remember) {
+			permanentRedirects.clear();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Forget the permanent redirects seen so far, eg after an environment has been redeployed.
+	 */
+	public void clearPermanentRedirects() {
+		permanentRedirects.clear();
+	}
+
+	int getMaxRedirects() {
+		return maxRedirects;
+	}
+
+	/**
+	 * @param status Response code
+	 * @return Whether the response code is a redirect that can be followed
+	 */
+	static boolean isRedirect(int status) {
+		switch (status) {
+		case HttpURLConnection.HTTP_MOVED_PERM:
+		case HttpURLConnection.HTTP_MOVED_TEMP:
+		case HttpURLConnection.HTTP_SEE_OTHER:
+		case HTTP_TEMPORARY_REDIRECT:
+		case HTTP_PERMANENT_REDIRECT:
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param status Redirect response code
+	 * @param method Method of the request that was redirected
+	 * @return Method to send to the new location with
+	 */
+	static String getRedirectMethod(int status, String method) {
+		switch (status) {
+		case HttpURLConnection.HTTP_SEE_OTHER:
+			return "HEAD".equals(method) ? method : "GET";
+
+		case HttpURLConnection.HTTP_MOVED_PERM:
+		case HttpURLConnection.HTTP_MOVED_TEMP:
+			return "POST".equals(method) ? "GET" : method;
+
+		default:
+			return method;
+		}
+	}
+
+	/**
+	 * @param url Url about to be requested
+	 * @return A remembered permanent redirect for the url, null if none
+	 */
+	Redirect getPermanentRedirect(URL url) {
+		return rememberPermanentRedirects ? permanentRedirects.get(url.toExternalForm()) : null;
+	}
+
+	/**
+	 * Remember the redirect if it is permanent.
+	 *
+	 * @param from Url that was redirected
+	 * @param status Redirect response code
+	 * @param location Url redirected to
+	 */
+	void redirected(URL from, int status, URL location) {
+		if (rememberPermanentRedirects && (status == HttpURLConnection.HTTP_MOVED_PERM || status == HTTP_PERMANENT_REDIRECT)) {
+			permanentRedirects.put(from.toExternalForm(), new Redirect(status, location));
+		}
+	}
+
+	/**
+	 * A remembered redirect.
+	 */
+	static class Redirect {
+		private final int status;
+		private final URL location;
+
+		Redirect(int status, URL location) {
+			this.status = status;
+			this.location = location;
+		}
+
+		int getStatus() {
+			return status;
+		}
+
+		URL getLocation() {
+			return location;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package nz.govt.msd.driver.http;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers a request from a {@link Recording} without using the network.
+ *
+ * <p>
+ * The request body is hashed as it is written and the recording is looked up by method, url and body hash when the response
+ * is first asked for.  A request that has not been recorded fails with an IOException naming the request.
+ * </p>
+ */
+class ReplayHttpURLConnection extends HttpURLConnection {
+	private final RecordingStore store;
+	private String contentType = null;
+	private RequestBodyDigest requestBody = null;
+	private BufferedHttpURLConnection response = null;
+
+	ReplayHttpURLConnection(URL url, RecordingStore store) {
+		super(url);
+
+		this.store = store;
+	}
+
+	@Override
+	public void connect() {
+		if (!connected) {
+			// Request properties can't be read once connected
+			contentType = getRequestProperty("Content-Type");
+			connected = true;
+		}
+	}
+
+	@Override
+	public void disconnect() {
+		// Nothing to release
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		connect();
+
+		if (requestBody == null) {
+			requestBody = new RequestBodyDigest(contentType);
+		}
+
+		return requestBody;
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		return getResponse().getResponseCode();
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		return getResponse().getResponseMessage();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		BufferedHttpURLConnection replay = getResponse();
+
+		if (replay.getResponseCode() >= HTTP_BAD_REQUEST) {
+			throw new FileNotFoundException(url.toString());
+		}
+
+		return replay.getInputStream();
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		BufferedHttpURLConnection replay = findResponse();
+
+		return replay == null ? null : replay.getErrorStream();
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		BufferedHttpURLConnection replay = findResponse();
+
+		return replay == null ? null : replay.getHeaderField(name);
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		BufferedHttpURLConnection replay = findResponse();
+
+		return replay == null ? null : replay.getHeaderField(n);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		BufferedHttpURLConnection replay = findResponse();
+
+		return replay == null ? null : replay.getHeaderFieldKey(n);
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		BufferedHttpURLConnection replay = findResponse();
+
+		return replay == null ? Collections.<String, List<String>>emptyMap() : replay.getHeaderFields();
+	}
+
+	private BufferedHttpURLConnection findResponse() {
+		try {
+			return getResponse();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private BufferedHttpURLConnection getResponse() throws IOException {
+		if (response != null) {
+			return response;
+		}
+
+		String bodyHash = requestBody == null ? RequestBodyDigest.NO_BODY : requestBody.getHash();
+		Recording recording = store.find(Recording.getKey(getRequestMethod(), url.toExternalForm(), bodyHash));
+
+		if (recording == null) {
+			throw new IOException(String.format("No recording of %s %s (body %s) in %s", getRequestMethod(), url, bodyHash, store.getDirectory()));
+		}
+
+		connect();
+		response = recording.toConnection(url);
+
+		return response;
+	}
+}
@@ -0,0 +1,127 @@
+package nz.govt.msd.driver.http;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.net.MediaType;
+
+/**
+ * Hashes a request body as it is written so that recorded requests can be matched by body without holding the body in memory.
+ *
+ * <p>
+ * The boundary of a multipart request changes every time the request is sent, so it is replaced with a fixed value before
+ * hashing.
+ * </p>
+ */
+class RequestBodyDigest extends OutputStream {
+	/** Hash used for a request without a body. */
+	static final String NO_BODY = "-";
+
+	private static final byte[] FIXED_BOUNDARY = "BOUNDARY".getBytes(StandardCharsets.US_ASCII);
+
+	private final Hasher hasher = Hashing.sha256().newHasher();
+	private final byte[] boundary;
+	private final int[] failure;
+	private int matched = 0;
+	private String hash = null;
+
+	/**
+	 * @param contentType Content-Type of the request, may be null
+	 */
+	RequestBodyDigest(String contentType) {
+		this.boundary = getBoundary(contentType);
+		this.failure = boundary == null ? null : buildFailureTable(boundary);
+	}
+
+	@Override
+	public void write(int b) {
+		if (boundary == null) {
+			hasher.putByte((byte) b);
+			return;
+		}
+
+		// Knuth-Morris-Pratt search for the boundary, bytes are held back while they could be the start of a boundary
+		while (matched > 0 && boundary[matched] != (byte) b) {
+			int fallback = failure[matched - 1];
+
+			hasher.putBytes(boundary, 0, matched - fallback);
+			matched = fallback;
+		}
+
+		if (boundary[matched] == (byte) b) {
+			matched++;
+
+			if (matched == boundary.length) {
+				hasher.putBytes(FIXED_BOUNDARY);
+				matched = 0;
+			}
+		} else {
+			hasher.putByte((byte) b);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (boundary == null) {
+			hasher.putBytes(b, off, len);
+			return;
+		}
+
+		for (int i = off; i < off + len; i++) {
+			write(b[i]);
+		}
+	}
+
+	/**
+	 * @return Hex encoded SHA-256 of the body, the body must not be written to once this has been called
+	 */
+	String getHash() {
+		if (hash == null) {
+			hasher.putBytes(boundary == null ? new byte[0] : boundary, 0, matched);
+			hash = hasher.hash().toString();
+		}
+
+		return hash;
+	}
+
+	private static byte[] getBoundary(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+
+		try {
+			MediaType mediaType = MediaType.parse(contentType);
+
+			if (!"multipart".equals(mediaType.type()) || !mediaType.parameters().containsKey("boundary")) {
+				return null;
+			}
+
+			String value = mediaType.parameters().get("boundary").get(0);
+
+			return value.isEmpty() ? null : value.getBytes(StandardCharsets.US_ASCII);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static int[] buildFailureTable(byte[] pattern) {
+		int[] table = new int[pattern.length];
+		int length = 0;
+
+		for (int i = 1; i < pattern.length; i++) {
+			while (length > 0 && pattern[i] != pattern[length]) {
+				length = table[length - 1];
+			}
+
+			if (pattern[i] == pattern[length]) {
+				length++;
+			}
+
+			table[i] = length;
+		}
+
+		return table;
+	}
+}
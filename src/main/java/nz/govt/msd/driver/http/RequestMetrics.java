@@ -0,0 +1,154 @@
+package nz.govt.msd.driver.http;
+
+import java.net.HttpURLConnection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Where the time went for one request sent by {@link HttpEasy}, passed to the client's {@link HttpMetricsListener} once the
+ * response has been read or the reader closed.
+ *
+ * <p>
+ * A phase that did not happen, or could not be measured, has a duration of -1:
+ *
+ * * DNS is only measured for a direct connection, through a proxy the proxy resolves the host
+ * * a keep-alive connection reused from a {@link PooledHttpTransport} has no TLS handshake and a connect time close to zero
+ * * TLS is only measured when the socket factory comes from {@link TlsRegistry}, and as noted there includes the TCP
+ * connect of a new connection
+ * * a request that failed before a response was received has no time to first byte or body read, and a status of 0
+ * </p>
+ */
+public class RequestMetrics {
+	private final String method;
+	private final String url;
+	private final String host;
+	private final String pathTemplate;
+	private final int status;
+	private final long requestBytes;
+	private final long responseBytes;
+	private final Map<Phase, Long> nanos;
+
+	/**
+	 * The parts of a request that are timed.
+	 */
+	public enum Phase {
+		/** Resolving the host name. */
+		DNS,
+
+		/** Opening the connection, including any TLS handshake. */
+		CONNECT,
+
+		/** The TLS handshake. */
+		TLS,
+
+		/** From when the request has been sent until the status line and headers of the response have been received. */
+		TIME_TO_FIRST_BYTE,
+
+		/** From when the headers have been received until the response has been read or the reader closed. */
+		BODY_READ,
+
+		/** From when the connection is requested from the transport until it is released. */
+		TOTAL
+	}
+
+	RequestMetrics(String method, String url, String host, String pathTemplate, int status, long requestBytes, long responseBytes, Map<Phase, Long> nanos) {
+		this.method = method;
+		this.url = url;
+		this.host = host;
+		this.pathTemplate = pathTemplate;
+		this.status = status;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+		this.nanos = new EnumMap<Phase, Long>(nanos);
+	}
+
+	/**
+	 * @return Request method, eg GET
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return Request url
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return Host name of the url
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return Path of the url before {@link HttpEasy#urlParameters(Object...)} were applied, or with ids such as numbers and
+	 * uuids replaced by "{id}", so that requests to the same endpoint share a template
+	 */
+	public String getPathTemplate() {
+		return pathTemplate;
+	}
+
+	/**
+	 * @return Response status code, 0 if no response was received
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return Whether no response was received or the status code was 400 or more
+	 */
+	public boolean isFailed() {
+		return status == 0 || status >= HttpURLConnection.HTTP_BAD_REQUEST;
+	}
+
+	/**
+	 * @return Number of bytes of the request body as sent over the network
+	 */
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * @return Number of bytes of the response body read, as received over the network
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * @param phase Part of the request
+	 * @return Duration in milliseconds, -1 if the phase did not happen or was not measured
+	 */
+	public double getMillis(Phase phase) {
+		long duration = getNanos(phase);
+
+		return duration < 0 ? -1 : duration / 1_000_000d;
+	}
+
+	long getNanos(Phase phase) {
+		Long duration = nanos.get(phase);
+
+		return duration == null ? -1 : duration;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(method).append(" ").append(url).append(" ").append(status == 0 ? "no response" : String.valueOf(status));
+
+		for (Phase phase : Phase.values()) {
+			if (getNanos(phase) >= 0) {
+				sb.append(String.format(", %s %.1fms", phase.name().toLowerCase().replace('_', ' '), getMillis(phase)));
+			}
+		}
+
+		sb.append(String.format(", sent %s bytes, received %s bytes", requestBytes, responseBytes));
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,260 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import nz.govt.msd.utils.Deadline;
+
+/**
+ * Limits the rate of requests, and the number of requests in flight, to each host so that parallel tests don't overload a
+ * shared environment.
+ *
+ * <p>
+ * Each host can be given a limit of requests per second, enforced with a token bucket that allows short bursts, and a limit
+ * on the number of requests in flight at once.  A request is in flight from when its connection is opened until its response
+ * head has been received, so a response that is never read doesn't hold its place.  Requests over either limit wait, up to the
+ * maximum wait time, before being sent.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.withDefaults()
+ *     .throttle(new RequestThrottle()
+ *         .withHostLimit("uat.example.com", 20, 5)
+ *         .withDefaultLimit(50, 10));
+ *
+ * ...
+ * LOGGER.info("{}", HttpEasyDefaults.getClient().getThrottle().getMetrics());
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * The time requests spend waiting is recorded for each host, see {@link #getMetrics()}, use it to size thread counts against
+ * the capacity of an environment.
+ * </p>
+ */
+public class RequestThrottle {
+	private final Map<String, HostLimit> hostLimits = new ConcurrentHashMap<String, HostLimit>();
+	private final Map<String, HostLimit> defaultLimits = new ConcurrentHashMap<String, HostLimit>();
+	private volatile double defaultRequestsPerSecond = 0;
+	private volatile int defaultMaxInFlight = 0;
+	private volatile long maxWaitMillis = TimeUnit.SECONDS.toMillis(60);
+
+	/**
+	 * Limit requests to a host.
+	 *
+	 * @param host Host name, eg "uat.example.com"
+	 * @param requestsPerSecond Maximum average requests per second, 0 for no limit
+	 * @param maxInFlight Maximum concurrent requests, 0 for no limit
+	 * @return A self reference
+	 */
+	public RequestThrottle withHostLimit(String host, double requestsPerSecond, int maxInFlight) {
+		hostLimits.put(normalise(host), new HostLimit(requestsPerSecond, maxInFlight));
+		return this;
+	}
+
+	/**
+	 * Limit requests to hosts that do not have their own limit, each host is limited separately.
+	 *
+	 * @param requestsPerSecond Maximum average requests per second to each host, 0 for no limit
+	 * @param maxInFlight Maximum concurrent requests to each host, 0 for no limit
+	 * @return A self reference
+	 */
+	public RequestThrottle withDefaultLimit(double requestsPerSecond, int maxInFlight) {
+		validate(requestsPerSecond, maxInFlight);
+
+		this.defaultRequestsPerSecond = requestsPerSecond;
+		this.defaultMaxInFlight = maxInFlight;
+		this.defaultLimits.clear();
+
+		return this;
+	}
+
+	/**
+	 * Sets how long a request will wait to be sent before failing, defaults to 60 seconds.  The wait is limited to the time 
+	 * remaining before the current thread's {@link Deadline}.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The maximum wait
+	 * @return A self reference
+	 */
+	public RequestThrottle withMaxWait(TimeUnit unit, long duration) {
+		this.maxWaitMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * @return Request and wait time metrics for each host that has been throttled, sorted by host
+	 */
+	public Map<String, ThrottleMetrics> getMetrics() {
+		Map<String, ThrottleMetrics> metrics = new TreeMap<String, ThrottleMetrics>();
+
+		defaultLimits.forEach((host, limit) -> metrics.put(host, limit.getMetrics(host)));
+		hostLimits.forEach((host, limit) -> metrics.put(host, limit.getMetrics(host)));
+
+		return metrics;
+	}
+
+	/**
+	 * @param host Host name
+	 * @return Request and wait time metrics for the host, null if no requests have been throttled for the host
+	 */
+	public ThrottleMetrics getMetrics(String host) {
+		HostLimit limit = findLimit(normalise(host));
+
+		return limit == null ? null : limit.getMetrics(normalise(host));
+	}
+
+	/**
+	 * @return A throttle with the same limits that can be changed without changing this one, hosts that are already limited 
+	 * share their limits, and the requests in flight to them, with this throttle until they are changed
+	 */
+	RequestThrottle copy() {
+		RequestThrottle copy = new RequestThrottle();
+
+		copy.hostLimits.putAll(hostLimits);
+		copy.defaultLimits.putAll(defaultLimits);
+		copy.defaultRequestsPerSecond = defaultRequestsPerSecond;
+		copy.defaultMaxInFlight = defaultMaxInFlight;
+		copy.maxWaitMillis = maxWaitMillis;
+
+		return copy;
+	}
+
+	/**
+	 * Wait until the request can be sent.
+	 *
+	 * @param url Url the request is for
+	 * @return Permit that must be released when the request is no longer in flight, null if the host is not limited
+	 * @throws IOException If the maximum wait time was exceeded, or the thread interrupted
+	 */
+	Permit acquire(URL url) throws IOException {
+		String host = normalise(url.getHost());
+		HostLimit limit = findLimit(host);
+
+		if (limit == null && (defaultRequestsPerSecond > 0 || defaultMaxInFlight > 0)) {
+			limit = defaultLimits.computeIfAbsent(host, key -> new HostLimit(defaultRequestsPerSecond, defaultMaxInFlight));
+		}
+
+		if (limit == null) {
+			return null;
+		}
+
+		return limit.acquire(host, Deadline.cap(TimeUnit.MILLISECONDS, maxWaitMillis));
+	}
+
+	private HostLimit findLimit(String host) {
+		HostLimit limit = hostLimits.get(host);
+
+		return limit != null ? limit : defaultLimits.get(host);
+	}
+
+	private static String normalise(String host) {
+		return host.toLowerCase(Locale.ENGLISH);
+	}
+
+	private static void validate(double requestsPerSecond, int maxInFlight) {
+		if (requestsPerSecond < 0 || maxInFlight < 0) {
+			throw new IllegalArgumentException("Limits must not be negative");
+		}
+	}
+
+	/**
+	 * A request's place in the in flight limit.
+	 */
+	static class Permit {
+		private final Semaphore inFlight;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		Permit(Semaphore inFlight) {
+			this.inFlight = inFlight;
+		}
+
+		void release() {
+			if (inFlight != null && released.compareAndSet(false, true)) {
+				inFlight.release();
+			}
+		}
+	}
+
+	/**
+	 * Limits and metrics for a single host.
+	 */
+	private static class HostLimit {
+		final RateLimiter rateLimiter;
+		final Semaphore inFlight;
+		final int maxInFlight;
+		final LongAdder requests = new LongAdder();
+		final LongAdder waitNanos = new LongAdder();
+		final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+		final AtomicInteger waiting = new AtomicInteger();
+
+		HostLimit(double requestsPerSecond, int maxInFlight) {
+			validate(requestsPerSecond, maxInFlight);
+
+			this.rateLimiter = requestsPerSecond > 0 ? RateLimiter.create(requestsPerSecond) : null;
+			this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+			this.maxInFlight = maxInFlight;
+		}
+
+		Permit acquire(String host, long maxWaitMillis) throws IOException {
+			long started = System.nanoTime();
+
+			waiting.incrementAndGet();
+
+			try {
+				if (inFlight != null && !inFlight.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+					throw new IOException(String.format("Timed out waiting to send request to %s, all %s requests in flight", host, maxInFlight));
+				}
+
+				long remaining = maxWaitMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+				if (rateLimiter != null && !rateLimiter.tryAcquire(Math.max(0, remaining), TimeUnit.MILLISECONDS)) {
+					if (inFlight != null) {
+						inFlight.release();
+					}
+
+					throw new IOException(String.format("Timed out waiting to send request to %s, rate limited to %s requests per second", host, rateLimiter.getRate()));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to send request to " + host);
+			} finally {
+				waiting.decrementAndGet();
+			}
+
+			long waited = System.nanoTime() - started;
+
+			requests.increment();
+			waitNanos.add(waited);
+			maxWaitNanos.accumulate(waited);
+
+			if (waited > TimeUnit.MILLISECONDS.toNanos(1)) {
+				HttpEasy.LOGGER.trace("Request to {} throttled for {}ms", host, TimeUnit.NANOSECONDS.toMillis(waited));
+			}
+
+			return new Permit(inFlight);
+		}
+
+		ThrottleMetrics getMetrics(String host) {
+			int current = inFlight == null ? -1 : maxInFlight - inFlight.availablePermits();
+
+			return new ThrottleMetrics(host, requests.sum(), waitNanos.sum(), maxWaitNanos.get(), current, waiting.get());
+		}
+	}
+}
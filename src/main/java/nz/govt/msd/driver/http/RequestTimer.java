@@ -0,0 +1,127 @@
+package nz.govt.msd.driver.http;
+
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import nz.govt.msd.driver.http.RequestMetrics.Phase;
+
+/**
+ * Times the phases of one attempt at sending a request, from when the connection is requested from the transport until it is
+ * released, and builds the {@link RequestMetrics} for it.
+ *
+ * <p>
+ * The timer is made current on the sending thread while the connection is opened so that {@link InstrumentedSslSocketFactory}
+ * can attach the TLS handshake to it.
+ * </p>
+ */
+class RequestTimer {
+	private static final ThreadLocal<RequestTimer> CURRENT = new ThreadLocal<RequestTimer>();
+	private static final Pattern ID_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F]{8}(-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+
+	private final String method;
+	private final URL url;
+	private final String pathTemplate;
+	private final long started = System.nanoTime();
+	private final Map<Phase, Long> nanos = new EnumMap<Phase, Long>(Phase.class);
+	private long sent = 0;
+	private long headersReceived = 0;
+	private int status = 0;
+	private volatile long tlsNanos = -1;
+
+	/**
+	 * @param method Request method
+	 * @param url Request url
+	 * @param template Url before parameters were replaced, null if the url has no parameters
+	 */
+	RequestTimer(String method, URL url, String template) {
+		this.method = method;
+		this.url = url;
+		this.pathTemplate = getPathTemplate(url, template);
+	}
+
+	/**
+	 * @return The timer of the connection being opened on this thread, null if none
+	 */
+	static RequestTimer current() {
+		return CURRENT.get();
+	}
+
+	void dnsResolved(long started) {
+		nanos.put(Phase.DNS, System.nanoTime() - started);
+	}
+
+	void connecting() {
+		CURRENT.set(this);
+	}
+
+	void connected(long started) {
+		CURRENT.remove();
+		nanos.put(Phase.CONNECT, System.nanoTime() - started);
+	}
+
+	/**
+	 * Called by the socket factory, possibly on another thread, once the TLS handshake has completed.
+	 */
+	void tlsHandshake(long duration) {
+		tlsNanos = duration;
+	}
+
+	void requestSent() {
+		sent = System.nanoTime();
+	}
+
+	void responseReceived(int responseCode) {
+		headersReceived = System.nanoTime();
+		status = responseCode;
+		nanos.put(Phase.TIME_TO_FIRST_BYTE, headersReceived - sent);
+	}
+
+	/**
+	 * @param requestBytes Bytes of the request body sent
+	 * @param responseBytes Bytes of the response body read
+	 * @return The timings of the request
+	 */
+	RequestMetrics finish(long requestBytes, long responseBytes) {
+		long now = System.nanoTime();
+
+		if (headersReceived > 0) {
+			nanos.put(Phase.BODY_READ, now - headersReceived);
+		}
+
+		if (tlsNanos >= 0) {
+			nanos.put(Phase.TLS, tlsNanos);
+		}
+
+		nanos.put(Phase.TOTAL, now - started);
+
+		return new RequestMetrics(method, url.toExternalForm(), url.getHost(), pathTemplate, status, requestBytes, responseBytes, nanos);
+	}
+
+	/**
+	 * Use the path before parameters were replaced, otherwise replace segments that look like ids so that requests for
+	 * different items share a template.
+	 */
+	private static String getPathTemplate(URL url, String template) {
+		if (template != null) {
+			String path = template.replaceFirst("^[a-zA-Z]+://[^/]*", "").replaceFirst("[?#].*", "");
+
+			return path.isEmpty() ? "/" : path;
+		}
+
+		if (url.getPath().isEmpty()) {
+			return "/";
+		}
+
+		String[] segments = url.getPath().split("/", -1);
+
+		for (int i = 0; i < segments.length; i++) {
+			if (ID_SEGMENT.matcher(segments[i]).matches()) {
+				segments[i] = "{id}";
+			}
+		}
+
+		return String.join("/", segments);
+	}
+}
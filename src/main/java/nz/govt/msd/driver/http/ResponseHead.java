@@ -0,0 +1,126 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import nz.govt.msd.driver.http.HttpEasyReader.Family;
+
+/**
+ * The status line and headers of a response, read from the connection once so that repeated lookups don't go back to it.
+ *
+ * <p>
+ * Header names are case insensitive and the values of a header are in the order they were received, which unlike
+ * {@link HttpURLConnection#getHeaderFields()} is the same for every JDK.  As for a connection {@link #getHeader(String)}
+ * returns the last value of a header that appears more than once.
+ * </p>
+ */
+public final class ResponseHead {
+	private final int status;
+	private final String message;
+	private final Map<String, List<String>> headers;
+
+	private ResponseHead(int status, String message, Map<String, List<String>> headers) {
+		this.status = status;
+		this.message = message;
+		this.headers = Collections.unmodifiableMap(headers);
+	}
+
+	/**
+	 * Read the response head from a connection, sending the request if it has not already been sent.
+	 *
+	 * @param connection Connection to read
+	 * @return The response head
+	 * @throws IOException If the response could not be read
+	 */
+	static ResponseHead from(HttpURLConnection connection) throws IOException {
+		int status = connection.getResponseCode();
+		Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+		// Walk the header lines rather than getHeaderFields() which, depending on the JDK, lists repeated values in reverse
+		String value;
+
+		for (int i = 0; (value = connection.getHeaderField(i)) != null; i++) {
+			String name = connection.getHeaderFieldKey(i);
+
+			if (name != null) {
+				headers.computeIfAbsent(name, key -> new ArrayList<String>(1)).add(value);
+			}
+		}
+
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			header.setValue(Collections.unmodifiableList(header.getValue()));
+		}
+
+		return new ResponseHead(status, connection.getResponseMessage(), headers);
+	}
+
+	/**
+	 * @return Status code, -1 if the response was not valid HTTP
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return Reason phrase of the status line, may be null
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return The family of the status code
+	 */
+	public Family getFamily() {
+		return Family.familyOf(status);
+	}
+
+	/**
+	 * @param name Header name, in any case
+	 * @return The last value of the header, null if the header is not present
+	 */
+	public String getHeader(String name) {
+		List<String> values = name == null ? null : headers.get(name);
+
+		return values == null ? null : values.get(values.size() - 1);
+	}
+
+	/**
+	 * @param name Header name, in any case
+	 * @return Every value of the header in the order they were received, an empty list if the header is not present
+	 */
+	public List<String> getHeaders(String name) {
+		List<String> values = name == null ? null : headers.get(name);
+
+		return values == null ? Collections.<String>emptyList() : values;
+	}
+
+	/**
+	 * @return Every header, sorted by name and excluding the status line
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return The Content-Length header, -1 if not present or not a number
+	 */
+	public long getContentLength() {
+		String length = getHeader("Content-Length");
+
+		if (length == null) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(length.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
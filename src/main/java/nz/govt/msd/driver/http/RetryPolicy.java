@@ -0,0 +1,258 @@
+package nz.govt.msd.driver.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Decides whether, and when, a failed request is sent again.
+ *
+ * <p>
+ * A request is retried when the connection fails with a retryable exception (by default a {@link SocketException}, such as
+ * a connection reset or refused, or a {@link SocketTimeoutException}) or the server responds with a retryable status (by
+ * default 429, 502, 503 or 504) that has not been excluded with doNotFailOn().  Only idempotent methods (GET, HEAD, PUT,
+ * DELETE and OPTIONS) are retried unless {@link #withRetryableMethods(String...)} says otherwise.
+ * </p>
+ *
+ * <p>
+ * The delay between attempts grows exponentially from the initial delay up to the maximum delay, with a random reduction of
+ * up to the jitter fraction so that clients don't retry in lock step.  If the server sends a Retry-After header its delay
+ * is used instead.  Once the maximum number of attempts has been made, or the next attempt would exceed the maximum elapsed
+ * time, the last failure is reported as if the request had not been retried.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.withDefaults()
+ *     .retryPolicy(new RetryPolicy()
+ *         .withMaxAttempts(5)
+ *         .withInitialDelay(TimeUnit.MILLISECONDS, 500)
+ *         .withMaxElapsedTime(TimeUnit.MINUTES, 2));
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A policy should be fully configured before it is used, it can then be shared between requests and threads.
+ * </p>
+ */
+public class RetryPolicy {
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+	private int maxAttempts = 3;
+	private long initialDelayMillis = 200;
+	private long maxDelayMillis = TimeUnit.SECONDS.toMillis(10);
+	private long maxElapsedMillis = TimeUnit.SECONDS.toMillis(60);
+	private double multiplier = 2;
+	private double jitter = 0.5;
+	private boolean respectRetryAfter = true;
+	private Set<String> retryableMethods = new HashSet<String>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS"));
+	private IntPredicate retryableStatus = status ->
+			status == HTTP_TOO_MANY_REQUESTS ||
+			status == HttpURLConnection.HTTP_BAD_GATEWAY ||
+			status == HttpURLConnection.HTTP_UNAVAILABLE ||
+			status == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+	private Predicate<IOException> retryableException = e -> e instanceof SocketException || e instanceof SocketTimeoutException;
+
+	/**
+	 * @return A policy that never retries, use to turn off retries for a single request
+	 */
+	public static RetryPolicy none() {
+		return new RetryPolicy().withMaxAttempts(1);
+	}
+
+	/**
+	 * Sets the maximum number of times the request is sent, including the first attempt, defaults to 3.
+	 *
+	 * @param attempts Maximum attempts
+	 * @return A self reference
+	 */
+	public RetryPolicy withMaxAttempts(int attempts) {
+		if (attempts < 1) {
+			throw new IllegalArgumentException("Maximum attempts must be at least 1");
+		}
+
+		this.maxAttempts = attempts;
+		return this;
+	}
+
+	/**
+	 * Sets the delay before the first retry, defaults to 200 milliseconds.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The delay
+	 * @return A self reference
+	 */
+	public RetryPolicy withInitialDelay(TimeUnit unit, long duration) {
+		this.initialDelayMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the longest delay between retries, defaults to 10 seconds.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The delay
+	 * @return A self reference
+	 */
+	public RetryPolicy withMaxDelay(TimeUnit unit, long duration) {
+		this.maxDelayMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the amount the delay is multiplied by after each retry, defaults to 2.
+	 *
+	 * @param multiplier Backoff multiplier
+	 * @return A self reference
+	 */
+	public RetryPolicy withMultiplier(double multiplier) {
+		if (multiplier < 1) {
+			throw new IllegalArgumentException("Multiplier must be at least 1");
+		}
+
+		this.multiplier = multiplier;
+		return this;
+	}
+
+	/**
+	 * Sets the fraction of each delay that is randomly removed, defaults to 0.5 so a delay of 1 second becomes 0.5 to 1 second.
+	 *
+	 * @param jitter Between 0 (no jitter) and 1
+	 * @return A self reference
+	 */
+	public RetryPolicy withJitter(double jitter) {
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("Jitter must be between 0 and 1");
+		}
+
+		this.jitter = jitter;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum time from the start of the first attempt that a retry can be started, defaults to 60 seconds.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The maximum elapsed time
+	 * @return A self reference
+	 */
+	public RetryPolicy withMaxElapsedTime(TimeUnit unit, long duration) {
+		this.maxElapsedMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Sets whether the delay requested by a Retry-After response header is used in place of the backoff delay, defaults to true.
+	 *
+	 * @param respect Use Retry-After
+	 * @return A self reference
+	 */
+	public RetryPolicy withRespectRetryAfter(boolean respect) {
+		this.respectRetryAfter = respect;
+		return this;
+	}
+
+	/**
+	 * Sets the HTTP methods that may be retried, defaults to the idempotent methods GET, HEAD, PUT, DELETE and OPTIONS.
+	 *
+	 * @param methods HTTP methods
+	 * @return A self reference
+	 */
+	public RetryPolicy withRetryableMethods(String... methods) {
+		this.retryableMethods = new HashSet<String>(Arrays.asList(methods));
+		return this;
+	}
+
+	/**
+	 * Sets the test for response codes that should be retried, defaults to 429, 502, 503 and 504.
+	 *
+	 * @param condition Returns true if the response code should be retried
+	 * @return A self reference
+	 */
+	public RetryPolicy withRetryableStatus(IntPredicate condition) {
+		this.retryableStatus = condition;
+		return this;
+	}
+
+	/**
+	 * Sets the test for exceptions that should be retried, defaults to SocketException and SocketTimeoutException.
+	 *
+	 * @param condition Returns true if the exception should be retried
+	 * @return A self reference
+	 */
+	public RetryPolicy withRetryableException(Predicate<IOException> condition) {
+		this.retryableException = condition;
+		return this;
+	}
+
+	int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	boolean isRetryableMethod(String method) {
+		return maxAttempts > 1 && retryableMethods.contains(method);
+	}
+
+	boolean isRetryableStatus(int status) {
+		return retryableStatus.test(status);
+	}
+
+	boolean isRetryableException(IOException e) {
+		return retryableException.test(e);
+	}
+
+	/**
+	 * @param retry The retry about to be made, 1 for the first retry
+	 * @param connection The failed response, null if the request failed with an exception
+	 * @return The time to wait before the retry in milliseconds
+	 */
+	long getDelayMillis(int retry, HttpURLConnection connection) {
+		long retryAfter = respectRetryAfter && connection != null ? getRetryAfterMillis(connection) : -1;
+
+		if (retryAfter >= 0) {
+			return retryAfter;
+		}
+
+		double delay = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, retry - 1));
+
+		return (long) (delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+	}
+
+	/**
+	 * @param startedNanos When the first attempt started
+	 * @param delayMillis The delay before the next attempt
+	 * @return true if the next attempt would start within the maximum elapsed time
+	 */
+	boolean hasTimeFor(long startedNanos, long delayMillis) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos) + delayMillis <= maxElapsedMillis;
+	}
+
+	/**
+	 * Retry-After is either a number of seconds or an HTTP date.
+	 */
+	private long getRetryAfterMillis(HttpURLConnection connection) {
+		String value = connection.getHeaderField("Retry-After");
+
+		if (value == null || value.trim().isEmpty()) {
+			return -1;
+		}
+
+		try {
+			return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+		} catch (NumberFormatException e) {
+			long date = connection.getHeaderFieldDate("Retry-After", -1);
+
+			return date < 0 ? -1 : Math.max(0, date - System.currentTimeMillis());
+		}
+	}
+}
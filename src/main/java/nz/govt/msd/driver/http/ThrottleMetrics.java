@@ -0,0 +1,82 @@
+package nz.govt.msd.driver.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the requests to a host recorded by {@link RequestThrottle}.
+ */
+public class ThrottleMetrics {
+	private final String host;
+	private final long requests;
+	private final long waitNanos;
+	private final long maxWaitNanos;
+	private final int inFlight;
+	private final int waiting;
+
+	ThrottleMetrics(String host, long requests, long waitNanos, long maxWaitNanos, int inFlight, int waiting) {
+		this.host = host;
+		this.requests = requests;
+		this.waitNanos = waitNanos;
+		this.maxWaitNanos = maxWaitNanos;
+		this.inFlight = inFlight;
+		this.waiting = waiting;
+	}
+
+	/**
+	 * @return Host name
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return Number of requests sent to the host
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return Time requests spent waiting to be sent in milliseconds
+	 */
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+	}
+
+	/**
+	 * @return Average time a request waited to be sent in milliseconds
+	 */
+	public double getAverageWaitMillis() {
+		if (requests == 0) {
+			return 0;
+		}
+
+		return waitNanos / 1_000_000d / requests;
+	}
+
+	/**
+	 * @return Longest time a request waited to be sent in milliseconds
+	 */
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+	}
+
+	/**
+	 * @return Number of requests currently in flight, -1 if the number in flight is not limited
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return Number of requests currently waiting to be sent
+	 */
+	public int getWaiting() {
+		return waiting;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %s requests waited %.1fms on average (max %sms)", host, requests, getAverageWaitMillis(), getMaxWaitMillis());
+	}
+}
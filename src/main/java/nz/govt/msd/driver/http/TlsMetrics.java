@@ -0,0 +1,62 @@
+package nz.govt.msd.driver.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the TLS handshakes recorded by {@link TlsRegistry}.
+ */
+public class TlsMetrics {
+	private final long handshakes;
+	private final long resumedHandshakes;
+	private final long handshakeNanos;
+
+	TlsMetrics(long handshakes, long resumedHandshakes, long handshakeNanos) {
+		this.handshakes = handshakes;
+		this.resumedHandshakes = resumedHandshakes;
+		this.handshakeNanos = handshakeNanos;
+	}
+
+	/**
+	 * @return Total number of handshakes
+	 */
+	public long getHandshakes() {
+		return handshakes;
+	}
+
+	/**
+	 * @return Number of handshakes that resumed an existing session
+	 */
+	public long getResumedHandshakes() {
+		return resumedHandshakes;
+	}
+
+	/**
+	 * @return Number of handshakes that negotiated a new session
+	 */
+	public long getFullHandshakes() {
+		return handshakes - resumedHandshakes;
+	}
+
+	/**
+	 * @return Time spent on all handshakes in milliseconds
+	 */
+	public long getTotalHandshakeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(handshakeNanos);
+	}
+
+	/**
+	 * @return Average time of a handshake in milliseconds
+	 */
+	public double getAverageHandshakeMillis() {
+		if (handshakes == 0) {
+			return 0;
+		}
+
+		return handshakeNanos / 1_000_000d / handshakes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s TLS handshakes (%s resumed) averaging %.1fms", handshakes, resumedHandshakes, getAverageHandshakeMillis());
+	}
+}
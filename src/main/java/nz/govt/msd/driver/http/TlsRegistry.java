@@ -0,0 +1,185 @@
+package nz.govt.msd.driver.http;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Creates and caches one SSLContext, and socket factory, per {@link TrustPolicy} so that every connection made with the same
+ * policy shares a TLS session cache and can resume sessions rather than perform a full handshake.
+ *
+ * <p>
+ * The session cache of each context is sized and timed out according to {@link #setSessionCacheSize(int)} and
+ * {@link #setSessionTimeout(TimeUnit, long)}, and handshakes made through the registry's socket factories are counted and timed,
+ * see {@link #getMetrics()}.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * HttpEasy.withDefaults()
+ *     .tlsSessionCacheSize(1000)
+ *     .tlsSessionTimeout(TimeUnit.HOURS, 1);
+ *
+ * HttpEasyClient client = HttpEasyClient.builder()
+ *     .sslSocketFactory(TlsRegistry.getSocketFactory(TrustPolicy.DEFAULT))
+ *     .build();
+ *
+ * ...
+ * LOGGER.info("{}", TlsRegistry.getMetrics());
+ * </pre>
+ * </p>
+ */
+public final class TlsRegistry {
+	private static final Map<TrustPolicy, SSLContext> CONTEXTS = new ConcurrentHashMap<TrustPolicy, SSLContext>();
+	private static final Map<TrustPolicy, SSLSocketFactory> FACTORIES = new ConcurrentHashMap<TrustPolicy, SSLSocketFactory>();
+
+	private static final LongAdder HANDSHAKES = new LongAdder();
+	private static final LongAdder RESUMED_HANDSHAKES = new LongAdder();
+	private static final LongAdder HANDSHAKE_NANOS = new LongAdder();
+
+	private static volatile int sessionCacheSize = 0;
+	private static volatile int sessionTimeoutSeconds = (int) TimeUnit.HOURS.toSeconds(24);
+
+	/**
+	 * How the certificate presented by the server is verified.
+	 */
+	public enum TrustPolicy {
+		/** Verify the certificate chain against the JVM's trust store. */
+		DEFAULT,
+
+		/** Accept any certificate, only for use against test environments with self signed certificates. */
+		TRUST_ALL;
+	}
+
+	private TlsRegistry() {
+	}
+
+	/**
+	 * @param policy Trust policy
+	 * @return The cached SSLContext for the policy
+	 */
+	public static SSLContext getSslContext(TrustPolicy policy) {
+		return CONTEXTS.computeIfAbsent(policy, TlsRegistry::createContext);
+	}
+
+	/**
+	 * @param policy Trust policy
+	 * @return The cached socket factory for the policy, handshakes made through it are recorded in {@link #getMetrics()}
+	 */
+	public static SSLSocketFactory getSocketFactory(TrustPolicy policy) {
+		return FACTORIES.computeIfAbsent(policy, key -> new InstrumentedSslSocketFactory(getSslContext(key).getSocketFactory()));
+	}
+
+	/**
+	 * Sets the maximum number of TLS sessions each context will cache, defaults to 0 (no limit).
+	 *
+	 * @param size Maximum number of sessions, or 0 for no limit
+	 */
+	public static void setSessionCacheSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Session cache size must not be negative");
+		}
+
+		sessionCacheSize = size;
+		CONTEXTS.values().forEach(TlsRegistry::tune);
+	}
+
+	/**
+	 * Sets how long a cached TLS session can be resumed for, defaults to 24 hours.
+	 *
+	 * @param unit The unit of time
+	 * @param duration The session timeout
+	 */
+	public static void setSessionTimeout(TimeUnit unit, long duration) {
+		sessionTimeoutSeconds = (int) Math.min(Integer.MAX_VALUE, unit.toSeconds(duration));
+		CONTEXTS.values().forEach(TlsRegistry::tune);
+	}
+
+	/**
+	 * @return Handshakes made through the registry's socket factories since the metrics were last reset
+	 */
+	public static TlsMetrics getMetrics() {
+		return new TlsMetrics(HANDSHAKES.sum(), RESUMED_HANDSHAKES.sum(), HANDSHAKE_NANOS.sum());
+	}
+
+	/**
+	 * Reset the handshake metrics to zero.
+	 */
+	public static void resetMetrics() {
+		HANDSHAKES.reset();
+		RESUMED_HANDSHAKES.reset();
+		HANDSHAKE_NANOS.reset();
+	}
+
+	static void recordHandshake(long nanos, boolean resumed) {
+		HANDSHAKES.increment();
+		HANDSHAKE_NANOS.add(nanos);
+
+		if (resumed) {
+			RESUMED_HANDSHAKES.increment();
+		}
+
+		HttpEasy.LOGGER.trace("TLS handshake {} in {}ms", resumed ? "resumed" : "completed", TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+	private static SSLContext createContext(TrustPolicy policy) {
+		try {
+			SSLContext context = SSLContext.getInstance("TLS");
+
+			switch (policy) {
+			case TRUST_ALL:
+				context.init(null, new TrustManager[] { new TrustAllManager() }, new SecureRandom());
+				break;
+
+			default:
+				context.init(null, null, null);
+				break;
+			}
+
+			tune(context);
+
+			return context;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to create SSLContext for trust policy " + policy, e);
+		}
+	}
+
+	private static void tune(SSLContext context) {
+		SSLSessionContext sessions = context.getClientSessionContext();
+
+		if (sessions != null) {
+			sessions.setSessionCacheSize(sessionCacheSize);
+			sessions.setSessionTimeout(sessionTimeoutSeconds);
+		}
+	}
+
+	/**
+	 * A trust manager that does not validate certificate chains.
+	 */
+	private static class TrustAllManager implements X509TrustManager {
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] certs, String authType) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] certs, String authType) {
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package nz.govt.msd.driver.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+
+/**
+ * A url containing parameter tokens, eg "http://server/item/{id}?filter={filter}", parsed into literal text and parameter
+ * slots so that it can be expanded many times without being rescanned.
+ *
+ * <p>
+ * Parsed templates are cached by template string so repeatedly expanding the same template only pays for the expansion.
+ * Parameter values are percent-encoded according to where they appear, values before the query string are encoded as a
+ * path segment (eg "/" becomes %2F and " " becomes %20) and values in the query string as a form parameter (eg "&amp;"
+ * becomes %26 and " " becomes +), so values must not already be encoded.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * String url = UrlTemplate.of("http://server/item/{id}?filter={filter}").expand(42, "a &amp; b");
+ * // http://server/item/42?filter=a+%26+b
+ * </pre>
+ * </p>
+ */
+public final class UrlTemplate {
+	private static final String DEFAULT_START_TOKEN = "{";
+	private static final String DEFAULT_END_TOKEN = "}";
+	private static final int CACHE_SIZE = 500;
+	private static final int ESTIMATED_PARAMETER_LENGTH = 16;
+
+	private static final Cache<String, UrlTemplate> CACHE = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+	private static final Escaper PATH_ESCAPER = UrlEscapers.urlPathSegmentEscaper();
+	private static final Escaper QUERY_ESCAPER = UrlEscapers.urlFormParameterEscaper();
+
+	private final String template;
+	// literals.length == parameters + 1, the template is literals[0] param[0] literals[1] param[1] ... literals[n]
+	private final String[] literals;
+	private final boolean[] inQuery;
+	private final int literalLength;
+
+	private UrlTemplate(String template, String startToken, String endToken) {
+		List<String> literalList = new ArrayList<String>();
+		List<Boolean> inQueryList = new ArrayList<Boolean>();
+		int queryStart = template.indexOf('?');
+		int position = 0;
+		int length = 0;
+
+		while (true) {
+			int start = template.indexOf(startToken, position);
+			int end = start < 0 ? -1 : template.indexOf(endToken, start + startToken.length());
+
+			if (end < 0) {
+				break;
+			}
+
+			String literal = template.substring(position, start);
+
+			literalList.add(literal);
+			inQueryList.add(queryStart >= 0 && start > queryStart);
+			length += literal.length();
+
+			position = end + endToken.length();
+		}
+
+		String last = template.substring(position);
+
+		literalList.add(last);
+		length += last.length();
+
+		this.template = template;
+		this.literals = literalList.toArray(new String[literalList.size()]);
+		this.inQuery = new boolean[inQueryList.size()];
+		this.literalLength = length;
+
+		for (int i = 0; i < inQuery.length; i++) {
+			inQuery[i] = inQueryList.get(i);
+		}
+	}
+
+	/**
+	 * Get the parsed template for a url using the default {...} parameter tokens.
+	 *
+	 * @param template Url containing parameter tokens
+	 * @return The parsed template
+	 */
+	public static UrlTemplate of(String template) {
+		return of(template, DEFAULT_START_TOKEN, DEFAULT_END_TOKEN);
+	}
+
+	/**
+	 * Get the parsed template for a url.
+	 *
+	 * @param template Url containing parameter tokens
+	 * @param startToken Token that marks the start of a parameter
+	 * @param endToken Token that marks the end of a parameter
+	 * @return The parsed template
+	 */
+	public static UrlTemplate of(String template, String startToken, String endToken) {
+		if (startToken == null || startToken.isEmpty() || endToken == null || endToken.isEmpty()) {
+			throw new IllegalArgumentException("Parameter start and end tokens must be specified");
+		}
+
+		String key = startToken + '\u0000' + endToken + '\u0000' + template;
+
+		try {
+			return CACHE.get(key, () -> new UrlTemplate(template, startToken, endToken));
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to parse url template " + template, e.getCause());
+		}
+	}
+
+	/**
+	 * @return The number of parameters in the template
+	 */
+	public int getParameterCount() {
+		return inQuery.length;
+	}
+
+	/**
+	 * Replace the parameters in the order they appear in the template.
+	 *
+	 * @param parameters One value for each parameter in the template, values are converted with String.valueOf()
+	 * @return The url
+	 */
+	public String expand(Object... parameters) {
+		if (parameters.length != inQuery.length) {
+			throw new IllegalArgumentException(String.format("Url %s has %s parameters but %s values were supplied", template, inQuery.length, parameters.length));
+		}
+
+		if (parameters.length == 0) {
+			return template;
+		}
+
+		StringBuilder url = new StringBuilder(literalLength + parameters.length * ESTIMATED_PARAMETER_LENGTH);
+
+		for (int i = 0; i < parameters.length; i++) {
+			url.append(literals[i]);
+
+			Escaper escaper = inQuery[i] ? QUERY_ESCAPER : PATH_ESCAPER;
+			url.append(escaper.escape(String.valueOf(parameters[i])));
+		}
+
+		url.append(literals[parameters.length]);
+
+		return url.toString();
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+}
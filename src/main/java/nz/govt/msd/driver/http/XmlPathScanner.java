@@ -0,0 +1,543 @@
+package nz.govt.msd.driver.http;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Finds the text content of one or more XPath selectors in an XML document by reading its events in a single pass, without
+ * building a DOM.
+ *
+ * <p>
+ * Only the open elements are remembered, along with the text of an element that has matched a selector, so the memory
+ * needed does not grow with the size of the document.  Elements that no selector can match below are read past without
+ * being examined, and reading stops as soon as every selector has been found.
+ * </p>
+ *
+ * <p>
+ * Selectors use a subset of XPath that can be answered while streaming:
+ *
+ * * absolute and descendant steps separated by "/" and "//", eg "/Envelope/Body//output"
+ * * element names matched by local name whatever their namespace prefix, or "*" for any element
+ * * predicates on an attribute's value, eg [@name='documentId'], or its presence, eg [@name]
+ * * predicates on position among the element's siblings that match the step, eg [2]
+ * * a final attribute step, eg "//output/@name", to return the attribute's value rather than the element's text
+ * </p>
+ *
+ * <p>
+ * The result is the same as {@link XmlReader#textContent(String)}: the text content of the first element in document order
+ * that matches, or null if none does.
+ * </p>
+ */
+class XmlPathScanner {
+	private static final int MAX_STEPS = 63;
+	// A configured factory is safe to share between threads
+	private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+	private final List<Selector> selectors = new ArrayList<Selector>();
+	private final int positionSlots;
+	private int unsettled;
+
+	/**
+	 * @param selectors XPath selectors to find
+	 */
+	XmlPathScanner(String... selectors) {
+		int slots = 0;
+
+		for (String selector : selectors) {
+			Selector compiled = new Selector(selector, slots);
+
+			slots += compiled.positionSlots;
+			this.selectors.add(compiled);
+		}
+
+		this.positionSlots = slots;
+	}
+
+	/**
+	 * @param xml XML document, the encoding is determined from the xml declaration, the caller is responsible for closing the stream
+	 * @return The text content of each selector, in the order they were requested, a value is null if the selector was not found
+	 * @throws XMLStreamException If the document is not well formed
+	 */
+	Map<String, String> scan(InputStream xml) throws XMLStreamException {
+		return scan(INPUT_FACTORY.createXMLStreamReader(xml));
+	}
+
+	/**
+	 * @param xml XML document, the caller is responsible for closing the reader
+	 * @return The text content of each selector, in the order they were requested, a value is null if the selector was not found
+	 * @throws XMLStreamException If the document is not well formed
+	 */
+	Map<String, String> scan(Reader xml) throws XMLStreamException {
+		return scan(INPUT_FACTORY.createXMLStreamReader(xml));
+	}
+
+	private Map<String, String> scan(XMLStreamReader xml) throws XMLStreamException {
+		unsettled = selectors.size();
+
+		try {
+			if (unsettled > 0) {
+				read(xml);
+			}
+		} finally {
+			xml.close();
+		}
+
+		Map<String, String> values = new LinkedHashMap<String, String>();
+
+		for (Selector selector : selectors) {
+			values.put(selector.text, selector.value);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Create a factory that doesn't read DTDs or external entities and joins adjacent text so that it is reported once.
+	 */
+	private static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+		return factory;
+	}
+
+	private void read(XMLStreamReader xml) throws XMLStreamException {
+		List<Frame> open = new ArrayList<Frame>();
+		Frame current = new Frame(selectors.size());
+		// Depth below an element that no selector can match in, its events are read past without being examined
+		int skipping = 0;
+
+		for (int i = 0; i < selectors.size(); i++) {
+			current.matched[i] = 1L;
+			current.descendant[i] = selectors.get(i).isDescendant(0) ? 1L : 0L;
+		}
+
+		while (xml.hasNext() && unsettled > 0) {
+			int event = xml.next();
+
+			if (skipping > 0) {
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					skipping++;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					skipping--;
+				}
+
+				continue;
+			}
+
+			switch (event) {
+			case XMLStreamConstants.START_ELEMENT:
+				Frame child = enter(current, xml);
+
+				if (child == null) {
+					skipping = 1;
+				} else {
+					open.add(current);
+					current = child;
+				}
+
+				break;
+
+			case XMLStreamConstants.END_ELEMENT:
+				for (Selector selector : selectors) {
+					if (selector.capture == current) {
+						settle(selector, selector.captured.toString());
+					}
+				}
+
+				current = open.remove(open.size() - 1);
+				break;
+
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				for (Selector selector : selectors) {
+					if (selector.capture != null) {
+						selector.captured.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+					}
+				}
+
+				break;
+
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Match a start element against the selectors' steps that can apply to a child of the parent.
+	 *
+	 * @return A frame for the element, or null if no selector can match it or anything below it
+	 */
+	private Frame enter(Frame parent, XMLStreamReader xml) {
+		Frame frame = null;
+		boolean capturing = false;
+
+		for (int i = 0; i < selectors.size(); i++) {
+			Selector selector = selectors.get(i);
+
+			if (selector.settled) {
+				continue;
+			}
+
+			if (selector.capture != null) {
+				capturing = true;
+				continue;
+			}
+
+			long candidates = (parent.matched[i] & ~selector.descendantSteps) | parent.descendant[i];
+			long matched = 0;
+
+			while (candidates != 0) {
+				int step = Long.numberOfTrailingZeros(candidates);
+
+				candidates &= candidates - 1;
+
+				if (step < selector.steps.length && selector.steps[step].matches(xml, parent)) {
+					matched |= 1L << (step + 1);
+				}
+			}
+
+			long descendant = parent.descendant[i] | (matched & selector.descendantSteps);
+
+			if (matched == 0 && descendant == 0) {
+				continue;
+			}
+
+			if (frame == null) {
+				frame = new Frame(selectors.size());
+			}
+
+			frame.matched[i] = matched;
+			frame.descendant[i] = descendant;
+
+			if ((matched & (1L << selector.steps.length)) != 0) {
+				if (selector.attribute == null) {
+					selector.capture = frame;
+					selector.captured.setLength(0);
+					capturing = true;
+				} else {
+					String value = getAttribute(xml, selector.attribute);
+
+					if (value != null) {
+						settle(selector, value);
+					}
+				}
+			}
+		}
+
+		if (frame == null && capturing) {
+			// The text of a matched ancestor includes this element
+			frame = new Frame(selectors.size());
+		}
+
+		return frame;
+	}
+
+	private void settle(Selector selector, String value) {
+		selector.settled = true;
+		selector.value = value;
+		selector.capture = null;
+		selector.captured.setLength(0);
+		unsettled--;
+	}
+
+	private static String getAttribute(XMLStreamReader xml, String localName) {
+		for (int i = 0; i < xml.getAttributeCount(); i++) {
+			if (localName.equals(xml.getAttributeLocalName(i))) {
+				return xml.getAttributeValue(i);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * An open element.
+	 */
+	private class Frame {
+		// Per selector, bit n is set if this element matched the selector's first n steps
+		final long[] matched;
+		// Per selector, bit n is set if this element or an ancestor matched the first n steps and step n is a descendant step
+		final long[] descendant;
+		// Number of children that have reached each position predicate
+		int[] positions = null;
+
+		Frame(int selectorCount) {
+			this.matched = new long[selectorCount];
+			this.descendant = new long[selectorCount];
+		}
+
+		int nextPosition(int slot) {
+			if (positions == null) {
+				positions = new int[positionSlots];
+			}
+
+			return ++positions[slot];
+		}
+	}
+
+	/**
+	 * A selector split into its steps.
+	 */
+	private static class Selector {
+		final String text;
+		final Step[] steps;
+		final String attribute;
+		final long descendantSteps;
+		final int positionSlots;
+		boolean settled = false;
+		String value = null;
+		Frame capture = null;
+		final StringBuilder captured = new StringBuilder();
+
+		Selector(String text, int firstSlot) {
+			List<Step> stepList = new ArrayList<Step>();
+			String attributeName = null;
+			long descendantMask = 0;
+			int slot = firstSlot;
+			int position = 0;
+
+			if (text.startsWith("//")) {
+				descendantMask = 1L;
+				position = 2;
+			} else if (text.startsWith("/")) {
+				position = 1;
+			}
+
+			while (true) {
+				if (position >= text.length()) {
+					throw invalid(text, "expected an element name");
+				}
+
+				if (text.charAt(position) == '@') {
+					attributeName = localName(text.substring(position + 1));
+
+					if (stepList.isEmpty() || text.startsWith("//", position - 2)) {
+						throw invalid(text, "an attribute step must follow an element step with '/'");
+					}
+
+					if (!isName(attributeName)) {
+						throw invalid(text, "an attribute step must be the last step and name a single attribute");
+					}
+
+					break;
+				}
+
+				int end = findStepEnd(text, position);
+				Step step = new Step(text, text.substring(position, end), slot);
+
+				slot += step.positionPredicates;
+				stepList.add(step);
+				position = end;
+
+				if (position == text.length()) {
+					break;
+				}
+
+				if (text.startsWith("//", position)) {
+					descendantMask |= 1L << stepList.size();
+					position += 2;
+				} else {
+					position += 1;
+				}
+			}
+
+			if (stepList.size() > MAX_STEPS) {
+				throw invalid(text, "too many steps");
+			}
+
+			this.text = text;
+			this.steps = stepList.toArray(new Step[stepList.size()]);
+			this.attribute = attributeName;
+			this.descendantSteps = descendantMask;
+			this.positionSlots = slot - firstSlot;
+		}
+
+		boolean isDescendant(int step) {
+			return (descendantSteps & (1L << step)) != 0;
+		}
+
+		/**
+		 * Find the '/' that ends a step, ignoring any inside a predicate.
+		 */
+		private static int findStepEnd(String text, int start) {
+			int depth = 0;
+			char quote = 0;
+
+			for (int i = start; i < text.length(); i++) {
+				char c = text.charAt(i);
+
+				if (quote != 0) {
+					if (c == quote) {
+						quote = 0;
+					}
+				} else if (c == '\'' || c == '"') {
+					quote = c;
+				} else if (c == '[') {
+					depth++;
+				} else if (c == ']') {
+					depth--;
+				} else if (c == '/' && depth == 0) {
+					return i;
+				}
+			}
+
+			return text.length();
+		}
+	}
+
+	/**
+	 * One element step of a selector: a name test and its predicates.
+	 */
+	private static class Step {
+		private static final int ANY = 0;
+
+		final String name;
+		final List<String> attributeNames = new ArrayList<String>();
+		// Null to test that the attribute is present
+		final List<String> attributeValues = new ArrayList<String>();
+		// Position required by each predicate, 0 for an attribute predicate
+		final List<Integer> positions = new ArrayList<Integer>();
+		final int firstSlot;
+		final int positionPredicates;
+
+		Step(String selector, String step, int firstSlot) {
+			int open = step.indexOf('[');
+			String nameTest = localName(open < 0 ? step : step.substring(0, open)).trim();
+			int count = 0;
+
+			if (!"*".equals(nameTest) && !isName(nameTest)) {
+				throw invalid(selector, "'" + step + "' is not a supported step, only element names, * and @attribute are supported");
+			}
+
+			this.name = nameTest;
+			this.firstSlot = firstSlot;
+
+			while (open >= 0) {
+				int close = step.indexOf(']', open);
+
+				if (close < 0) {
+					throw invalid(selector, "missing ']'");
+				}
+
+				String predicate = step.substring(open + 1, close).trim();
+
+				if (predicate.startsWith("@")) {
+					int equals = predicate.indexOf('=');
+					String attributeName = localName(equals < 0 ? predicate.substring(1) : predicate.substring(1, equals)).trim();
+					String attributeValue = equals < 0 ? null : unquote(selector, predicate.substring(equals + 1).trim());
+
+					if (!isName(attributeName)) {
+						throw invalid(selector, "'" + predicate + "' is not a supported predicate");
+					}
+
+					attributeNames.add(attributeName);
+					attributeValues.add(attributeValue);
+					positions.add(ANY);
+				} else {
+					int position;
+
+					try {
+						position = Integer.parseInt(predicate);
+					} catch (NumberFormatException e) {
+						throw invalid(selector, "'" + predicate + "' is not a supported predicate, only [@attribute='value'], [@attribute] and [position] are supported");
+					}
+
+					if (position < 1) {
+						throw invalid(selector, "positions start at 1");
+					}
+
+					attributeNames.add(null);
+					attributeValues.add(null);
+					positions.add(position);
+					count++;
+				}
+
+				if (close + 1 < step.length() && step.charAt(close + 1) != '[') {
+					throw invalid(selector, "unexpected text after ']'");
+				}
+
+				open = close + 1 < step.length() ? close + 1 : -1;
+			}
+
+			this.positionPredicates = count;
+		}
+
+		/**
+		 * Test the element the reader is on, counting it towards the parent's position predicates for this step as it goes.
+		 */
+		boolean matches(XMLStreamReader xml, Frame parent) {
+			if (!"*".equals(name) && !name.equals(xml.getLocalName())) {
+				return false;
+			}
+
+			int slot = firstSlot;
+
+			for (int i = 0; i < positions.size(); i++) {
+				int position = positions.get(i);
+
+				if (position != ANY) {
+					if (parent.nextPosition(slot++) != position) {
+						return false;
+					}
+				} else {
+					String value = getAttribute(xml, attributeNames.get(i));
+
+					if (value == null || (attributeValues.get(i) != null && !attributeValues.get(i).equals(value))) {
+						return false;
+					}
+				}
+			}
+
+			return true;
+		}
+	}
+
+	private static String localName(String name) {
+		int colon = name.indexOf(':');
+
+		return colon < 0 ? name : name.substring(colon + 1);
+	}
+
+	private static boolean isName(String name) {
+		if (name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+			return false;
+		}
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static String unquote(String selector, String value) {
+		if (value.length() < 2 || (value.charAt(0) != '\'' && value.charAt(0) != '"') || value.charAt(value.length() - 1) != value.charAt(0)) {
+			throw invalid(selector, "attribute values must be quoted");
+		}
+
+		return value.substring(1, value.length() - 1);
+	}
+
+	private static IllegalArgumentException invalid(String selector, String reason) {
+		return new IllegalArgumentException(String.format("Unsupported xpath %s, %s", selector, reason));
+	}
+}
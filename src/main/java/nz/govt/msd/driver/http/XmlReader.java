@@ -1,18 +1,29 @@
 package nz.govt.msd.driver.http;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.UnmarshalException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.UnmarshallerHandler;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
@@ -21,6 +32,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -34,9 +46,41 @@ import org.xml.sax.SAXException;
 /**
  * A wrapper around "javax.xml" for simplifying the parsing XML strings.
  * 
+ * <p>
+ * An XmlReader holds the whole document in memory, to pick a few values out of a large document without doing so use 
+ * {@link #extract(InputStream, String...)}.
+ * </p>
+ * 
+ * <p>
+ * The parser, XPath and transformer are created once for each thread and reused, and compiled XPath expressions are cached
+ * so that repeating a selector, eg for each row of a table, doesn't compile it again.
+ * </p>
+ * 
  * @author Andrew Sumner
  */
 public class XmlReader implements ResponseReader {
+	private static final int XPATH_CACHE_SIZE = 200;
+
+	// Factories are looked up once, the parsers, XPath and transformers they create aren't thread safe so each thread gets its own
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+	private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>();
+	private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<Transformer>();
+	private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+	// Compiled expressions aren't thread safe either, so the cache is per thread
+	private static final ThreadLocal<Map<String, XPathExpression>> XPATH_CACHE = ThreadLocal.withInitial(() -> new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+			return size() > XPATH_CACHE_SIZE;
+		}
+	});
+
+	// Creating a JAXBContext is expensive but a context is thread safe, unmarshallers aren't so each thread gets its own
+	private static final ConcurrentMap<Class<?>, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<Class<?>, JAXBContext>();
+	private static final ThreadLocal<Map<Class<?>, Unmarshaller>> UNMARSHALLERS = ThreadLocal.withInitial(() -> new HashMap<Class<?>, Unmarshaller>());
+
 	private final Document document;	
 	
 	/**
@@ -48,15 +92,126 @@ public class XmlReader implements ResponseReader {
 	 * @throws SAXException 
 	 */
 	public XmlReader(String xml) throws ParserConfigurationException, SAXException, IOException {
-		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder;
-		builder = domFactory.newDocumentBuilder();
-	
-
 		InputSource src = new InputSource();
 		src.setCharacterStream(new StringReader(xml));
 	
-		document = builder.parse(src);
+		document = parse(src);
+	}
+
+	/**
+	 * An xml reader that parses the xml directly from a stream, avoiding the need to read it into a string first.  The encoding
+	 * is determined from the xml declaration.
+	 * 
+	 * @param xml XML stream, the caller is responsible for closing the stream
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 * @throws SAXException 
+	 */
+	public XmlReader(InputStream xml) throws ParserConfigurationException, SAXException, IOException {
+		document = parse(new InputSource(xml));
+	}
+
+	/**
+	 * Find the text content of one or more XPath selectors while reading an XML stream, without building a DOM.
+	 * 
+	 * <p>
+	 * The stream is read once, elements that no selector can match are read past without being examined, and reading stops
+	 * once every selector has been found.  The memory needed depends on the depth of the document rather than its size, so 
+	 * values can be taken from a SOAP response of 100's of megabytes.
+	 * </p>
+	 * 
+	 * <p>
+	 * Selectors are a subset of XPath that can be answered while streaming:
+	 * 
+	 * * absolute and descendant steps separated by "/" and "//", eg "/Envelope/Body//output"
+	 * * element names matched by local name whatever their namespace prefix, or "*" for any element
+	 * * predicates on an attribute, eg [@name='documentId'] or [@name], or on position, eg [2]
+	 * * a final attribute step, eg "//output/@name", to return the attribute's value
+	 * </p>
+	 * 
+	 * <pre>
+	 * Map{@literal <String, String>} values = XmlReader.extract(stream, "//output[@name='documentId']", "//serviceResponse/@returnLength");
+	 * </pre>
+	 * 
+	 * @param xml XML stream, the encoding is determined from the xml declaration, the caller is responsible for closing the stream
+	 * @param selectors XPath selectors
+	 * @return The text content of each selector, in the order requested, as for {@link #textContent(String)} a value is the
+	 * first match in document order or null if the selector was not found
+	 * @throws XMLStreamException If the stream is not well formed XML
+	 */
+	public static Map<String, String> extract(InputStream xml, String... selectors) throws XMLStreamException {
+		return new XmlPathScanner(selectors).scan(xml);
+	}
+
+	/**
+	 * Find the text content of one or more XPath selectors while reading XML, without building a DOM, see 
+	 * {@link #extract(InputStream, String...)}.
+	 * 
+	 * @param xml XML reader, the caller is responsible for closing the reader
+	 * @param selectors XPath selectors
+	 * @return The text content of each selector, in the order requested, a value is null if the selector was not found
+	 * @throws XMLStreamException If the reader is not well formed XML
+	 */
+	public static Map<String, String> extract(Reader xml, String... selectors) throws XMLStreamException {
+		return new XmlPathScanner(selectors).scan(xml);
+	}
+
+	private Document parse(InputSource src) throws ParserConfigurationException, SAXException, IOException {
+		return getDocumentBuilder().parse(src);
+	}
+
+	/**
+	 * @return This thread's document builder, reset ready for use
+	 */
+	private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder builder = DOCUMENT_BUILDER.get();
+
+		if (builder == null) {
+			synchronized (DOCUMENT_BUILDER_FACTORY) {
+				builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			}
+
+			DOCUMENT_BUILDER.set(builder);
+		} else {
+			builder.reset();
+		}
+
+		return builder;
+	}
+
+	/**
+	 * @return This thread's transformer, reset ready for use
+	 */
+	private static Transformer getTransformer() throws TransformerConfigurationException {
+		Transformer transformer = TRANSFORMER.get();
+
+		if (transformer == null) {
+			synchronized (TRANSFORMER_FACTORY) {
+				transformer = TRANSFORMER_FACTORY.newTransformer();
+			}
+
+			TRANSFORMER.set(transformer);
+		} else {
+			transformer.reset();
+		}
+
+		return transformer;
+	}
+
+	/**
+	 * @param selector XPath expression
+	 * @return The compiled expression from this thread's cache
+	 */
+	private static XPathExpression getExpression(String selector) throws XPathExpressionException {
+		Map<String, XPathExpression> cache = XPATH_CACHE.get();
+		XPathExpression expression = cache.get(selector);
+
+		if (expression == null) {
+			expression = XPATH.get().compile(selector);
+			cache.put(selector, expression);
+		}
+
+		return expression;
 	}
 	
 	/**
@@ -66,8 +221,7 @@ public class XmlReader implements ResponseReader {
 	 * @return Node
 	 */
 	private Node evaluate(String selector) throws ParserConfigurationException, SAXException, IOException, XPathExpressionException {
-		XPath xPath = XPathFactory.newInstance().newXPath();
-		return (Node) xPath.evaluate(selector, document, XPathConstants.NODE);		
+		return (Node) getExpression(selector).evaluate(document, XPathConstants.NODE);
 	}
 
 	/**
@@ -116,8 +270,7 @@ public class XmlReader implements ResponseReader {
 			Source xmlInput = new StreamSource(new StringReader(input));
 			StringWriter stringWriter = new StringWriter();
 			StreamResult xmlOutput = new StreamResult(stringWriter);
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
+			Transformer transformer = getTransformer();
 			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
 			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", String.valueOf(indent));
 			transformer.transform(xmlInput, xmlOutput);
@@ -130,8 +283,7 @@ public class XmlReader implements ResponseReader {
 	private String getXmlString(Node node) {
 		try {
 			DOMSource domSource = new DOMSource(node);
-			Transformer transformer;
-			transformer = TransformerFactory.newInstance().newTransformer();
+			Transformer transformer = getTransformer();
 			StringWriter sw = new StringWriter();
 			StreamResult sr = new StreamResult(sw);
 			transformer.transform(domSource, sr);
@@ -157,6 +309,11 @@ public class XmlReader implements ResponseReader {
 	/**
 	 * Deserialize the XML into specified class. If the XML is a soap envelope then will deserialize the first node found in the body element.
 	 * 
+	 * <p>
+	 * The JAXBContext for each class is created once and reused, and the node is unmarshalled directly from the document 
+	 * rather than being written out to a string and parsed again.
+	 * </p>
+	 * 
 	 * @param <T> The type of the desired class
 	 * @param clazz Class of object to deserialize to
 	 * @return Populated class of the desired type
@@ -164,36 +321,71 @@ public class XmlReader implements ResponseReader {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T> T from(Class<T> clazz) throws JAXBException {
-		Node parse = document;
+		Node parse = document.getDocumentElement();
 
-		if (document.hasChildNodes()) {
-			Node node = document.getFirstChild();
+		if (parse != null && isNodeNamed(parse, "Envelope")) {
+			for (Node child = parse.getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() == Node.ELEMENT_NODE && isNodeNamed(child, "Body")) {
+					parse = getFirstElement(child);
+					break;
+				}
+			}
+		}
 
-			if (isNodeNamed(node, "Envelope")) {
-				Node child = node.getFirstChild();
+		if (parse == null) {
+			throw new UnmarshalException("The document does not contain an element to deserialize");
+		}
 
-				while (child != null) {
-					if (isNodeNamed(child, "Body")) {
-						parse = child.getFirstChild();
-						break;
-					}
+		UnmarshallerHandler handler = getUnmarshaller(clazz).getUnmarshallerHandler();
 
-					child = child.getNextSibling();
-				}
+		try {
+			DomSaxWalker.walk(parse, handler);
+		} catch (SAXException e) {
+			throw new UnmarshalException(e);
+		}
+
+		return (T) handler.getResult();
+	}
+
+	private static Node getFirstElement(Node parent) {
+		for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				return child;
 			}
 		}
 
-		StringReader stream = new StringReader(getXmlString(parse));
-		T result;
+		return null;
+	}
 
-		try {
-			JAXBContext jaxbc = JAXBContext.newInstance(clazz);
-			Unmarshaller unmarshaller = jaxbc.createUnmarshaller();
-			result = (T) unmarshaller.unmarshal(stream);
-		} catch (JAXBException e) {
-			throw e;
+	/**
+	 * @param clazz Class to deserialize to
+	 * @return This thread's unmarshaller for the class
+	 */
+	private static Unmarshaller getUnmarshaller(Class<?> clazz) throws JAXBException {
+		Map<Class<?>, Unmarshaller> unmarshallers = UNMARSHALLERS.get();
+		Unmarshaller unmarshaller = unmarshallers.get(clazz);
+
+		if (unmarshaller == null) {
+			unmarshaller = getJaxbContext(clazz).createUnmarshaller();
+			unmarshallers.put(clazz, unmarshaller);
+		}
+
+		return unmarshaller;
+	}
+
+	private static JAXBContext getJaxbContext(Class<?> clazz) throws JAXBException {
+		JAXBContext context = JAXB_CONTEXTS.get(clazz);
+
+		if (context == null) {
+			context = JAXBContext.newInstance(clazz);
+
+			JAXBContext existing = JAXB_CONTEXTS.putIfAbsent(clazz, context);
+
+			if (existing != null) {
+				context = existing;
+			}
 		}
 
-		return result;
+		return context;
 	}
 }
@@ -12,6 +12,7 @@ import org.openqa.selenium.support.events.EventFiringWebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nz.govt.msd.driver.http.HttpCookieJar;
 import nz.govt.msd.driver.web.grid.BrowserStack;
 import nz.govt.msd.driver.web.grid.SessionDetails;
 import nz.govt.msd.driver.web.pagefactory.PageObjectAwareHtmlElementsLoader;
@@ -32,6 +33,7 @@ public class Browser {
 	private boolean isRemoteDriver;
 	private SessionId sessionId = null;
 	private BrowserConfiguration browserConfig;
+	private final BrowserCookies cookies = new BrowserCookies(new HttpCookieJar());
 
 	/**
 	 * Constructor - does not start the browser.
@@ -116,6 +118,25 @@ public class Browser {
 	}
 
 	
+	/**
+	 * A cookie jar holding the browser's cookies so that HttpEasy requests made alongside UI steps can use the browser's
+	 * authenticated session rather than logging in again.  Only the cookies that have changed since the last call are
+	 * copied to the jar.
+	 * 
+	 * <pre>
+	 * HttpEasy.request().cookies(browser.getCookieJar()).path(url).get();
+	 * </pre>
+	 * 
+	 * @return The cookie jar, in step with the cookies of the page the browser is on
+	 */
+	public HttpCookieJar getCookieJar() {
+		if (!isOpen()) {
+			return cookies.getJar();
+		}
+
+		return cookies.sync(getWrappedDriver());
+	}
+
 	/**
 	 * Provides an HtmlElementsLoader that provides findElement(s) methods for HtmlElement based classes.
 	 * 
@@ -190,6 +211,7 @@ public class Browser {
 
 		this.eventFiringDriver = null;
 		this.wrappedDriver = null;
+		this.cookies.clear();
 	}
 
 	/**
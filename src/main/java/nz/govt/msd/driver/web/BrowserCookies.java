@@ -0,0 +1,100 @@
+package nz.govt.msd.driver.web;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.WebDriver;
+
+import nz.govt.msd.driver.http.HttpCookieJar;
+
+/**
+ * Keeps a {@link HttpCookieJar} in step with the cookies of a browser session so that HttpEasy requests can use the session.
+ *
+ * <p>
+ * Only the cookies that have been added, changed or removed since the last sync are applied to the jar.  The jar may also
+ * hold cookies set by HttpEasy responses, these are left alone unless the browser has a cookie with the same domain, path
+ * and name.
+ * </p>
+ */
+public class BrowserCookies {
+	private final HttpCookieJar jar;
+	private final Map<String, Cookie> synced = new HashMap<String, Cookie>();
+
+	/**
+	 * @param jar Jar to keep in step with the browser
+	 */
+	public BrowserCookies(HttpCookieJar jar) {
+		this.jar = jar;
+	}
+
+	/**
+	 * @return The cookie jar
+	 */
+	public HttpCookieJar getJar() {
+		return jar;
+	}
+
+	/**
+	 * Copy the cookies of the page the browser is on to the jar.
+	 *
+	 * @param driver WebDriver
+	 * @return The cookie jar
+	 */
+	public synchronized HttpCookieJar sync(WebDriver driver) {
+		Map<String, Cookie> current = new HashMap<String, Cookie>();
+
+		for (Cookie cookie : driver.manage().getCookies()) {
+			if (cookie.getDomain() == null) {
+				continue;
+			}
+
+			String key = getKey(cookie);
+
+			current.put(key, cookie);
+
+			if (!isSame(cookie, synced.get(key))) {
+				jar.add(cookie.getDomain(), cookie.getPath(), cookie.getName(), cookie.getValue(), cookie.getExpiry(), cookie.isSecure());
+			}
+		}
+
+		for (Map.Entry<String, Cookie> previous : synced.entrySet()) {
+			if (!current.containsKey(previous.getKey())) {
+				Cookie cookie = previous.getValue();
+
+				jar.remove(cookie.getDomain(), cookie.getPath(), cookie.getName());
+			}
+		}
+
+		synced.clear();
+		synced.putAll(current);
+
+		return jar;
+	}
+
+	/**
+	 * Remove the cookies copied from the browser, eg once it has been closed.
+	 */
+	public synchronized void clear() {
+		for (Cookie cookie : synced.values()) {
+			jar.remove(cookie.getDomain(), cookie.getPath(), cookie.getName());
+		}
+
+		synced.clear();
+	}
+
+	private static String getKey(Cookie cookie) {
+		return cookie.getDomain() + ";" + cookie.getPath() + ";" + cookie.getName();
+	}
+
+	/**
+	 * Selenium's Cookie.equals() only compares the name and value.
+	 */
+	private static boolean isSame(Cookie cookie, Cookie previous) {
+		return previous != null
+				&& Objects.equals(cookie.getValue(), previous.getValue())
+				&& Objects.equals(cookie.getExpiry(), previous.getExpiry())
+				&& cookie.isSecure() == previous.isSecure();
+	}
+}
@@ -11,18 +11,14 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.http.impl.client.BasicCookieStore;
-import org.apache.http.impl.cookie.BasicClientCookie;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.openqa.selenium.By;
-import org.openqa.selenium.Cookie;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoSuchFrameException;
 import org.openqa.selenium.WebDriver;
@@ -30,7 +26,9 @@ import org.openqa.selenium.WebElement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nz.govt.msd.driver.http.HttpCookieJar;
 import nz.govt.msd.driver.http.HttpEasy;
+import nz.govt.msd.driver.web.BrowserCookies;
 import nz.govt.msd.driver.web.PageHelper;
 
 /**
@@ -49,6 +47,7 @@ class GrabUtility {
 	private Document responseHTMLDoc = null;
 	private String outputFolder;
 	private final boolean useJavascriptToDownloadFiles = false;
+	private final BrowserCookies cookies = new BrowserCookies(new HttpCookieJar());
 	
 	/** Down-loaded link details. */
 	private static class GrabbedFile {
@@ -117,6 +116,9 @@ class GrabUtility {
 	}
 
 	private void savePage(String fileName) throws IOException {
+		// Download files using the browser's session
+		cookies.sync(driver);
+
 		getPageSource();
 		getBaseURL();
 		getLinks();
@@ -375,7 +377,7 @@ class GrabUtility {
 					header("Accept-Language", "en-US,en;q=0.8").
 					header("User-Agent", "Java").
 					header("Referer", "google.com").
-					header("Cookie", mimicCookieState(this.driver.manage().getCookies()).toString()).
+					cookies(cookies.getJar()).
 					path(url).
 					get().
 					downloadFile(outputFolder);
@@ -526,22 +528,4 @@ class GrabUtility {
 //            stream.close();
 //        }        
 //    }
-    
-	/**
-	 * Get the cookie state that WebDriver is using so that the request can use the same session as WebDriver
-	 * and keep any authentication settings.
-	 */
-	private BasicCookieStore mimicCookieState(Set<Cookie> seleniumCookieSet) {
-		BasicCookieStore mimicWebDriverCookieStore = new BasicCookieStore();
-		for (Cookie seleniumCookie : seleniumCookieSet) {
-			BasicClientCookie duplicateCookie = new BasicClientCookie(seleniumCookie.getName(), seleniumCookie.getValue());
-			duplicateCookie.setDomain(seleniumCookie.getDomain());
-			duplicateCookie.setSecure(seleniumCookie.isSecure());
-			duplicateCookie.setExpiryDate(seleniumCookie.getExpiry());
-			duplicateCookie.setPath(seleniumCookie.getPath());
-			mimicWebDriverCookieStore.addCookie(duplicateCookie);
-		}
-
-		return mimicWebDriverCookieStore;
-	}
 }
\ No newline at end of file
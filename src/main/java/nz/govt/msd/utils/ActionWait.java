@@ -28,6 +28,10 @@ import com.google.common.collect.Lists;
  * </p>
  * 
  * <p>
+ * If the thread has a {@link Deadline} that expires before the timeout, the wait gives up when the deadline is reached.
+ * </p>
+ * 
+ * <p>
  * Sample usage: <pre>
  * // Waiting 2 minutes for data to appear in database, checking for its presence  
  * // immediately, then after 10 seconds, and every 5 seconds thereafter.
@@ -198,7 +202,9 @@ public class ActionWait {
 		
 		boolean loggedWait = false;
 		long start = clock.now();
-		long end = clock.laterBy(timeout.in(TimeUnit.MILLISECONDS));
+		long timeoutMillis = timeout.in(TimeUnit.MILLISECONDS);
+		long allowedMillis = Deadline.cap(TimeUnit.MILLISECONDS, timeoutMillis);
+		long end = clock.laterBy(allowedMillis);
 
 		while (hasMoreTime(clock, end)) {
 			int interval = getNextPollingInterval(clock, end);
@@ -239,7 +245,13 @@ public class ActionWait {
 			return value;
 		} else {
 			String toAppend = hasMessage() ? " waiting for " + message : "";
-			String timeoutMessage = String.format("Timed out after %s%s", timeout.toString().toLowerCase(), toAppend);
+			String timeoutMessage;
+
+			if (allowedMillis < timeoutMillis) {
+				timeoutMessage = String.format("Reached the thread's deadline after %s ms%s", allowedMillis, toAppend);
+			} else {
+				timeoutMessage = String.format("Timed out after %s%s", timeout.toString().toLowerCase(), toAppend);
+			}
 	
 			throw new TimeoutException(timeoutMessage, lastException);
 		}
@@ -35,6 +35,10 @@ public class Config {
 	private static String proxyDomain;
 	private static String proxyUsername;
 	private static String proxyPassword;
+
+	// Http
+	private static int httpConnectTimeout;
+	private static int httpReadTimeout;
 	
 	/** Ensure properties have been loaded before any property is used. */ 
 	static {
@@ -113,6 +117,10 @@ public class Config {
 		proxyHost = getProperty(prop, "proxy.host");
 		proxyPort = Integer.parseInt(getProperty(prop, "proxy.port"));
 
+		// Http
+		httpConnectTimeout = Integer.parseInt(getOptionalProperty(prop, "http.connectTimeout", "15"));
+		httpReadTimeout = Integer.parseInt(getOptionalProperty(prop, "http.readTimeout", "60"));
+
 		prop = loadFile("user.properties"); 
 
 		proxyDomain = getOptionalProperty(prop, "proxy.domain");
@@ -327,6 +335,24 @@ public class Config {
 		return proxyPassword;
 	}
 
+	/**
+	 * Time allowed to open a connection for an HTTP request, defaults to 15 seconds.
+	 * 
+	 * @return timeout in seconds, 0 for no limit
+	 */
+	public static int getHttpConnectTimeout() {
+		return httpConnectTimeout;
+	}
+
+	/**
+	 * Time allowed for a server to send data in response to an HTTP request, defaults to 60 seconds.
+	 * 
+	 * @return timeout in seconds, 0 for no limit
+	 */
+	public static int getHttpReadTimeout() {
+		return httpReadTimeout;
+	}
+
 	/**
 	 * @return Proxy bypass (noproxy) addresses, eg: "localhost, 127.0.0.1".
 	 */
@@ -0,0 +1,149 @@
+package nz.govt.msd.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A time budget for the current thread that nested actions, such as HttpEasy requests and {@link ActionWait}s, are limited
+ * to so that a slow or hung dependency can't hold a test beyond the time it has been allowed.
+ *
+ * <p>
+ * A deadline is started for a block of code and must be closed at the end of it, which restores any deadline that was in
+ * place before.  A deadline started within another can't extend it, the earlier of the two applies.
+ * </p>
+ *
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * try (Deadline deadline = Deadline.start(TimeUnit.MINUTES, 2)) {
+ *     HttpEasy.request().path(url).get();		// read timeout capped at the time remaining
+ *     new ActionWait()
+ *         .withTimeout(TimeUnit.MINUTES, 5)	// gives up when the deadline is reached
+ *         ...
+ * }
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * A deadline applies to the thread that started it, use {@link #current()} and {@link #resume(Deadline)} to carry it over to
+ * work done on another thread.
+ * </p>
+ */
+public final class Deadline implements AutoCloseable {
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+	private final long expiresAt;
+	private final Deadline previous;
+	private boolean closed = false;
+
+	private Deadline(long expiresAt, Deadline previous) {
+		this.expiresAt = expiresAt;
+		this.previous = previous;
+	}
+
+	/**
+	 * Start a deadline for the current thread, or keep the current deadline if it expires first.
+	 *
+	 * @param unit The unit of time
+	 * @param duration Time allowed
+	 * @return The deadline, close it once the work it covers is complete
+	 */
+	public static Deadline start(TimeUnit unit, long duration) {
+		return push(System.nanoTime() + unit.toNanos(duration));
+	}
+
+	/**
+	 * Apply a deadline captured on another thread to the current thread.
+	 *
+	 * @param deadline Deadline from {@link #current()}, may be null
+	 * @return The deadline, close it once the work it covers is complete, or null if the deadline is null (a try with 
+	 * resources statement skips a null resource)
+	 */
+	public static Deadline resume(Deadline deadline) {
+		if (deadline == null) {
+			return null;
+		}
+
+		return push(deadline.expiresAt);
+	}
+
+	private static Deadline push(long expiresAt) {
+		Deadline previous = CURRENT.get();
+
+		if (previous != null && previous.expiresAt - expiresAt < 0) {
+			expiresAt = previous.expiresAt;
+		}
+
+		Deadline deadline = new Deadline(expiresAt, previous);
+
+		CURRENT.set(deadline);
+
+		return deadline;
+	}
+
+	/**
+	 * @return The deadline of the current thread, null if there isn't one
+	 */
+	public static Deadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Limit a timeout to the time remaining before the current thread's deadline.
+	 *
+	 * @param unit The unit of time
+	 * @param duration Timeout
+	 * @return The smaller of the timeout and the time remaining, in the same unit, or the timeout if the thread has no deadline
+	 */
+	public static long cap(TimeUnit unit, long duration) {
+		Deadline deadline = CURRENT.get();
+
+		if (deadline == null) {
+			return duration;
+		}
+
+		return Math.min(duration, Math.max(0, deadline.getRemaining(unit)));
+	}
+
+	/**
+	 * @param unit The unit of time
+	 * @return Time remaining, negative once the deadline has passed
+	 */
+	public long getRemaining(TimeUnit unit) {
+		return unit.convert(expiresAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return Whether the deadline has passed
+	 */
+	public boolean isExpired() {
+		return expiresAt - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @return The value of {@link System#nanoTime()} at which the deadline expires
+	 */
+	public long getExpiresAtNanos() {
+		return expiresAt;
+	}
+
+	/**
+	 * Restore the deadline that was in place when this one was started.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		if (CURRENT.get() == this) {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package nz.govt.msd.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+
+import nz.govt.msd.driver.http.GsonRegistry;
+import nz.govt.msd.driver.http.JsonReader;
+
+/**
+ * Compares deserialising and pretty printing a small document with a new Gson for each call, as JsonReader used to, against
+ * the shared instances from {@link GsonRegistry} whose type adapter cache is already warm.
+ *
+ * <p>
+ * Run with: gradlew benchmark -Pinclude=GsonBenchmark
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GsonBenchmark {
+	private JsonElement json;
+
+	@Setup
+	public void setup() {
+		Order order = new Order();
+
+		order.id = "ORD-1001";
+		order.customer = "Jane Citizen";
+		order.paid = true;
+
+		for (int i = 0; i < 10; i++) {
+			Line line = new Line();
+
+			line.sku = "SKU-" + i;
+			line.quantity = i + 1;
+			line.price = 9.95 * (i + 1);
+			order.lines.add(line);
+		}
+
+		json = new Gson().toJsonTree(order);
+	}
+
+	@Benchmark
+	public Order newGson() {
+		return new Gson().fromJson(json, Order.class);
+	}
+
+	@Benchmark
+	public Order sharedGson() {
+		return GsonRegistry.getDefault().fromJson(json, Order.class);
+	}
+
+	@Benchmark
+	public Order jsonReader() throws Exception {
+		return new JsonReader(json).fromJson(Order.class);
+	}
+
+	@Benchmark
+	public String newPrettyGson() {
+		return new GsonBuilder().setPrettyPrinting().create().toJson(json);
+	}
+
+	@Benchmark
+	public String sharedPrettyGson() {
+		return GsonRegistry.getPretty().toJson(json);
+	}
+
+	public static class Order {
+		String id;
+		String customer;
+		boolean paid;
+		List<Line> lines = new ArrayList<Line>();
+	}
+
+	public static class Line {
+		String sku;
+		int quantity;
+		double price;
+	}
+}
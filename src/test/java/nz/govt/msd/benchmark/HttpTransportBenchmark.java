@@ -0,0 +1,97 @@
+package nz.govt.msd.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nz.govt.msd.driver.http.DefaultHttpTransport;
+import nz.govt.msd.driver.http.HttpEasy;
+import nz.govt.msd.driver.http.HttpEasyReader;
+import nz.govt.msd.driver.http.PooledHttpTransport;
+
+/**
+ * Compares the cost of a request when a new connection (and TCP/TLS handshake) is made for each request against reusing
+ * pooled keep-alive connections.
+ *
+ * <p>
+ * The JVM can sometimes reuse a connection when the whole response has been read before it is disconnected, the
+ * statusOnly benchmark covers the common case of checking the response code without reading the response.
+ * </p>
+ *
+ * <p>
+ * Run with: gradlew benchmark -Pinclude=HttpTransportBenchmark
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpTransportBenchmark {
+	@Param({ "default", "pooled" })
+	public String transport;
+
+	@Param({ "http", "https" })
+	public String protocol;
+
+	private LocalHttpServer server;
+	private PooledHttpTransport pooled = null;
+
+	@Setup
+	public void setup() throws Exception {
+		server = LocalHttpServer.start("https".equals(protocol));
+
+		HttpEasy.withDefaults()
+			.allowAllHosts()
+			.trustAllCertificates()
+			.baseUrl(server.getUrl());
+
+		if ("pooled".equals(transport)) {
+			pooled = new PooledHttpTransport();
+			HttpEasy.withDefaults().transport(pooled);
+		} else {
+			HttpEasy.withDefaults().transport(new DefaultHttpTransport());
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.out.println();
+		System.out.println(String.format("%s %s transport: %s requests made over %s connections",
+				protocol, transport, server.getRequestCount(), server.getConnectionCount()));
+
+		if (pooled != null) {
+			pooled.shutdown();
+		}
+
+		server.stop();
+	}
+
+	@Benchmark
+	public String request() throws IOException {
+		return HttpEasy.request()
+				.path("/status")
+				.get()
+				.asString();
+	}
+
+	@Benchmark
+	public int statusOnly() throws IOException {
+		try (HttpEasyReader reader = HttpEasy.request().path("/status").get()) {
+			return reader.getResponseCode();
+		}
+	}
+}
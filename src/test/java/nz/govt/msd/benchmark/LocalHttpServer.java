@@ -0,0 +1,136 @@
+package nz.govt.msd.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * Minimal HTTP(S) server for benchmarking HttpEasy against, responds to every request with a small JSON document and
+ * counts the number of connections the requests arrived on.
+ */
+public class LocalHttpServer {
+	private static final String KEYSTORE = "benchmark-keystore.jks";
+	private static final char[] KEYSTORE_PASSWORD = "benchmark".toCharArray();
+	private static final byte[] RESPONSE = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+	private final HttpServer server;
+	private final String protocol;
+	private final Set<String> connections = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private LocalHttpServer(HttpServer server, String protocol) {
+		this.server = server;
+		this.protocol = protocol;
+
+		server.createContext("/", this::handle);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	/**
+	 * Start a server on a free local port.
+	 *
+	 * @param secure Use HTTPS with a self signed certificate
+	 * @return The running server
+	 * @throws IOException If unable to start the server
+	 * @throws GeneralSecurityException If unable to load the certificate
+	 */
+	public static LocalHttpServer start(boolean secure) throws IOException, GeneralSecurityException {
+		// Otherwise Nagle's algorithm adds ~40ms to every response and hides the cost of the handshakes
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+		if (!secure) {
+			return new LocalHttpServer(HttpServer.create(address, 0), "http");
+		}
+
+		HttpsServer server = HttpsServer.create(address, 0);
+		server.setHttpsConfigurator(new HttpsConfigurator(createSslContext()));
+
+		return new LocalHttpServer(server, "https");
+	}
+
+	private static SSLContext createSslContext() throws IOException, GeneralSecurityException {
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+
+		try (InputStream input = LocalHttpServer.class.getClassLoader().getResourceAsStream(KEYSTORE)) {
+			if (input == null) {
+				throw new IllegalArgumentException("File not found: " + KEYSTORE);
+			}
+
+			keyStore.load(input, KEYSTORE_PASSWORD);
+		}
+
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD);
+
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(keyManagerFactory.getKeyManagers(), null, null);
+
+		return context;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		connections.add(exchange.getRemoteAddress().toString());
+		requests.incrementAndGet();
+
+		try (InputStream input = exchange.getRequestBody()) {
+			while (input.read() != -1) {
+				// Discard request body
+			}
+		}
+
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, RESPONSE.length);
+
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(RESPONSE);
+		}
+	}
+
+	/**
+	 * @return Url of the server, eg https://127.0.0.1:12345
+	 */
+	public String getUrl() {
+		return protocol + "://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return Number of requests received
+	 */
+	public int getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return Number of distinct client connections requests were received on
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Stop the server.
+	 */
+	public void stop() {
+		server.stop(0);
+	}
+}
@@ -0,0 +1,86 @@
+package nz.govt.msd.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import nz.govt.msd.driver.http.XmlReader;
+
+/**
+ * Compares parsing a small SOAP response and looking up a repeated selector the way XmlReader used to, looking up the
+ * factories and compiling the expression on every call, against XmlReader's reused parser and cached compiled expressions.
+ *
+ * <p>
+ * Run with: gradlew benchmark -Pinclude=XmlReaderBenchmark
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlReaderBenchmark {
+	private static final String SELECTOR = "//*/output[@name='documentId']";
+
+	private String xml;
+	private Document document;
+	private XmlReader reader;
+
+	@Setup
+	public void setup() throws Exception {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><serviceResponse returnLength=\"20\">");
+
+		for (int i = 0; i < 20; i++) {
+			sb.append("<output name=\"field").append(i).append("\">value ").append(i).append("</output>");
+		}
+
+		sb.append("<output name=\"documentId\">idd_CD1C398E-1F25-436D-B76A-9E293BB426F5</output>");
+		sb.append("</serviceResponse></soap:Body></soap:Envelope>");
+
+		xml = sb.toString();
+		document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+		reader = new XmlReader(xml);
+	}
+
+	@Benchmark
+	public Document parseNewFactory() throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+	}
+
+	@Benchmark
+	public XmlReader parseXmlReader() throws Exception {
+		return new XmlReader(xml);
+	}
+
+	@Benchmark
+	public String selectorNewXPath() throws Exception {
+		Node node = (Node) XPathFactory.newInstance().newXPath().evaluate(SELECTOR, document, XPathConstants.NODE);
+
+		return node == null ? null : node.getTextContent();
+	}
+
+	@Benchmark
+	public String selectorXmlReader() throws Exception {
+		return reader.textContent(SELECTOR);
+	}
+}
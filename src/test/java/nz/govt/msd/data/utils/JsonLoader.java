@@ -18,14 +18,25 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 
+import nz.govt.msd.driver.http.GsonRegistry;
 import nz.govt.msd.driver.http.JsonReader;
 
 public class JsonLoader {
 	private static final Logger LOGGER = LoggerFactory.getLogger(JsonLoader.class);
+	private static final Gson GSON = GsonRegistry.register(GsonRegistry.TEST_DATA, new GsonBuilder()
+			.registerTypeAdapter(XMLGregorianCalendar.class, new XMLGregorianCalendarConverter.Deserializer())
+			.registerTypeAdapter(XMLGregorianCalendar.class, new XMLGregorianCalendarConverter.Serializer()));
 
 	private JsonLoader() {
 	}
 
+	/**
+	 * @return The Gson used to load test data, for fixtures that need to read or write test data themselves
+	 */
+	public static Gson getGson() {
+		return GSON;
+	}
+
 	public static <T> T loadFile(String jsonFile, Class<T> clazz) throws IOException {
 		return loadFile(jsonFile, (Type) clazz);
 	}
@@ -34,12 +45,7 @@ public class JsonLoader {
 		LOGGER.trace("Loading JSON file {}", jsonFile);
 		JsonReader json = new JsonReader(FileReader.readFile(jsonFile));
 
-		Gson builder = new GsonBuilder()
-				.registerTypeAdapter(XMLGregorianCalendar.class, new XMLGregorianCalendarConverter.Deserializer())
-				.registerTypeAdapter(XMLGregorianCalendar.class, new XMLGregorianCalendarConverter.Serializer())
-				.create();
-
-		T result = json.fromJson(builder, returnType);
+		T result = json.fromJson(GSON, returnType);
 
 		validateAllDataLoaded(json.asJson(), result, "");
 
@@ -1,9 +1,11 @@
 package nz.govt.msd.specification;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.concordion.api.AfterExample;
 import org.concordion.api.AfterSuite;
@@ -17,11 +19,19 @@ import org.concordion.ext.runtotals.RunTotalsExtension;
 import org.concordion.integration.junit4.ConcordionRunner;
 import org.concordion.logback.LogbackAdaptor;
 import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import nz.govt.msd.AppConfig;
 import nz.govt.msd.driver.BrowserBasedTest;
 import nz.govt.msd.driver.concordion.EnvironmentExtension;
 import nz.govt.msd.driver.http.HttpEasy;
+import nz.govt.msd.driver.http.HttpEasyDefaults;
+import nz.govt.msd.driver.http.HttpMetrics;
+import nz.govt.msd.driver.http.HttpTransport;
+import nz.govt.msd.driver.http.PooledHttpTransport;
+import nz.govt.msd.driver.http.RecordReplayTransport;
+import nz.govt.msd.driver.http.TlsRegistry;
 import nz.govt.msd.driver.web.Browser;
 
 /**
@@ -35,8 +45,10 @@ import nz.govt.msd.driver.web.Browser;
 @Extensions({ TimestampFormatterExtension.class, RunTotalsExtension.class })
 @ConcordionOptions(markdownExtensions = { MarkdownExtensions.HARDWRAPS, MarkdownExtensions.AUTOLINKS })
 public abstract class ConcordionBase implements BrowserBasedTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConcordionBase.class);
 	private static List<Browser> browsers = new ArrayList<Browser>();
 	private static ThreadLocal<Browser> browser = new ThreadLocal<Browser>();
+	private static final HttpMetrics HTTP_METRICS = new HttpMetrics();
 
 	@Extension
 	private final EnvironmentExtension footer = new EnvironmentExtension(this.getClass().getName().replace(ConcordionBase.class.getPackage().getName() + ".", ""));
@@ -45,10 +57,25 @@ public abstract class ConcordionBase implements BrowserBasedTest {
 		LogbackAdaptor.logInternalStatus();
 		AppConfig.logSettings();
 
+		HttpTransport transport = new PooledHttpTransport();
+
+		// -DhttpRecording=record captures responses from the services the specifications use, -DhttpRecording=replay
+		// answers requests from those recordings without using the network
+		String recording = System.getProperty("httpRecording", "");
+
+		if (!recording.isEmpty()) {
+			transport = new RecordReplayTransport(new File("src/test/resources/recordings"), RecordReplayTransport.Mode.valueOf(recording.toUpperCase()))
+					.withDelegate(transport);
+		}
+
 		// Set the proxy rules for all rest requests made during the test run
 		HttpEasy.withDefaults()
 				.allowAllHosts()
-				.trustAllCertificates();
+				.trustAllCertificates()
+				.transport(transport)
+				.metrics(HTTP_METRICS)
+				.connectTimeout(TimeUnit.SECONDS, AppConfig.getHttpConnectTimeout())
+				.readTimeout(TimeUnit.SECONDS, AppConfig.getHttpReadTimeout());
 		// .baseUrl(AppConfig.getBaseUrl());
 
 		if (AppConfig.isProxyRequired()) {
@@ -71,6 +98,18 @@ public abstract class ConcordionBase implements BrowserBasedTest {
 		for (Browser openbrowser : browsers) {
 			openbrowser.close();
 		}
+
+		LOGGER.info("{}", TlsRegistry.getMetrics());
+
+		if (HttpEasyDefaults.getThrottle() != null) {
+			HttpEasyDefaults.getThrottle().getMetrics().values().forEach(metrics -> LOGGER.info("Throttled {}", metrics));
+		}
+
+		if (HttpEasyDefaults.getCache() != null) {
+			LOGGER.info("{}", HttpEasyDefaults.getCache().getMetrics());
+		}
+
+		HTTP_METRICS.getEndpoints().values().forEach(endpoint -> LOGGER.info("HTTP {}", endpoint));
 	}
 	
 	@Override